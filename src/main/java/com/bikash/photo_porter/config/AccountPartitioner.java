@@ -0,0 +1,45 @@
+package com.bikash.photo_porter.config;
+
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Partitions transfer messages by the account part of their key, the text before
+ * the first {@code ':'}. Composite keys such as {@code target:source} therefore
+ * still put all of one target account's work on one partition, and so on one
+ * consumer thread. Unkeyed messages are spread randomly.
+ */
+public class AccountPartitioner implements Partitioner {
+
+    public static final char KEY_SEPARATOR = ':';
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes,
+                         Cluster cluster) {
+        int partitions = cluster.partitionsForTopic(topic).size();
+        if (key == null) {
+            return ThreadLocalRandom.current().nextInt(partitions);
+        }
+        return partitionFor(key.toString(), partitions);
+    }
+
+    static int partitionFor(String key, int partitions) {
+        int end = key.indexOf(KEY_SEPARATOR);
+        String account = end >= 0 ? key.substring(0, end) : key;
+        // Same hash as Kafka's default partitioner, so plain account keys land where they always did
+        return Utils.toPositive(Utils.murmur2(account.getBytes(StandardCharsets.UTF_8))) % partitions;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+    }
+
+    @Override
+    public void close() {
+    }
+}
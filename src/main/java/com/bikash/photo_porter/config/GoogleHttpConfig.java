@@ -0,0 +1,99 @@
+package com.bikash.photo_porter.config;
+
+import com.google.api.client.googleapis.GoogleUtils;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import com.google.api.client.util.SslUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class GoogleHttpConfig {
+
+    @Value("${photo.google.http.max-connections:64}")
+    private int maxConnections;
+
+    @Value("${photo.google.http.max-connections-per-route:32}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${photo.google.http.keep-alive-seconds:60}")
+    private long keepAliveSeconds;
+
+    @Bean
+    public PoolingHttpClientConnectionManager googleConnectionManager(MeterRegistry registry)
+            throws GeneralSecurityException, IOException {
+        // Load the Google trust store once instead of on every request
+        SSLContext sslContext = SslUtils.getTlsSslContext();
+        SslUtils.initSslContext(sslContext, GoogleUtils.getCertificateTrustStore(), SslUtils.getPkixTrustManagerFactory());
+
+        Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(sslContext))
+                .build();
+
+        Counter opened = Counter.builder("google.http.connections.opened")
+                .description("New connections opened to Google APIs")
+                .register(registry);
+        HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> connectionFactory = (route, config) -> {
+            opened.increment();
+            return ManagedHttpClientConnectionFactory.INSTANCE.create(route, config);
+        };
+
+        PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager(
+                socketFactories, connectionFactory, DefaultSchemePortResolver.INSTANCE,
+                SystemDefaultDnsResolver.INSTANCE, keepAliveSeconds, TimeUnit.SECONDS);
+        manager.setMaxTotal(maxConnections);
+        manager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        manager.setValidateAfterInactivity(2000);
+
+        Gauge.builder("google.http.pool.leased", manager, m -> m.getTotalStats().getLeased())
+                .description("Connections currently in use").register(registry);
+        Gauge.builder("google.http.pool.available", manager, m -> m.getTotalStats().getAvailable())
+                .description("Idle keep-alive connections ready for reuse").register(registry);
+        Gauge.builder("google.http.pool.pending", manager, m -> m.getTotalStats().getPending())
+                .description("Requests waiting for a connection").register(registry);
+        Gauge.builder("google.http.pool.max", manager, m -> m.getTotalStats().getMax())
+                .register(registry);
+        return manager;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public HttpTransport googleHttpTransport(PoolingHttpClientConnectionManager googleConnectionManager,
+                                             MeterRegistry registry) {
+        Counter requests = Counter.builder("google.http.requests")
+                .description("Requests sent to Google APIs; compare with google.http.connections.opened for reuse")
+                .register(registry);
+
+        CloseableHttpClient httpClient = ApacheHttpTransport.newDefaultHttpClientBuilder()
+                .setConnectionManager(googleConnectionManager)
+                .setConnectionManagerShared(false)
+                .evictIdleConnections(keepAliveSeconds, TimeUnit.SECONDS)
+                .evictExpiredConnections()
+                .addInterceptorFirst((HttpRequestInterceptor) (request, context) -> requests.increment())
+                .build();
+        return new ApacheHttpTransport(httpClient);
+    }
+}
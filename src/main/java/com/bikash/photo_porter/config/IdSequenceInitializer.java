@@ -0,0 +1,64 @@
+package com.bikash.photo_porter.config;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Moves the id sequences of the pooled-id tables past the ids already in use.
+ * <p>
+ * These tables used to take auto-increment ids. On MySQL, Hibernate emulates
+ * their sequences with one-row {@code *_seq} tables, and {@code ddl-auto=update}
+ * creates those tables starting at 1. Left alone, the first pooled block would
+ * collide with existing rows. This runs once the schema update is done and
+ * before any listener, scheduler or request can insert. It only ever raises
+ * {@code next_val}, so instances already holding a block are unaffected.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+@Slf4j
+public class IdSequenceInitializer {
+
+    /**
+     * Matches the {@code allocationSize} of the entities' sequence generators.
+     */
+    static final int ALLOCATION_SIZE = 50;
+
+    /**
+     * Table to the sequence table its {@code @SequenceGenerator} draws from.
+     */
+    static final Map<String, String> SEQUENCES = Map.of(
+            "photo_transfers", "photo_transfers_seq",
+            "transfers", "transfers_seq",
+            "transfer_logs", "transfer_logs_seq",
+            "migrated_media", "migrated_media_seq");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void seedSequences() {
+        SEQUENCES.forEach(this::seed);
+    }
+
+    private void seed(String table, String sequence) {
+        // A pooled block read as N hands out N - allocationSize + 1 .. N
+        String floor = "SELECT COALESCE(MAX(id), 0) + " + (ALLOCATION_SIZE + 1) + " FROM " + table;
+        try {
+            int updated = jdbcTemplate.update(
+                    "UPDATE " + sequence + " SET next_val = GREATEST(next_val, (" + floor + "))");
+            if (updated == 0) {
+                jdbcTemplate.update("INSERT INTO " + sequence + " (next_val) " + floor);
+            }
+        } catch (DataAccessException e) {
+            // A database with native sequences has no table to seed
+            log.warn("Could not seed id sequence {} from {}: {}", sequence, table, e.getMessage());
+        }
+    }
+}
@@ -1,20 +1,33 @@
 package com.bikash.photo_porter.config;
 
 import com.bikash.photo_porter.dto.TransferMessage;
+import com.bikash.photo_porter.service.ParallelRecordDispatcher;
+import com.bikash.photo_porter.service.TransferRetryRouter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.*;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 
 @Configuration
 public class KafkaConfig {
@@ -25,23 +38,88 @@ public class KafkaConfig {
     @Value("${spring.kafka.consumer.group-id}")
     private String groupId;
 
+    @Value("${photo.kafka.topic}")
+    private String topic;
+
+    @Value("${photo.kafka.partitions:12}")
+    private int partitions;
+
+    @Value("${photo.kafka.replicas:1}")
+    private short replicas;
+
+    // json (Spring's JsonSerializer) or binary (TransferMessageSerializer)
+    @Value("${photo.kafka.wire-format:json}")
+    private String wireFormat;
+
+    // latency, balanced or throughput: see PRODUCER_PROFILES
+    @Value("${photo.kafka.producer.profile:balanced}")
+    private String producerProfile;
+
+    // none, gzip, snappy, lz4 or zstd
+    @Value("${photo.kafka.producer.compression:lz4}")
+    private String compression;
+
+    @Value("${photo.kafka.consumer.batch.max-poll-records:200}")
+    private int batchMaxPollRecords;
+
+    /**
+     * Linger and batch size per producer profile. Longer lingers fill bigger
+     * batches, which compress better, at the cost of send latency.
+     */
+    private static final Map<String, ProducerProfile> PRODUCER_PROFILES = Map.of(
+            "latency", new ProducerProfile(0, 16384),
+            "balanced", new ProducerProfile(10, 65536),
+            "throughput", new ProducerProfile(50, 262144));
+
+    private record ProducerProfile(int lingerMs, int batchSize) {
+    }
+
+    /**
+     * Messages are keyed by target account, so partitions bound how many
+     * accounts are worked on in parallel.
+     */
     @Bean
-    public ProducerFactory<String, TransferMessage> producerFactory() {
+    public NewTopic transferTopic() {
+        return TopicBuilder.name(topic).partitions(partitions).replicas(replicas).build();
+    }
+
+    @Bean
+    public KafkaAdmin.NewTopics retryTopics(TransferRetryRouter retryRouter) {
+        List<NewTopic> topics = new ArrayList<>();
+        for (int tier = 0; tier < TransferRetryRouter.TIERS; tier++) {
+            topics.add(TopicBuilder.name(retryRouter.tierTopic(tier)).partitions(partitions).replicas(replicas).build());
+        }
+        topics.add(TopicBuilder.name(retryRouter.deadLetterTopic()).partitions(partitions).replicas(replicas).build());
+        return new KafkaAdmin.NewTopics(topics.toArray(new NewTopic[0]));
+    }
+
+    @Bean
+    public ProducerFactory<String, TransferMessage> producerFactory(MeterRegistry registry) {
+        ProducerProfile profile = PRODUCER_PROFILES.get(producerProfile);
+        if (profile == null) {
+            throw new IllegalArgumentException("Unknown producer profile: " + producerProfile);
+        }
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG,
+                isBinary() ? TransferMessageSerializer.class : JsonSerializer.class);
         configProps.put(ProducerConfig.ACKS_CONFIG, "all");
         configProps.put(ProducerConfig.RETRIES_CONFIG, 3);
-        configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, 16384);
-        configProps.put(ProducerConfig.LINGER_MS_CONFIG, 1);
+        configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, profile.batchSize());
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, profile.lingerMs());
+        configProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compression);
         configProps.put(ProducerConfig.BUFFER_MEMORY_CONFIG, 33554432);
-        return new DefaultKafkaProducerFactory<>(configProps);
+        configProps.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, AccountPartitioner.class);
+        DefaultKafkaProducerFactory<String, TransferMessage> factory = new DefaultKafkaProducerFactory<>(configProps);
+        // Exposes the client's own metrics (batch-size-avg, compression-rate-avg, record-error-rate...)
+        factory.addListener(new MicrometerProducerListener<>(registry));
+        return factory;
     }
 
     @Bean
-    public KafkaTemplate<String, TransferMessage> kafkaTemplate() {
-        return new KafkaTemplate<>(producerFactory());
+    public KafkaTemplate<String, TransferMessage> kafkaTemplate(ProducerFactory<String, TransferMessage> producerFactory) {
+        return new KafkaTemplate<>(producerFactory);
     }
 
     @Bean
@@ -50,14 +128,24 @@ public class KafkaConfig {
         configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         configProps.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         configProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
         configProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
         configProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
-        configProps.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
+        if (isBinary()) {
+            configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, TransferMessageDeserializer.class);
+            return new DefaultKafkaConsumerFactory<>(configProps, new StringDeserializer(),
+                    new TransferMessageDeserializer());
+        }
+        configProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
+        // A record's type header may only name the message DTOs
+        configProps.put(JsonDeserializer.TRUSTED_PACKAGES, TransferMessage.class.getPackageName());
         return new DefaultKafkaConsumerFactory<>(configProps, new StringDeserializer(), 
                 new JsonDeserializer<>(TransferMessage.class));
     }
 
+    private boolean isBinary() {
+        return "binary".equals(wireFormat);
+    }
+
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, TransferMessage> kafkaListenerContainerFactory() {
         ConcurrentKafkaListenerContainerFactory<String, TransferMessage> factory = 
@@ -66,4 +154,63 @@ public class KafkaConfig {
         factory.setConcurrency(3);
         return factory;
     }
+
+    /**
+     * For the retry tier listeners, which acknowledge manually so a record that
+     * is not due yet can be handed back with {@code nack} and a pause.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, TransferMessage> retryKafkaListenerContainerFactory(
+            @Value("${photo.kafka.retry.concurrency:1}") int concurrency) {
+        ConcurrentKafkaListenerContainerFactory<String, TransferMessage> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(concurrency);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        return factory;
+    }
+
+    /**
+     * For {@code photo.kafka.consumer.mode=parallel}: the listener returns as
+     * soon as a record is dispatched and acks it later from a worker, in
+     * low-water-mark order. Records of revoked partitions stop being tracked.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, TransferMessage> parallelKafkaListenerContainerFactory(
+            ParallelRecordDispatcher dispatcher) {
+        ConcurrentKafkaListenerContainerFactory<String, TransferMessage> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(3);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setConsumerRebalanceListener(new ConsumerAwareRebalanceListener() {
+            @Override
+            public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                dispatcher.revoke(partitions);
+            }
+
+            @Override
+            public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                dispatcher.revoke(partitions);
+            }
+        });
+        return factory;
+    }
+
+    /**
+     * Hands each poll to the listener as one list, for
+     * {@code photo.kafka.consumer.mode=batch}.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, TransferMessage> batchKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, TransferMessage> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(3);
+        factory.setBatchListener(true);
+        Properties overrides = new Properties();
+        overrides.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(batchMaxPollRecords));
+        factory.getContainerProperties().setKafkaConsumerProperties(overrides);
+        return factory;
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,111 @@
+package com.bikash.photo_porter.config;
+
+import com.bikash.photo_porter.dto.TransferMessage;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the layout written by {@link TransferMessageSerializer}. Strings are
+ * decoded straight from the record buffer; the photo bytes are copied once into
+ * the message. Records that start with {@code '{'} were written by the JSON
+ * serializer and are handed to it, so the wire format can be switched while
+ * older records are still on the topic. Records of a later version are read
+ * up to the end of the fields this version knows; what was appended after them
+ * is ignored.
+ */
+public class TransferMessageDeserializer implements Deserializer<TransferMessage> {
+
+    private final JsonDeserializer<TransferMessage> json = new JsonDeserializer<>(TransferMessage.class, false);
+
+    @Override
+    public TransferMessage deserialize(String topic, byte[] data) {
+        return data != null ? deserialize(topic, null, ByteBuffer.wrap(data)) : null;
+    }
+
+    @Override
+    public TransferMessage deserialize(String topic, Headers headers, byte[] data) {
+        return deserialize(topic, data);
+    }
+
+    @Override
+    public TransferMessage deserialize(String topic, Headers headers, ByteBuffer data) {
+        if (data == null) {
+            return null;
+        }
+        ByteBuffer in = data.duplicate();
+        if (!in.hasRemaining()) {
+            throw new SerializationException("Empty TransferMessage record");
+        }
+        byte version = in.get(in.position());
+        if (version == '{') {
+            byte[] bytes = new byte[in.remaining()];
+            in.get(bytes);
+            return json.deserialize(topic, bytes);
+        }
+        if (version < 1) {
+            throw new SerializationException("Unsupported TransferMessage version " + version);
+        }
+        try {
+            in.get();
+            TransferMessage message = new TransferMessage();
+            message.setPhotoId(getString(in));
+            message.setFileName(getString(in));
+            message.setSourceUserId(getLong(in));
+            message.setTargetUserId(getLong(in));
+            message.setTargetAccessToken(getString(in));
+            message.setContentRef(getString(in));
+            message.setContentLength(getLong(in));
+            message.setContentSha256(getString(in));
+            message.setPhotoBytes(getBytes(in));
+            return message;
+        } catch (BufferUnderflowException e) {
+            throw new SerializationException("Truncated TransferMessage record", e);
+        }
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        if (!in.hasArray()) {
+            byte[] value = new byte[length];
+            in.get(value);
+            return new String(value, StandardCharsets.UTF_8);
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static byte[] getBytes(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] value = new byte[length];
+        in.get(value);
+        return value;
+    }
+
+    private static Long getLong(ByteBuffer in) {
+        return in.get() != 0 ? in.getLong() : null;
+    }
+
+    @Override
+    public void close() {
+        json.close();
+    }
+}
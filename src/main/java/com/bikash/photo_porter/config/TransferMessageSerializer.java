@@ -0,0 +1,89 @@
+package com.bikash.photo_porter.config;
+
+import com.bikash.photo_porter.dto.TransferMessage;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes {@link TransferMessage} in a compact, versioned binary layout:
+ * <pre>
+ * version:byte
+ * photoId:str fileName:str sourceUserId:long? targetUserId:long?
+ * targetAccessToken:str contentRef:str contentLength:long? contentSha256:str
+ * photoBytes:bytes
+ * </pre>
+ * {@code str} and {@code bytes} are an int length ({@code -1} for null)
+ * followed by the UTF-8 or raw bytes; {@code long?} is a presence byte followed
+ * by eight bytes when present. The record is sized up front and written into a
+ * single array, so the photo bytes are copied exactly once and never encoded.
+ * Later versions only append fields, so older readers can skip what they do
+ * not know.
+ */
+public class TransferMessageSerializer implements Serializer<TransferMessage> {
+
+    public static final byte VERSION = 1;
+
+    @Override
+    public byte[] serialize(String topic, TransferMessage message) {
+        if (message == null) {
+            return null;
+        }
+        byte[] photoId = utf8(message.getPhotoId());
+        byte[] fileName = utf8(message.getFileName());
+        byte[] accessToken = utf8(message.getTargetAccessToken());
+        byte[] contentRef = utf8(message.getContentRef());
+        byte[] contentSha256 = utf8(message.getContentSha256());
+        byte[] photoBytes = message.getPhotoBytes();
+
+        int size = 1
+                + sizeOf(photoId) + sizeOf(fileName)
+                + sizeOf(message.getSourceUserId()) + sizeOf(message.getTargetUserId())
+                + sizeOf(accessToken) + sizeOf(contentRef)
+                + sizeOf(message.getContentLength()) + sizeOf(contentSha256)
+                + sizeOf(photoBytes);
+        ByteBuffer out = ByteBuffer.wrap(new byte[size]);
+        out.put(VERSION);
+        putBytes(out, photoId);
+        putBytes(out, fileName);
+        putLong(out, message.getSourceUserId());
+        putLong(out, message.getTargetUserId());
+        putBytes(out, accessToken);
+        putBytes(out, contentRef);
+        putLong(out, message.getContentLength());
+        putBytes(out, contentSha256);
+        putBytes(out, photoBytes);
+        return out.array();
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int sizeOf(byte[] value) {
+        return Integer.BYTES + (value != null ? value.length : 0);
+    }
+
+    private static int sizeOf(Long value) {
+        return 1 + (value != null ? Long.BYTES : 0);
+    }
+
+    private static void putBytes(ByteBuffer out, byte[] value) {
+        if (value == null) {
+            out.putInt(-1);
+            return;
+        }
+        out.putInt(value.length);
+        out.put(value);
+    }
+
+    private static void putLong(ByteBuffer out, Long value) {
+        if (value == null) {
+            out.put((byte) 0);
+            return;
+        }
+        out.put((byte) 1);
+        out.putLong(value);
+    }
+}
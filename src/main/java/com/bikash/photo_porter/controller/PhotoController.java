@@ -1,18 +1,29 @@
 package com.bikash.photo_porter.controller;
 
+import com.bikash.photo_porter.dto.GoogleAlbum;
+import com.bikash.photo_porter.dto.GooglePhoto;
 import com.bikash.photo_porter.exception.UnauthorizedException;
 import com.bikash.photo_porter.model.UserToken;
 import com.bikash.photo_porter.repository.UserRepository;
 import com.bikash.photo_porter.repository.UserTokenRepository;
 import com.bikash.photo_porter.service.GooglePhotosClient;
 import com.bikash.photo_porter.service.TokenRefreshService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.stream.Stream;
 
 
 @RestController
@@ -25,6 +36,15 @@ public class PhotoController {
     private final UserTokenRepository userTokenRepository;
     private final GooglePhotosClient photosClient;
     private final TokenRefreshService tokenRefreshService;
+    private final ObjectMapper objectMapper;
+
+    private static final String NDJSON = "application/x-ndjson";
+
+    @Value("${photo.google.album-page-size:50}")
+    private int albumPageSize;
+
+    @Value("${photo.google.media-page-size:100}")
+    private int mediaPageSize;
 
     private UserToken getTokenByEmail(String email) {
         return userRepository.findByEmail(email)
@@ -33,12 +53,12 @@ public class PhotoController {
     }
 
     @GetMapping("/albums")
-    public ResponseEntity<List<Map<String, Object>>> listAlbums(@RequestParam String email) {
+    public ResponseEntity<List<GoogleAlbum>> listAlbums(@RequestParam String email) {
         try {
             UserToken userToken = getTokenByEmail(email);
             String validToken = tokenRefreshService.refreshTokenIfNeeded(userToken);
             
-            List<Map<String, Object>> albums = photosClient.listAlbums(validToken);
+            List<GoogleAlbum> albums = photosClient.listAlbums(validToken);
             log.info("Retrieved {} albums for user: {}", albums.size(), email);
             return ResponseEntity.ok(albums);
         } catch (Exception e) {
@@ -48,12 +68,12 @@ public class PhotoController {
     }
 
     @GetMapping("/albums/{albumId}/photos")
-    public ResponseEntity<List<Map<String, Object>>> listPhotos(@RequestParam String email, @PathVariable String albumId) {
+    public ResponseEntity<List<GooglePhoto>> listPhotos(@RequestParam String email, @PathVariable String albumId) {
         try {
             UserToken userToken = getTokenByEmail(email);
             String validToken = tokenRefreshService.refreshTokenIfNeeded(userToken);
             
-            List<Map<String, Object>> photos = photosClient.listPhotosInAlbum(validToken, albumId);
+            List<GooglePhoto> photos = photosClient.listPhotosInAlbum(validToken, albumId);
             log.info("Retrieved {} photos from album {} for user: {}", photos.size(), albumId, email);
             return ResponseEntity.ok(photos);
         } catch (Exception e) {
@@ -62,14 +82,60 @@ public class PhotoController {
         }
     }
 
+    @GetMapping(value = "/albums/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamAlbums(@RequestParam String email) {
+        String validToken = tokenRefreshService.refreshTokenIfNeeded(getTokenByEmail(email));
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(out -> writeNdjson(out, photosClient.streamAlbums(validToken), albumPageSize,
+                        "albums for user " + email));
+    }
+
+    @GetMapping(value = "/albums/{albumId}/photos/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamPhotos(@RequestParam String email, @PathVariable String albumId) {
+        String validToken = tokenRefreshService.refreshTokenIfNeeded(getTokenByEmail(email));
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(out -> writeNdjson(out, photosClient.streamPhotosInAlbum(validToken, albumId),
+                        mediaPageSize, "photos of album " + albumId));
+    }
+
+    /**
+     * Writes one JSON document per line, flushing after every page of the
+     * listing so the client sees the first items without waiting for the whole
+     * listing.
+     */
+    private void writeNdjson(OutputStream out, Stream<?> items, int pageSize, String description)
+            throws IOException {
+        ObjectWriter writer = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        long count = 0;
+        try (items) {
+            Iterator<?> it = items.iterator();
+            while (it.hasNext()) {
+                writer.writeValue(out, it.next());
+                out.write('\n');
+                if (++count % pageSize == 0) {
+                    out.flush();
+                }
+            }
+            out.flush();
+            log.info("Streamed {} {}", count, description);
+        } catch (IOException e) {
+            log.warn("Client stopped reading {} after {} items: {}", description, count, e.getMessage());
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to stream {} after {} items", description, count, e);
+            throw e;
+        }
+    }
+
     @GetMapping("/albums/{albumId}")
-    public ResponseEntity<Map<String, Object>> getAlbumDetails(@RequestParam String email, @PathVariable String albumId) {
+    public ResponseEntity<GoogleAlbum> getAlbumDetails(@RequestParam String email, @PathVariable String albumId) {
         try {
             UserToken userToken = getTokenByEmail(email);
             String validToken = tokenRefreshService.refreshTokenIfNeeded(userToken);
             
-            // This would need to be implemented in GooglePhotosClient
-            Map<String, Object> albumDetails = photosClient.getAlbumDetails(validToken, albumId);
+            GoogleAlbum albumDetails = photosClient.getAlbumDetails(validToken, albumId);
             return ResponseEntity.ok(albumDetails);
         } catch (Exception e) {
             log.error("Failed to get album details for album {} and user: {}", albumId, email, e);
@@ -0,0 +1,70 @@
+package com.bikash.photo_porter.controller;
+
+import com.bikash.photo_porter.dto.SyncRequest;
+import com.bikash.photo_porter.exception.TransferException;
+import com.bikash.photo_porter.model.SyncState;
+import com.bikash.photo_porter.model.TransferJob;
+import com.bikash.photo_porter.service.SyncService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/sync")
+@RequiredArgsConstructor
+@Slf4j
+public class SyncController {
+
+    private final SyncService syncService;
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> enableSync(@Valid @RequestBody SyncRequest request) {
+        try {
+            log.info("Enabling sync from {} to {}", request.getSourceEmail(), request.getTargetEmail());
+            SyncState state = syncService.enableSync(request.getSourceEmail(), request.getTargetEmail());
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "Sync enabled successfully");
+            response.put("syncId", state.getId());
+            response.put("sourceEmail", request.getSourceEmail());
+            response.put("targetEmail", request.getTargetEmail());
+            response.put("watermark", state.getWatermark());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("Failed to enable sync", e);
+            throw new TransferException("Failed to enable sync: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/{syncId}/run")
+    public ResponseEntity<Map<String, Object>> runSync(@PathVariable Long syncId) {
+        try {
+            TransferJob job = syncService.runSync(syncId);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("syncId", syncId);
+            response.put("jobId", job != null ? job.getId() : null);
+            response.put("message", job != null ? "Sync job submitted" : "Nothing to sync");
+            return ResponseEntity.accepted().body(response);
+        } catch (Exception e) {
+            log.error("Failed to run sync: {}", syncId, e);
+            throw new TransferException("Failed to run sync: " + e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/{syncId}")
+    public ResponseEntity<Map<String, Object>> disableSync(@PathVariable Long syncId) {
+        try {
+            syncService.disableSync(syncId);
+            return ResponseEntity.ok(Map.of("message", "Sync disabled", "syncId", syncId));
+        } catch (Exception e) {
+            log.error("Failed to disable sync: {}", syncId, e);
+            throw new TransferException("Failed to disable sync: " + e.getMessage());
+        }
+    }
+}
@@ -1,8 +1,15 @@
 package com.bikash.photo_porter.controller;
 
+import com.bikash.photo_porter.dto.AlbumTransferRequest;
+import com.bikash.photo_porter.dto.TransferHistoryPage;
+import com.bikash.photo_porter.dto.TransferJobProgress;
 import com.bikash.photo_porter.dto.TransferRequest;
 import com.bikash.photo_porter.exception.TransferException;
+import com.bikash.photo_porter.model.ErrorClass;
 import com.bikash.photo_porter.model.PhotoTransfer;
+import com.bikash.photo_porter.model.TransferJob;
+import com.bikash.photo_porter.model.TransferStatus;
+import com.bikash.photo_porter.service.DeadLetterReplayer;
 import com.bikash.photo_porter.service.TransferService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -10,7 +17,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -20,6 +26,7 @@ import java.util.Map;
 public class TransferController {
 
     private final TransferService transferService;
+    private final DeadLetterReplayer deadLetterReplayer;
 
     @PostMapping
     public ResponseEntity<Map<String, Object>> transferPhotos(@Valid @RequestBody TransferRequest request) {
@@ -27,17 +34,19 @@ public class TransferController {
             log.info("Initiating transfer from {} to {} for {} photos", 
                     request.getSourceEmail(), request.getTargetEmail(), request.getPhotoIds().size());
 
-            transferService.transferPhotos(request.getSourceEmail(), request.getTargetEmail(), request.getPhotoIds());
+            TransferJob job = transferService.submitTransfer(
+                    request.getSourceEmail(), request.getTargetEmail(), request.getPhotoIds(), request.getPriority());
             
             Map<String, Object> response = Map.of(
-                "message", "Transfer initiated successfully",
+                "message", "Transfer submitted successfully",
+                "jobId", job.getId(),
                 "sourceEmail", request.getSourceEmail(),
                 "targetEmail", request.getTargetEmail(),
                 "photoCount", request.getPhotoIds().size(),
-                "status", "IN_PROGRESS"
+                "status", job.getStatus()
             );
             
-            return ResponseEntity.ok(response);
+            return ResponseEntity.accepted().body(response);
         } catch (IllegalArgumentException e) {
             log.error("Invalid transfer request: {}", e.getMessage());
             throw new TransferException("Invalid transfer request: " + e.getMessage());
@@ -47,16 +56,45 @@ public class TransferController {
         }
     }
 
+    @PostMapping("/albums/{albumId}")
+    public ResponseEntity<Map<String, Object>> transferAlbum(@PathVariable String albumId,
+                                                             @Valid @RequestBody AlbumTransferRequest request) {
+        try {
+            log.info("Initiating album transfer of {} from {} to {}",
+                    albumId, request.getSourceEmail(), request.getTargetEmail());
+
+            TransferJob job = transferService.submitAlbumTransfer(
+                    request.getSourceEmail(), request.getTargetEmail(), albumId);
+
+            Map<String, Object> response = Map.of(
+                "message", "Album transfer submitted successfully",
+                "jobId", job.getId(),
+                "albumId", albumId,
+                "sourceEmail", request.getSourceEmail(),
+                "targetEmail", request.getTargetEmail(),
+                "status", job.getStatus()
+            );
+
+            return ResponseEntity.accepted().body(response);
+        } catch (Exception e) {
+            log.error("Album transfer failed", e);
+            throw new TransferException("Album transfer failed: " + e.getMessage());
+        }
+    }
+
     @GetMapping
-    public ResponseEntity<List<PhotoTransfer>> getTransferHistory(@RequestParam String email) {
+    public ResponseEntity<TransferHistoryPage> getTransferHistory(@RequestParam String email,
+                                                                  @RequestParam(required = false) String cursor,
+                                                                  @RequestParam(required = false) TransferStatus status,
+                                                                  @RequestParam(required = false) Integer limit) {
         try {
             if (email == null || email.trim().isEmpty()) {
                 throw new IllegalArgumentException("Email parameter is required");
             }
 
-            List<PhotoTransfer> transfers = transferService.getTransfersForUser(email);
-            log.info("Retrieved {} transfers for user: {}", transfers.size(), email);
-            return ResponseEntity.ok(transfers);
+            TransferHistoryPage page = transferService.getTransferHistory(email, cursor, status, limit);
+            log.info("Retrieved {} transfers for user: {}", page.items().size(), email);
+            return ResponseEntity.ok(page);
         } catch (Exception e) {
             log.error("Failed to get transfer history for user: {}", email, e);
             throw new TransferException("Failed to get transfer history: " + e.getMessage());
@@ -74,26 +112,53 @@ public class TransferController {
         }
     }
 
-    @GetMapping("/status/{transferId}")
-    public ResponseEntity<Map<String, Object>> getTransferStatus(@PathVariable Long transferId) {
+    @GetMapping("/status/{jobId}")
+    public ResponseEntity<TransferJobProgress> getTransferStatus(@PathVariable Long jobId) {
         try {
-            PhotoTransfer transfer = transferService.getTransferById(transferId);
+            return ResponseEntity.ok(transferService.getJobProgress(jobId));
+        } catch (Exception e) {
+            log.error("Failed to get transfer status for job: {}", jobId, e);
+            throw new TransferException("Failed to get transfer status: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/jobs/{jobId}/retry")
+    public ResponseEntity<Map<String, Object>> retryFailedItems(@PathVariable Long jobId) {
+        try {
+            log.info("Retrying failed photos of job: {}", jobId);
+            int queued = transferService.retryFailedItems(jobId);
 
-            Map<String, Object> status = Map.of(
-                "transferId", transfer.getId(),
-                "status", transfer.getStatus(),
-                "startedAt", transfer.getStartedAt(),
-                "completedAt", transfer.getCompletedAt(),
-                "errorMessage", transfer.getErrorMessage()
+            Map<String, Object> response = Map.of(
+                "message", queued > 0 ? "Retry of failed photos initiated" : "No failed photos to retry",
+                "jobId", jobId,
+                "retried", queued
             );
 
-            return ResponseEntity.ok(status);
+            return ResponseEntity.accepted().body(response);
         } catch (Exception e) {
-            log.error("Failed to get transfer status for id: {}", transferId, e);
-            throw new TransferException("Failed to get transfer status: " + e.getMessage());
+            log.error("Failed to retry failed photos of job: {}", jobId, e);
+            throw new TransferException("Failed to retry job: " + e.getMessage());
         }
     }
 
+    /**
+     * Re-publishes dead-lettered transfer messages, optionally only those that
+     * failed with one error class (e.g. AUTH after a user re-connected).
+     */
+    @PostMapping("/dead-letters/replay")
+    public ResponseEntity<Map<String, Object>> replayDeadLetters(@RequestParam(required = false) Integer limit,
+                                                                 @RequestParam(required = false) ErrorClass errorClass) {
+        log.info("Replaying dead-lettered transfers (limit {}, error class {})", limit, errorClass);
+        int replayed = deadLetterReplayer.replay(limit, errorClass != null ? errorClass.name() : null);
+
+        Map<String, Object> response = Map.of(
+            "message", replayed > 0 ? "Dead-lettered transfers re-queued" : "No dead-lettered transfers to replay",
+            "replayed", replayed
+        );
+
+        return ResponseEntity.accepted().body(response);
+    }
+
     @PostMapping("/{transferId}/retry")
     public ResponseEntity<Map<String, Object>> retryFailedTransfer(@PathVariable Long transferId) {
         try {
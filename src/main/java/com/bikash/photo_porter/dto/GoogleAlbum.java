@@ -1,12 +1,10 @@
 package com.bikash.photo_porter.dto;
-import lombok.AllArgsConstructor;
-import lombok.Data;
 
-@Data
-@AllArgsConstructor
-public class GoogleAlbum {
-    private String id;
-    private String title;
-    private String mediaItemsCount;
+public record GoogleAlbum(
+        String id,
+        String title,
+        Long mediaItemsCount,
+        String coverPhotoBaseUrl,
+        String productUrl,
+        Boolean isWriteable) {
 }
-
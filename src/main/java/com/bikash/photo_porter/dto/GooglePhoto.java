@@ -1,12 +1,11 @@
 package com.bikash.photo_porter.dto;
 
-import lombok.AllArgsConstructor;
-import lombok.Data;
-
-@Data
-@AllArgsConstructor
-public class GooglePhoto {
-    private String id;
-    private String filename;
-    private String baseUrl;
-}
\ No newline at end of file
+public record GooglePhoto(
+        String id,
+        String filename,
+        String baseUrl,
+        String mimeType,
+        String creationTime,
+        Long width,
+        Long height) {
+}
@@ -0,0 +1,16 @@
+package com.bikash.photo_porter.dto;
+
+import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+@Data
+public class SyncRequest {
+    @NotNull(message = "Source email is required")
+    @Email(message = "Source email must be a valid email address")
+    private String sourceEmail;
+
+    @NotNull(message = "Target email is required")
+    @Email(message = "Target email must be a valid email address")
+    private String targetEmail;
+}
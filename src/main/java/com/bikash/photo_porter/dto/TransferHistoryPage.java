@@ -0,0 +1,32 @@
+package com.bikash.photo_porter.dto;
+
+import com.bikash.photo_porter.model.TransferStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * One page of a user's transfer history, newest first. Pass {@code nextCursor}
+ * back to get the following page; it is {@code null} on the last page.
+ */
+public record TransferHistoryPage(List<Item> items, String nextCursor) {
+
+    public enum Direction {
+        OUTGOING,
+        INCOMING
+    }
+
+    public record Item(
+            Long id,
+            Long jobId,
+            String photoId,
+            Direction direction,
+            Long sourceUserId,
+            Long targetUserId,
+            TransferStatus status,
+            LocalDateTime startedAt,
+            LocalDateTime completedAt,
+            Long bytesTransferred,
+            String errorMessage) {
+    }
+}
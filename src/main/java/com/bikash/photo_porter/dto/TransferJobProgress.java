@@ -0,0 +1,21 @@
+package com.bikash.photo_porter.dto;
+
+import com.bikash.photo_porter.model.TransferStatus;
+
+import java.time.LocalDateTime;
+
+public record TransferJobProgress(
+        Long jobId,
+        TransferStatus status,
+        long total,
+        long pending,
+        long inProgress,
+        long succeeded,
+        long failed,
+        long skipped,
+        long bytesTransferred,
+        LocalDateTime createdAt,
+        LocalDateTime startedAt,
+        LocalDateTime completedAt,
+        String errorMessage) {
+}
@@ -10,8 +10,12 @@ import lombok.NoArgsConstructor;
 public class TransferMessage {
     private String photoId;
     private String fileName;
+    // Inline content; unset in claim-check mode, where contentRef points into the spool store
     private byte[] photoBytes;
     private Long sourceUserId;
     private Long targetUserId;
     private String targetAccessToken;
+    private String contentRef;
+    private Long contentLength;
+    private String contentSha256;
 }
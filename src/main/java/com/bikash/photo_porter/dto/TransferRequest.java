@@ -1,5 +1,6 @@
 package com.bikash.photo_porter.dto;
 
+import com.bikash.photo_porter.model.JobPriority;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
@@ -19,4 +20,7 @@ public class TransferRequest {
 
     @NotEmpty(message = "Photo IDs list cannot be empty")
     private List<@NotNull(message = "Photo ID cannot be null") String> photoIds;
+
+    // Optional scheduling tier; NORMAL when omitted
+    private JobPriority priority;
 }
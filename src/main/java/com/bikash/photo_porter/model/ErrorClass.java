@@ -0,0 +1,14 @@
+package com.bikash.photo_porter.model;
+
+/**
+ * Coarse cause of a failed photo transfer, used to decide whether and when to
+ * try it again.
+ */
+public enum ErrorClass {
+    RATE_LIMITED,
+    SERVER_ERROR,
+    NETWORK,
+    AUTH,
+    CLIENT,
+    UNKNOWN
+}
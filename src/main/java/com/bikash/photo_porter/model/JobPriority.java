@@ -0,0 +1,11 @@
+package com.bikash.photo_porter.model;
+
+/**
+ * Scheduling tier of a transfer job. A tier is only served while every higher
+ * tier has nothing queued.
+ */
+public enum JobPriority {
+    HIGH,
+    NORMAL,
+    LOW
+}
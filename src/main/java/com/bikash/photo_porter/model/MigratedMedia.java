@@ -0,0 +1,56 @@
+package com.bikash.photo_porter.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One photo known to exist in the target library, keyed by where it came from.
+ * Used to skip photos that an earlier job already moved.
+ */
+@Entity
+@Table(name = "migrated_media",
+        uniqueConstraints = @UniqueConstraint(name = "uk_migrated_media_key",
+                columnNames = {"source_user_id", "target_user_id", "photo_id"}),
+        indexes = @Index(name = "idx_migrated_media_hash", columnList = "target_user_id, content_hash"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MigratedMedia {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "migrated_media_seq")
+    @SequenceGenerator(name = "migrated_media_seq", sequenceName = "migrated_media_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "source_user_id", nullable = false)
+    private Long sourceUserId;
+
+    @Column(name = "target_user_id", nullable = false)
+    private Long targetUserId;
+
+    @Column(name = "photo_id", nullable = false, length = 255)
+    private String photoId;
+
+    @Column(name = "target_media_item_id")
+    private String targetMediaItemId;
+
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    @Column(name = "bytes")
+    private Long bytes;
+
+    @Column(name = "migrated_at", nullable = false)
+    private LocalDateTime migratedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (this.migratedAt == null) {
+            this.migratedAt = LocalDateTime.now();
+        }
+    }
+}
@@ -1,23 +1,39 @@
 package com.bikash.photo_porter.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "photo_transfers")
+@Table(name = "photo_transfers",
+        indexes = {
+                @Index(name = "idx_photo_transfers_retry", columnList = "status, next_attempt_at"),
+                @Index(name = "idx_photo_transfers_source_started", columnList = "source_user_id, started_at"),
+                @Index(name = "idx_photo_transfers_target_started", columnList = "target_user_id, started_at")
+        })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class PhotoTransfer {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "photo_transfer_seq")
+    @SequenceGenerator(name = "photo_transfer_seq", sequenceName = "photo_transfers_seq", allocationSize = 50)
     private Long id;
 
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "job_id")
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private TransferJob job;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "source_user_id", nullable = false)
     private User sourceUser;
@@ -41,6 +57,21 @@ public class PhotoTransfer {
     @Column(name = "error_message", columnDefinition = "TEXT")
     private String errorMessage;
 
+    @Column(name = "bytes_transferred")
+    private Long bytesTransferred;
+
+    // Failed attempts so far; null on rows created before retries were tracked
+    @Column(name = "attempts")
+    private Integer attempts;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "error_class", length = 20)
+    private ErrorClass errorClass;
+
+    // When a RETRY_PENDING row becomes due again
+    @Column(name = "next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
     @PrePersist
     protected void onCreate() {
         this.startedAt = LocalDateTime.now();
@@ -0,0 +1,61 @@
+package com.bikash.photo_porter.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+/**
+ * Incremental sync between a source and a target account. Each run only looks
+ * at media created after {@link #watermark}; the watermark moves forward once
+ * the job that copied the newer media has finished without failures.
+ */
+@Entity
+@Table(name = "sync_states",
+        uniqueConstraints = @UniqueConstraint(name = "uk_sync_states_pair",
+                columnNames = {"source_user_id", "target_user_id"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SyncState {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "source_user_id", nullable = false)
+    private User sourceUser;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "target_user_id", nullable = false)
+    private User targetUser;
+
+    @Column(nullable = false)
+    private Boolean enabled = true;
+
+    // Creation time of the newest media known to be on the target; null until the first run completes
+    @Column(name = "watermark")
+    private Instant watermark;
+
+    // Creation time of the newest media in lastJobId, promoted to watermark when that job succeeds
+    @Column(name = "pending_watermark")
+    private Instant pendingWatermark;
+
+    @Column(name = "last_job_id")
+    private Long lastJobId;
+
+    @Column(name = "last_run_at")
+    private LocalDateTime lastRunAt;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = LocalDateTime.now();
+    }
+}
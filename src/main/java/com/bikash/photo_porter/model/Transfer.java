@@ -15,7 +15,8 @@ import java.time.LocalDateTime;
 public class Transfer {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transfer_seq")
+    @SequenceGenerator(name = "transfer_seq", sequenceName = "transfers_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "photo_id", nullable = false, length = 255)
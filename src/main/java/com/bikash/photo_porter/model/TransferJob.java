@@ -0,0 +1,106 @@
+package com.bikash.photo_porter.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Entity
+@Table(name = "transfer_jobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransferJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "source_user_id", nullable = false)
+    private User sourceUser;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "target_user_id", nullable = false)
+    private User targetUser;
+
+    @Column(length = 20)
+    private TransferStatus status = TransferStatus.PENDING;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 10)
+    private JobPriority priority = JobPriority.NORMAL;
+
+    // Share of its user's turns the job gets relative to the user's other jobs
+    @Column(name = "weight")
+    private Integer weight = 1;
+
+    @Column(name = "source_album_id")
+    private String sourceAlbumId;
+
+    @Column(name = "target_album_id")
+    private String targetAlbumId;
+
+    // Set once every item of the source album has been turned into a photo row
+    @Column(name = "album_listed")
+    private Boolean albumListed;
+
+    @Column(name = "total_photos", nullable = false)
+    private Integer totalPhotos;
+
+    // Progress counters are only written through TransferJobRepository.applyProgress,
+    // so saving a stale copy of the job never rolls them back.
+    @Column(name = "pending_count", nullable = false, updatable = false)
+    private Long pendingCount = 0L;
+
+    @Column(name = "in_progress_count", nullable = false, updatable = false)
+    private Long inProgressCount = 0L;
+
+    @Column(name = "success_count", nullable = false, updatable = false)
+    private Long successCount = 0L;
+
+    @Column(name = "failed_count", nullable = false, updatable = false)
+    private Long failedCount = 0L;
+
+    @Column(name = "skipped_count", nullable = false, updatable = false)
+    private Long skippedCount = 0L;
+
+    @Column(name = "bytes_transferred", nullable = false, updatable = false)
+    private Long bytesTransferred = 0L;
+
+    // Lease held by the instance running the job, renewed by its heartbeat. Only
+    // written through the lease queries in TransferJobRepository.
+    @Column(name = "lease_owner", updatable = false)
+    private String leaseOwner;
+
+    @Column(name = "lease_expires_at", updatable = false)
+    private LocalDateTime leaseExpiresAt;
+
+    @OneToMany(mappedBy = "job", fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private List<PhotoTransfer> photos = new ArrayList<>();
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    @Column(name = "error_message", columnDefinition = "TEXT")
+    private String errorMessage;
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = LocalDateTime.now();
+    }
+}
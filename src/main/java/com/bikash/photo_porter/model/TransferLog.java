@@ -15,7 +15,8 @@ import java.time.LocalDateTime;
 public class TransferLog {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transfer_log_seq")
+    @SequenceGenerator(name = "transfer_log_seq", sequenceName = "transfer_logs_seq", allocationSize = 50)
     private Long id;
     @Column(name = "transfer_id", nullable = false)
     private Long transferId;
@@ -4,6 +4,8 @@ public enum TransferStatus {
     PENDING,
     IN_PROGRESS,
     SUCCESS,
-    FAILED
+    FAILED,
+    SKIPPED,
+    RETRY_PENDING
 }
 
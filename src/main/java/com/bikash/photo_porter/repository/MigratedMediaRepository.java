@@ -0,0 +1,38 @@
+package com.bikash.photo_porter.repository;
+
+import com.bikash.photo_porter.model.MigratedMedia;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface MigratedMediaRepository extends JpaRepository<MigratedMedia, Long> {
+
+    @Query("select m.photoId from MigratedMedia m where m.sourceUserId = :sourceUserId " +
+            "and m.targetUserId = :targetUserId and m.photoId in :photoIds")
+    List<String> findMigratedPhotoIds(@Param("sourceUserId") Long sourceUserId,
+                                      @Param("targetUserId") Long targetUserId,
+                                      @Param("photoIds") Collection<String> photoIds);
+
+    @Query("select m.targetMediaItemId from MigratedMedia m where m.sourceUserId = :sourceUserId " +
+            "and m.targetUserId = :targetUserId and m.photoId in :photoIds and m.targetMediaItemId is not null")
+    List<String> findTargetMediaItemIds(@Param("sourceUserId") Long sourceUserId,
+                                        @Param("targetUserId") Long targetUserId,
+                                        @Param("photoIds") Collection<String> photoIds);
+
+    @Query("select m.id as id, m.sourceUserId as sourceUserId, m.targetUserId as targetUserId, m.photoId as photoId " +
+            "from MigratedMedia m where m.id > :afterId order by m.id")
+    List<MigratedKey> findKeysAfter(@Param("afterId") Long afterId, Pageable page);
+
+    interface MigratedKey {
+        Long getId();
+        Long getSourceUserId();
+        Long getTargetUserId();
+        String getPhotoId();
+    }
+}
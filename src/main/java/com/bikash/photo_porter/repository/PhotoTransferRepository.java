@@ -1,14 +1,113 @@
 package com.bikash.photo_porter.repository;
 
 import com.bikash.photo_porter.model.PhotoTransfer;
-import com.bikash.photo_porter.model.User;
+import com.bikash.photo_porter.model.TransferStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface PhotoTransferRepository extends JpaRepository<PhotoTransfer, Long> {
-    List<PhotoTransfer> findBySourceUser(User sourceUser);
-    List<PhotoTransfer> findByTargetUser(User targetUser);
+
+    @Query("select p from PhotoTransfer p where p.job.id = :jobId and p.status = :status " +
+            "and p.id > :afterId order by p.id")
+    List<PhotoTransfer> findByJobIdAndStatusAfter(@Param("jobId") Long jobId,
+                                                  @Param("status") TransferStatus status,
+                                                  @Param("afterId") Long afterId,
+                                                  Pageable page);
+
+    @Query("select p.photoId from PhotoTransfer p where p.job.id = :jobId")
+    List<String> findPhotoIdsByJobId(@Param("jobId") Long jobId);
+
+    long countByJobIdAndStatus(Long jobId, TransferStatus status);
+
+    @Query("select p.id as id, p.job.id as jobId from PhotoTransfer p " +
+            "where p.status = :status and p.nextAttemptAt <= :now order by p.nextAttemptAt")
+    List<DueRetry> findDueRetries(@Param("status") TransferStatus status,
+                                  @Param("now") LocalDateTime now,
+                                  Pageable page);
+
+    @Modifying
+    @Transactional
+    @Query("update PhotoTransfer p set p.status = :status where p.id in :ids")
+    int updateStatus(@Param("ids") Collection<Long> ids, @Param("status") TransferStatus status);
+
+    /**
+     * Puts a job's failed rows back to pending with a fresh attempt budget.
+     */
+    @Modifying
+    @Transactional
+    @Query("update PhotoTransfer p set p.status = com.bikash.photo_porter.model.TransferStatus.PENDING, " +
+            "p.attempts = 0, p.nextAttemptAt = null, p.errorMessage = null, p.completedAt = null " +
+            "where p.job.id = :jobId and p.status = com.bikash.photo_porter.model.TransferStatus.FAILED")
+    int resetFailed(@Param("jobId") Long jobId);
+
+    /**
+     * Returns a job's in-flight rows to pending. Only called when a run starts,
+     * at which point anything still in flight belongs to a runner that died.
+     */
+    @Modifying
+    @Transactional
+    @Query("update PhotoTransfer p set p.status = com.bikash.photo_porter.model.TransferStatus.PENDING " +
+            "where p.job.id = :jobId and p.status = com.bikash.photo_porter.model.TransferStatus.IN_PROGRESS")
+    int requeueInProgress(@Param("jobId") Long jobId);
+
+    /**
+     * One page of a user's transfers in either direction, newest first, starting
+     * after the (startedAt, id) cursor. Each branch is a range scan on its
+     * (user, started_at) index that stops after {@code limit} rows, so the cost
+     * does not grow with the user's history. {@code status} is the status
+     * ordinal, or -1 for any.
+     */
+    @Query(value = "select h.id as id, h.jobId as jobId, h.photoId as photoId, h.sourceUserId as sourceUserId, " +
+            "h.targetUserId as targetUserId, h.status as status, h.startedAt as startedAt, " +
+            "h.completedAt as completedAt, h.bytesTransferred as bytesTransferred, h.errorMessage as errorMessage " +
+            "from (" +
+            "(select p.id as id, p.job_id as jobId, p.photo_id as photoId, p.source_user_id as sourceUserId, " +
+            "p.target_user_id as targetUserId, p.status as status, p.started_at as startedAt, " +
+            "p.completed_at as completedAt, p.bytes_transferred as bytesTransferred, p.error_message as errorMessage " +
+            "from photo_transfers p where p.source_user_id = :userId " +
+            "and (p.started_at < :beforeStartedAt or (p.started_at = :beforeStartedAt and p.id < :beforeId)) " +
+            "and (:status < 0 or p.status = :status) " +
+            "order by p.started_at desc, p.id desc limit :limit) " +
+            "union all " +
+            "(select p.id, p.job_id, p.photo_id, p.source_user_id, p.target_user_id, p.status, p.started_at, " +
+            "p.completed_at, p.bytes_transferred, p.error_message " +
+            "from photo_transfers p where p.target_user_id = :userId and p.source_user_id <> :userId " +
+            "and (p.started_at < :beforeStartedAt or (p.started_at = :beforeStartedAt and p.id < :beforeId)) " +
+            "and (:status < 0 or p.status = :status) " +
+            "order by p.started_at desc, p.id desc limit :limit)" +
+            ") h order by h.startedAt desc, h.id desc limit :limit",
+            nativeQuery = true)
+    List<HistoryRow> findHistoryPage(@Param("userId") Long userId,
+                                     @Param("beforeStartedAt") LocalDateTime beforeStartedAt,
+                                     @Param("beforeId") Long beforeId,
+                                     @Param("status") int status,
+                                     @Param("limit") int limit);
+
+    interface HistoryRow {
+        Long getId();
+        Long getJobId();
+        String getPhotoId();
+        Long getSourceUserId();
+        Long getTargetUserId();
+        Integer getStatus();
+        LocalDateTime getStartedAt();
+        LocalDateTime getCompletedAt();
+        Long getBytesTransferred();
+        String getErrorMessage();
+    }
+
+    interface DueRetry {
+        Long getId();
+        Long getJobId();
+    }
 }
@@ -0,0 +1,22 @@
+package com.bikash.photo_porter.repository;
+
+import com.bikash.photo_porter.model.SyncState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface SyncStateRepository extends JpaRepository<SyncState, Long> {
+
+    Optional<SyncState> findBySourceUserIdAndTargetUserId(Long sourceUserId, Long targetUserId);
+
+    @Query("select s from SyncState s join fetch s.sourceUser join fetch s.targetUser where s.id = :id")
+    Optional<SyncState> findWithUsersById(@Param("id") Long id);
+
+    @Query("select s.id from SyncState s where s.enabled = true order by s.id")
+    List<Long> findEnabledIds();
+}
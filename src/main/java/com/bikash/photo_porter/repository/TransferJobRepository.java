@@ -0,0 +1,77 @@
+package com.bikash.photo_porter.repository;
+
+import com.bikash.photo_porter.model.TransferJob;
+import com.bikash.photo_porter.model.TransferStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface TransferJobRepository extends JpaRepository<TransferJob, Long> {
+
+    @Query("select j from TransferJob j join fetch j.sourceUser join fetch j.targetUser where j.id = :id")
+    Optional<TransferJob> findWithUsersById(@Param("id") Long id);
+
+    @Modifying
+    @Transactional
+    @Query("update TransferJob j set " +
+            "j.pendingCount = j.pendingCount + :pending, " +
+            "j.inProgressCount = j.inProgressCount + :inProgress, " +
+            "j.successCount = j.successCount + :success, " +
+            "j.failedCount = j.failedCount + :failed, " +
+            "j.skippedCount = j.skippedCount + :skipped, " +
+            "j.bytesTransferred = j.bytesTransferred + :bytes " +
+            "where j.id = :id")
+    int applyProgress(@Param("id") Long id,
+                      @Param("pending") long pending,
+                      @Param("inProgress") long inProgress,
+                      @Param("success") long success,
+                      @Param("failed") long failed,
+                      @Param("skipped") long skipped,
+                      @Param("bytes") long bytes);
+
+    @Modifying
+    @Transactional
+    @Query("update TransferJob j set j.leaseOwner = :owner, j.leaseExpiresAt = :until where j.id = :id " +
+            "and (j.leaseOwner is null or j.leaseOwner = :owner or j.leaseExpiresAt < :now)")
+    int acquireLease(@Param("id") Long id,
+                     @Param("owner") String owner,
+                     @Param("now") LocalDateTime now,
+                     @Param("until") LocalDateTime until);
+
+    @Modifying
+    @Transactional
+    @Query("update TransferJob j set j.leaseExpiresAt = :until where j.id in :ids and j.leaseOwner = :owner")
+    int renewLeases(@Param("ids") Collection<Long> ids,
+                    @Param("owner") String owner,
+                    @Param("until") LocalDateTime until);
+
+    @Modifying
+    @Transactional
+    @Query("update TransferJob j set j.leaseOwner = null, j.leaseExpiresAt = null " +
+            "where j.id = :id and j.leaseOwner = :owner")
+    int releaseLease(@Param("id") Long id, @Param("owner") String owner);
+
+    /**
+     * Open jobs nobody holds a live lease on that still have work left: rows
+     * that were never picked up or were in flight when their runner died, or an
+     * album that was not fully listed. Leases held under {@code self} are
+     * treated as dead, since this instance has only just started.
+     */
+    @Query("select j.id from TransferJob j where j.status in :open " +
+            "and (j.leaseOwner is null or j.leaseOwner = :self or j.leaseExpiresAt < :now) " +
+            "and (j.albumListed = false or exists (select p.id from PhotoTransfer p " +
+            "where p.job = j and p.status in :unfinished)) order by j.id")
+    List<Long> findOrphanedJobIds(@Param("open") Collection<TransferStatus> open,
+                                  @Param("unfinished") Collection<TransferStatus> unfinished,
+                                  @Param("self") String self,
+                                  @Param("now") LocalDateTime now);
+}
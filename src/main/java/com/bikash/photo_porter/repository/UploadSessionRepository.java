@@ -0,0 +1,12 @@
+package com.bikash.photo_porter.repository;
+
+import com.bikash.photo_porter.model.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, Long> {
+    Optional<UploadSession> findBySessionKey(String sessionKey);
+}
@@ -0,0 +1,187 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.dto.TransferMessage;
+import com.bikash.photo_porter.exception.TransferException;
+import com.bikash.photo_porter.model.ErrorClass;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-publishes dead-lettered transfer messages to the main topic, keeping the
+ * {@link TransferRetryRouter#TRANSFER_ID} header so the original row is reused.
+ * <p>
+ * How far the dead-letter topic has been replayed is kept as committed offsets
+ * of consumer groups that never subscribe: {@code photo-transfer-dlt-replay}
+ * for full replays, plus one group per error class for replays filtered to that
+ * class. A filtered replay only moves its own class's position, and a full
+ * replay passes over records of a class that a filtered replay already
+ * re-published, so every record is replayed once whichever way it is reached.
+ * Offsets are committed only after the re-published records have been acked.
+ * Claim-check messages whose spooled bytes have been purged cannot succeed and
+ * are passed over.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DeadLetterReplayer {
+
+    private static final String REPLAY_GROUP = "photo-transfer-dlt-replay";
+
+    private final ConsumerFactory<String, TransferMessage> consumerFactory;
+    private final PhotoTransferProducer producer;
+    private final TransferRetryRouter retryRouter;
+    private final SpoolStore spoolStore;
+
+    @Value("${photo.kafka.topic}")
+    private String topic;
+
+    @Value("${photo.kafka.replay.max-records:1000}")
+    private int maxRecords;
+
+    /**
+     * Replays up to {@code limit} dead-lettered messages, optionally only those
+     * that failed with {@code errorClass}; the others stay available to later
+     * replays.
+     *
+     * @return the number of messages re-published
+     */
+    public synchronized int replay(Integer limit, String errorClass) {
+        int max = Math.max(1, Math.min(limit != null ? limit : maxRecords, maxRecords));
+        int replayed = 0;
+        int expired = 0;
+        String group = errorClass != null ? groupFor(errorClass) : REPLAY_GROUP;
+        try (Consumer<String, TransferMessage> consumer = consumerFactory.createConsumer(group, "dlt-replay")) {
+            String deadLetterTopic = retryRouter.deadLetterTopic();
+            Set<TopicPartition> partitions = new HashSet<>();
+            consumer.partitionsFor(deadLetterTopic)
+                    .forEach(p -> partitions.add(new TopicPartition(deadLetterTopic, p.partition())));
+            consumer.assign(partitions);
+
+            // Where to start, and which records filtered replays have already taken
+            Map<TopicPartition, Long> start = positions(consumer, group, REPLAY_GROUP, partitions);
+            Map<String, Map<TopicPartition, Long>> replayedByClass = new HashMap<>();
+            if (errorClass != null) {
+                positions(consumer, group, group, partitions)
+                        .forEach((tp, offset) -> start.merge(tp, offset, Math::max));
+            } else {
+                for (ErrorClass value : ErrorClass.values()) {
+                    replayedByClass.put(value.name(), positions(consumer, group, groupFor(value.name()), partitions));
+                }
+            }
+            Map<TopicPartition, Long> end = consumer.endOffsets(partitions);
+            Set<TopicPartition> remaining = new HashSet<>();
+            for (TopicPartition tp : partitions) {
+                consumer.seek(tp, start.get(tp));
+                if (start.get(tp) < end.get(tp)) {
+                    remaining.add(tp);
+                }
+            }
+
+            while (replayed < max && !remaining.isEmpty()) {
+                ConsumerRecords<String, TransferMessage> records = consumer.poll(Duration.ofSeconds(1));
+                List<CompletableFuture<?>> sends = new ArrayList<>();
+                Map<TopicPartition, OffsetAndMetadata> processed = new HashMap<>();
+                for (ConsumerRecord<String, TransferMessage> record : records) {
+                    TopicPartition tp = new TopicPartition(record.topic(), record.partition());
+                    if (record.offset() >= end.get(tp)) {
+                        // Dead-lettered after this replay started
+                        continue;
+                    }
+                    if (replayed >= max) {
+                        break;
+                    }
+                    String failedWith = TransferRetryRouter.headerValue(record.headers(),
+                            TransferRetryRouter.ERROR_CLASS);
+                    TransferMessage message = record.value();
+                    boolean wanted = errorClass == null
+                            ? !alreadyReplayed(replayedByClass, failedWith, tp, record.offset())
+                            : errorClass.equals(failedWith);
+                    if (message != null && wanted) {
+                        if (message.getContentRef() != null && !spoolStore.objectExists(message.getContentRef())) {
+                            log.warn("Not replaying photo {}: its spooled content has been purged",
+                                    message.getPhotoId());
+                            expired++;
+                        } else {
+                            sends.add(producer.send(topic, message, replayHeaders(record)));
+                            replayed++;
+                        }
+                    }
+                    processed.put(tp, new OffsetAndMetadata(record.offset() + 1));
+                }
+                CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+                if (!processed.isEmpty()) {
+                    consumer.commitSync(processed);
+                }
+                remaining.removeIf(tp -> consumer.position(tp) >= end.get(tp));
+            }
+        } catch (Exception e) {
+            log.error("Dead-letter replay stopped after {} messages", replayed, e);
+            throw new TransferException("Dead-letter replay failed after " + replayed + " messages: " + e.getMessage());
+        }
+        log.info("Replayed {} dead-lettered transfer messages ({} passed over with purged content)", replayed,
+                expired);
+        return replayed;
+    }
+
+    private static String groupFor(String errorClass) {
+        return REPLAY_GROUP + "-" + errorClass.toLowerCase();
+    }
+
+    private static boolean alreadyReplayed(Map<String, Map<TopicPartition, Long>> replayedByClass, String errorClass,
+                                           TopicPartition tp, long offset) {
+        Map<TopicPartition, Long> positions = errorClass != null ? replayedByClass.get(errorClass) : null;
+        return positions != null && offset < positions.get(tp);
+    }
+
+    /**
+     * The group's committed offsets, or the start of each partition where it
+     * has none. {@code consumer} belongs to {@code ownGroup}; other groups are
+     * read through a short-lived consumer of their own.
+     */
+    private Map<TopicPartition, Long> positions(Consumer<String, TransferMessage> consumer, String ownGroup,
+                                                String group, Set<TopicPartition> partitions) {
+        Map<TopicPartition, Long> positions = new HashMap<>(consumer.beginningOffsets(partitions));
+        Map<TopicPartition, OffsetAndMetadata> committed;
+        if (group.equals(ownGroup)) {
+            committed = consumer.committed(partitions);
+        } else {
+            try (Consumer<String, TransferMessage> other = consumerFactory.createConsumer(group, "dlt-replay-offsets")) {
+                committed = other.committed(partitions);
+            }
+        }
+        committed.forEach((tp, offset) -> {
+            if (offset != null) {
+                positions.merge(tp, offset.offset(), Math::max);
+            }
+        });
+        return positions;
+    }
+
+    /**
+     * Keeps the transfer id so the consumer picks up the original row; the
+     * failure headers of the dead-lettered attempt are dropped.
+     */
+    private static List<Header> replayHeaders(ConsumerRecord<String, TransferMessage> record) {
+        Header transferId = record.headers().lastHeader(TransferRetryRouter.TRANSFER_ID);
+        return transferId != null ? List.of(transferId) : List.of();
+    }
+}
@@ -0,0 +1,285 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.model.JobPriority;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Decides which queued photo the transfer workers take next, so that one huge
+ * job cannot hold the workers while others wait behind it in FIFO order.
+ * <ul>
+ *     <li>Tiers are strict: {@link JobPriority#HIGH} work always goes first.</li>
+ *     <li>Within a tier, users take turns one photo at a time.</li>
+ *     <li>Within a user, jobs take turns, each taking up to its weight in
+ *     photos per turn (weighted round robin).</li>
+ * </ul>
+ * Only {@code photo.scheduler.max-in-flight} photos are admitted into the engine
+ * at once. A permit is returned when the photo leaves the transfer stage, so the
+ * FIFO queues inside the engine stay short and a newly submitted job gets its
+ * first photo into a worker within a few transfers.
+ */
+@Component
+@Slf4j
+public class FairScheduler {
+
+    /**
+     * The queue a unit of work belongs to.
+     *
+     * @param tenant user the work is charged to
+     * @param jobId  job within the tenant, or {@code null} for ad-hoc work
+     * @param weight photos the job may take per turn within its tenant
+     */
+    public record Flow(JobPriority priority, String tenant, Long jobId, int weight) {
+        public Flow {
+            priority = priority != null ? priority : JobPriority.NORMAL;
+            weight = Math.max(1, weight);
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition spaceAvailable = lock.newCondition();
+    private final Map<JobPriority, Tier> tiers = new EnumMap<>(JobPriority.class);
+    private final Semaphore inFlight;
+    private final int maxJobBacklog;
+    private final ExecutorService dispatcher;
+    private volatile boolean stopped;
+    private int queued;
+
+    private final MeterRegistry registry;
+    private final Map<JobPriority, Timer> queueDelay = new EnumMap<>(JobPriority.class);
+    private final Map<String, Counter> dispatchedByTenant = new ConcurrentHashMap<>();
+
+    public FairScheduler(MeterRegistry registry,
+                         @Value("${photo.scheduler.max-in-flight:16}") int maxInFlight,
+                         @Value("${photo.scheduler.max-job-backlog:500}") int maxJobBacklog) {
+        this.registry = registry;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxJobBacklog = maxJobBacklog;
+        for (JobPriority priority : JobPriority.values()) {
+            tiers.put(priority, new Tier());
+            queueDelay.put(priority, Timer.builder("photo.scheduler.queue.delay")
+                    .tag("priority", priority.name())
+                    .description("Time a photo waits in the fair scheduler before entering the engine")
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        Gauge.builder("photo.scheduler.queued", this, FairScheduler::queuedCount)
+                .description("Photos waiting in the fair scheduler")
+                .register(registry);
+        Gauge.builder("photo.scheduler.in.flight", inFlight, s -> maxInFlight - s.availablePermits())
+                .description("Photos admitted to the engine and not yet through the transfer stage")
+                .register(registry);
+        this.dispatcher = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("fair-scheduler-"));
+        this.dispatcher.execute(this::dispatchLoop);
+    }
+
+    /**
+     * Queues work for the flow. Blocks while the flow's job already has
+     * {@code photo.scheduler.max-job-backlog} photos queued, which throttles the
+     * job runner instead of letting one job fill memory.
+     *
+     * @param work started once the work is admitted; it must run the supplied
+     *             release callback when it no longer needs a worker slot
+     */
+    public void submit(Flow flow, Consumer<Runnable> work) {
+        Entry entry = new Entry(flow, work, System.nanoTime());
+        lock.lock();
+        try {
+            JobQueue job = tiers.get(flow.priority()).jobQueue(flow);
+            while (job.items.size() >= maxJobBacklog && !stopped) {
+                spaceAvailable.awaitUninterruptibly();
+                job = tiers.get(flow.priority()).jobQueue(flow);
+            }
+            job.items.add(entry);
+            queued++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatchLoop() {
+        while (!stopped) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Entry entry = take();
+            if (entry == null) {
+                inFlight.release();
+                return;
+            }
+            queueDelay.get(entry.flow.priority()).record(System.nanoTime() - entry.enqueuedAt, TimeUnit.NANOSECONDS);
+            dispatchedByTenant.computeIfAbsent(entry.flow.tenant(), tenant -> Counter.builder("photo.scheduler.dispatched")
+                    .tag("tenant", tenant)
+                    .description("Photos admitted to the engine per user; the rate ratio is the user's share")
+                    .register(registry)).increment();
+
+            AtomicBoolean released = new AtomicBoolean();
+            Runnable release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    inFlight.release();
+                }
+            };
+            try {
+                entry.work.accept(release);
+            } catch (Exception e) {
+                log.error("Scheduled transfer work failed to start", e);
+                release.run();
+            }
+        }
+    }
+
+    private Entry take() {
+        lock.lock();
+        try {
+            while (queued == 0) {
+                if (stopped) {
+                    return null;
+                }
+                notEmpty.awaitUninterruptibly();
+            }
+            for (Tier tier : tiers.values()) {
+                Entry entry = tier.next();
+                if (entry != null) {
+                    queued--;
+                    spaceAvailable.signalAll();
+                    return entry;
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int queuedCount() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lock.lock();
+        try {
+            stopped = true;
+            notEmpty.signalAll();
+            spaceAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        dispatcher.shutdownNow();
+    }
+
+    private record Entry(Flow flow, Consumer<Runnable> work, long enqueuedAt) {
+    }
+
+    /**
+     * Tenants with queued work, served round robin one photo per turn.
+     */
+    private static final class Tier {
+        private final Map<String, Tenant> tenants = new HashMap<>();
+        private final ArrayDeque<Tenant> ring = new ArrayDeque<>();
+
+        JobQueue jobQueue(Flow flow) {
+            Tenant tenant = tenants.get(flow.tenant());
+            if (tenant == null) {
+                tenant = new Tenant();
+                tenants.put(flow.tenant(), tenant);
+                ring.addLast(tenant);
+                tenant.key = flow.tenant();
+            }
+            return tenant.jobQueue(flow);
+        }
+
+        Entry next() {
+            Tenant tenant = ring.pollFirst();
+            if (tenant == null) {
+                return null;
+            }
+            Entry entry = tenant.next();
+            if (tenant.isEmpty()) {
+                tenants.remove(tenant.key);
+            } else {
+                ring.addLast(tenant);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * One user's jobs with queued work, served weighted round robin.
+     */
+    private static final class Tenant {
+        private String key;
+        private final Map<Long, JobQueue> jobs = new HashMap<>();
+        private final ArrayDeque<JobQueue> ring = new ArrayDeque<>();
+
+        JobQueue jobQueue(Flow flow) {
+            JobQueue job = jobs.get(flow.jobId());
+            if (job == null) {
+                job = new JobQueue(flow.jobId());
+                jobs.put(flow.jobId(), job);
+                ring.addLast(job);
+            }
+            job.weight = flow.weight();
+            return job;
+        }
+
+        Entry next() {
+            JobQueue job = ring.peekFirst();
+            Entry entry = job.items.pollFirst();
+            job.servedThisTurn++;
+            if (job.items.isEmpty()) {
+                ring.pollFirst();
+                jobs.remove(job.jobId);
+            } else if (job.servedThisTurn >= job.weight) {
+                job.servedThisTurn = 0;
+                ring.addLast(ring.pollFirst());
+            }
+            return entry;
+        }
+
+        boolean isEmpty() {
+            return ring.isEmpty();
+        }
+    }
+
+    private static final class JobQueue {
+        private final Long jobId;
+        private final ArrayDeque<Entry> items = new ArrayDeque<>();
+        private int weight = 1;
+        private int servedThisTurn;
+
+        JobQueue(Long jobId) {
+            this.jobId = jobId;
+        }
+    }
+}
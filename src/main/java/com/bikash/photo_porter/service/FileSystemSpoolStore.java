@@ -0,0 +1,142 @@
+package com.bikash.photo_porter.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * {@link SpoolStore} on the local filesystem, laid out as
+ * {@code <dir>/<first two hex digits>/<sha256>}. Objects are written to a
+ * temporary file and moved into place once their hash is known, so readers never
+ * see a partial object. Objects are shared between messages with the same
+ * content, so they are not deleted on consumption but purged once they are older
+ * than {@code photo.spool.retention-hours}.
+ */
+@Component
+@Slf4j
+public class FileSystemSpoolStore implements SpoolStore {
+
+    private static final Pattern KEY = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path root;
+    private final Duration retention;
+
+    public FileSystemSpoolStore(@Value("${photo.spool.dir:${java.io.tmpdir}/photo-porter-spool}") String dir,
+                                @Value("${photo.spool.retention-hours:24}") long retentionHours) {
+        this.root = Paths.get(dir);
+        this.retention = Duration.ofHours(retentionHours);
+    }
+
+    @Override
+    public SpoolObject putObject(InputStream content) throws IOException {
+        Files.createDirectories(root);
+        Path part = Files.createTempFile(root, "put-", ".part");
+        try {
+            MessageDigest digest = sha256();
+            long size;
+            try (InputStream in = new DigestInputStream(content, digest);
+                 OutputStream out = Files.newOutputStream(part)) {
+                size = in.transferTo(out);
+            }
+            String key = HexFormat.of().formatHex(digest.digest());
+            Path target = pathOf(key);
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(part, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // Same content spooled before; restart its retention clock
+                Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+            }
+            return new SpoolObject(key, size, key);
+        } finally {
+            Files.deleteIfExists(part);
+        }
+    }
+
+    @Override
+    public InputStream getObject(String key) throws IOException {
+        return Files.newInputStream(pathOf(key));
+    }
+
+    @Override
+    public void deleteObject(String key) throws IOException {
+        Files.deleteIfExists(pathOf(key));
+    }
+
+    @Override
+    public boolean objectExists(String key) {
+        return key != null && KEY.matcher(key).matches() && Files.isRegularFile(pathOf(key));
+    }
+
+    @Scheduled(fixedDelayString = "${photo.spool.purge-ms:3600000}")
+    public void purgeExpired() {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        FileTime cutoff = FileTime.from(Instant.now().minus(retention));
+        List<Path> expired;
+        try (Stream<Path> files = Files.walk(root, 2)) {
+            expired = files.filter(Files::isRegularFile)
+                    .filter(p -> lastModified(p).compareTo(cutoff) < 0)
+                    .toList();
+        } catch (IOException e) {
+            log.warn("Failed to scan spool directory {}: {}", root, e.getMessage());
+            return;
+        }
+        for (Path path : expired) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Failed to delete spooled object {}: {}", path, e.getMessage());
+            }
+        }
+        if (!expired.isEmpty()) {
+            log.info("Purged {} spooled objects older than {}", expired.size(), retention);
+        }
+    }
+
+    private Path pathOf(String key) {
+        // Keys arrive in Kafka messages, so never let one point outside the spool
+        if (key == null || !KEY.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid spool key: " + key);
+        }
+        return root.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            // Moved or deleted while scanning; leave it for the next purge
+            return FileTime.from(Instant.now());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
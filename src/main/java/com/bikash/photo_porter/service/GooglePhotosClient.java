@@ -1,186 +1,363 @@
 package com.bikash.photo_porter.service;
 
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
-import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.bikash.photo_porter.dto.GoogleAlbum;
+import com.bikash.photo_porter.dto.GooglePhoto;
 import com.google.api.client.http.*;
-import com.google.api.client.json.JsonFactory;
-import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.services.photoslibrary.v1.PhotosLibrary;
 import com.google.api.services.photoslibrary.v1.model.*;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.security.GeneralSecurityException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class GooglePhotosClient {
 
-    private static final String APPLICATION_NAME = "GooglePhotosTransferApp";
-    private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
+    private static final String UPLOADS_URL = "https://photoslibrary.googleapis.com/v1/uploads";
 
-    private PhotosLibrary getPhotosLibraryClient(String accessToken) throws GeneralSecurityException, IOException {
-        GoogleCredential credential = new GoogleCredential().setAccessToken(accessToken);
-        return new PhotosLibrary.Builder(
-                GoogleNetHttpTransport.newTrustedTransport(),
-                JSON_FACTORY,
-                credential)
-                .setApplicationName(APPLICATION_NAME)
-                .build();
+    private final HttpTransport googleHttpTransport;
+    private final PhotosLibraryClientCache clientCache;
+    private final ResumableUploader resumableUploader;
+
+    private final ExecutorService prefetchExecutor =
+            Executors.newCachedThreadPool(new CustomizableThreadFactory("photos-prefetch-"));
+
+    @Value("${photo.transfer.stream-buffer-bytes:65536}")
+    private int streamBufferBytes;
+
+    @Value("${photo.google.album-page-size:50}")
+    private int albumPageSize;
+
+    @Value("${photo.google.media-page-size:100}")
+    private int mediaPageSize;
+
+    @Value("${photo.google.prefetch-pages:2}")
+    private int prefetchPages;
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
     }
 
-    public List<Map<String, Object>> listAlbums(String accessToken) {
-        try {
-            PhotosLibrary client = getPhotosLibraryClient(accessToken);
-            ListAlbumsResponse response = client.albums().list().execute();
-            List<Album> albums = response.getAlbums();
-
-            return albums != null
-                    ? albums.stream()
-                    .map(album -> {
-                        Map<String, Object> albumMap = new HashMap<>();
-                        albumMap.put("id", album.getId());
-                        albumMap.put("title", album.getTitle());
-                        try {
-                            Object mediaItemsCount = album.getClass().getMethod("getMediaItemsCount").invoke(album);
-                            if (mediaItemsCount != null) {
-                                albumMap.put("mediaItemsCount", mediaItemsCount);
-                            }
-                        } catch (Exception e) {
-                            log.debug("Could not get mediaItemsCount for album: {}", album.getId());
-                        }
-                        albumMap.put("coverPhotoBaseUrl", album.getCoverPhotoBaseUrl());
-                        albumMap.put("productUrl", album.getProductUrl());
-                        return albumMap;
-                    })
-                    .collect(Collectors.toList())
-                    : Collections.emptyList();
+    private PhotosLibrary getPhotosLibraryClient(String accessToken) {
+        return clientCache.get(accessToken);
+    }
 
+    public List<GoogleAlbum> listAlbums(String accessToken) {
+        try (Stream<GoogleAlbum> albums = streamAlbums(accessToken)) {
+            return albums.collect(Collectors.toList());
         } catch (Exception e) {
             log.error("Failed to fetch albums", e);
             throw new RuntimeException("Failed to fetch albums: " + e.getMessage(), e);
         }
     }
 
-    public List<Map<String, Object>> listPhotosInAlbum(String accessToken, String albumId) {
-        try {
-            PhotosLibrary client = getPhotosLibraryClient(accessToken);
-
-            SearchMediaItemsRequest request = new SearchMediaItemsRequest().setAlbumId(albumId);
-            SearchMediaItemsResponse response = client.mediaItems().search(request).execute();
-
-            List<MediaItem> items = response.getMediaItems();
-
-            return items != null
-                    ? items.stream()
-                    .map(item -> {
-                        Map<String, Object> photoMap = new HashMap<>();
-                        photoMap.put("id", item.getId());
-                        try {
-                            Object filename = item.getClass().getMethod("getFilename").invoke(item);
-                            if (filename != null) {
-                                photoMap.put("filename", filename);
-                            }
-                        } catch (Exception e) {
-                            log.debug("Could not get filename for media item: {}", item.getId());
-                        }
-                        photoMap.put("baseUrl", item.getBaseUrl());
-                        photoMap.put("mimeType", item.getMimeType());
-                        photoMap.put("mediaMetadata", item.getMediaMetadata());
-                        return photoMap;
-                    })
-                    .collect(Collectors.toList())
-                    : Collections.emptyList();
+    /**
+     * Lazily lists every album of the account, page by page. The stream must be
+     * closed to stop background page prefetching.
+     */
+    public Stream<GoogleAlbum> streamAlbums(String accessToken) {
+        PhotosLibrary client = getPhotosLibraryClient(accessToken);
+        PageIterator<Album> pages = new PageIterator<>(pageToken -> {
+            ListAlbumsResponse response = client.albums().list()
+                    .setPageSize(albumPageSize)
+                    .setPageToken(pageToken)
+                    .execute();
+            return new PageIterator.Page<>(response.getAlbums(), response.getNextPageToken());
+        }, prefetchPages, prefetchExecutor);
+        return pages.stream().map(MediaMapper::toAlbum);
+    }
 
+    public List<GooglePhoto> listPhotosInAlbum(String accessToken, String albumId) {
+        try (Stream<GooglePhoto> photos = streamPhotosInAlbum(accessToken, albumId)) {
+            return photos.collect(Collectors.toList());
         } catch (Exception e) {
             log.error("Failed to fetch photos from album: {}", albumId, e);
             throw new RuntimeException("Failed to fetch photos: " + e.getMessage(), e);
         }
     }
 
-    public Map<String, Object> getAlbumDetails(String accessToken, String albumId) {
-        try {
-            PhotosLibrary client = getPhotosLibraryClient(accessToken);
-            Album album = client.albums().get(albumId).execute();
-
-            Map<String, Object> albumDetails = new HashMap<>();
-            albumDetails.put("id", album.getId());
-            albumDetails.put("title", album.getTitle());
-            try {
-                Object mediaItemsCount = album.getClass().getMethod("getMediaItemsCount").invoke(album);
-                if (mediaItemsCount != null) {
-                    albumDetails.put("mediaItemsCount", mediaItemsCount);
-                }
-            } catch (Exception e) {
-                log.debug("Could not get mediaItemsCount for album: {}", album.getId());
+    /**
+     * Lazily lists every media item of an album, page by page. The stream must be
+     * closed to stop background page prefetching.
+     */
+    public Stream<GooglePhoto> streamPhotosInAlbum(String accessToken, String albumId) {
+        PhotosLibrary client = getPhotosLibraryClient(accessToken);
+        PageIterator<MediaItem> pages = new PageIterator<>(pageToken -> {
+            SearchMediaItemsRequest request = new SearchMediaItemsRequest()
+                    .setAlbumId(albumId)
+                    .setPageSize(mediaPageSize)
+                    .setPageToken(pageToken);
+            SearchMediaItemsResponse response = client.mediaItems().search(request).execute();
+            return new PageIterator.Page<>(response.getMediaItems(), response.getNextPageToken());
+        }, prefetchPages, prefetchExecutor);
+        return pages.stream().map(MediaMapper::toPhoto);
+    }
+
+    /**
+     * Lazily lists library media created on or after the UTC day of {@code since},
+     * oldest first, or the whole library when {@code since} is null. The date
+     * filter only has day granularity, so callers drop items at or before the
+     * exact instant themselves. The stream must be closed to stop background
+     * page prefetching.
+     */
+    public Stream<GooglePhoto> streamPhotosCreatedSince(String accessToken, Instant since) {
+        PhotosLibrary client = getPhotosLibraryClient(accessToken);
+        Filters filters = null;
+        if (since != null) {
+            LocalDate from = since.atZone(ZoneOffset.UTC).toLocalDate();
+            // Items are dated in the uploader's time zone, so leave a day of slack on both ends
+            LocalDate to = LocalDate.now(ZoneOffset.UTC).plusDays(1);
+            filters = new Filters().setDateFilter(new DateFilter().setRanges(List.of(
+                    new DateRange().setStartDate(toDate(from.minusDays(1))).setEndDate(toDate(to)))));
+        }
+        Filters searchFilters = filters;
+        PageIterator<MediaItem> pages = new PageIterator<>(pageToken -> {
+            SearchMediaItemsRequest request = new SearchMediaItemsRequest()
+                    .setPageSize(mediaPageSize)
+                    .setPageToken(pageToken);
+            if (searchFilters != null) {
+                request.setFilters(searchFilters).setOrderBy("MediaMetadata.creation_time");
             }
-            albumDetails.put("coverPhotoBaseUrl", album.getCoverPhotoBaseUrl());
-            albumDetails.put("productUrl", album.getProductUrl());
-            albumDetails.put("isWriteable", album.getIsWriteable());
+            SearchMediaItemsResponse response = client.mediaItems().search(request).execute();
+            return new PageIterator.Page<>(response.getMediaItems(), response.getNextPageToken());
+        }, prefetchPages, prefetchExecutor);
+        return pages.stream().map(MediaMapper::toPhoto);
+    }
+
+    private static Date toDate(LocalDate date) {
+        return new Date().setYear(date.getYear()).setMonth(date.getMonthValue()).setDay(date.getDayOfMonth());
+    }
 
-            return albumDetails;
+    /**
+     * Looks up up to 50 media items in one {@code mediaItems.batchGet} call.
+     * Items that could not be returned (deleted, not owned) are left out.
+     */
+    public List<GooglePhoto> batchGetMediaItems(String accessToken, List<String> mediaItemIds) throws IOException {
+        BatchGetMediaItemsResponse response = getPhotosLibraryClient(accessToken).mediaItems().batchGet()
+                .setMediaItemIds(mediaItemIds)
+                .execute();
+        if (response.getMediaItemResults() == null) {
+            return Collections.emptyList();
+        }
+        return response.getMediaItemResults().stream()
+                .filter(r -> r.getMediaItem() != null)
+                .map(r -> MediaMapper.toPhoto(r.getMediaItem()))
+                .collect(Collectors.toList());
+    }
 
+    public GoogleAlbum getAlbumDetails(String accessToken, String albumId) {
+        try {
+            PhotosLibrary client = getPhotosLibraryClient(accessToken);
+            return MediaMapper.toAlbum(client.albums().get(albumId).execute());
         } catch (Exception e) {
             log.error("Failed to fetch album details for album: {}", albumId, e);
             throw new RuntimeException("Failed to fetch album details: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Creates an album in the account and returns its id.
+     */
+    public String createAlbum(String accessToken, String title) throws IOException {
+        Album album = getPhotosLibraryClient(accessToken).albums()
+                .create(new CreateAlbumRequest().setAlbum(new Album().setTitle(title)))
+                .execute();
+        log.info("Created album {} ({})", title, album.getId());
+        return album.getId();
+    }
+
+    /**
+     * Adds up to 50 existing media items to an album. Only items created by this
+     * app can be added.
+     */
+    public void addToAlbum(String accessToken, String albumId, List<String> mediaItemIds) throws IOException {
+        getPhotosLibraryClient(accessToken).albums()
+                .batchAddMediaItems(albumId, new BatchAddMediaItemsToAlbumRequest().setMediaItemIds(mediaItemIds))
+                .execute();
+    }
+
     public byte[] downloadPhoto(String baseUrl) {
-        try {
-            URL url = new URL(baseUrl + "=d");
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-            try (InputStream in = connection.getInputStream()) {
-                return in.readAllBytes();
-            }
+        try (MediaDownload download = openDownload(baseUrl)) {
+            return download.getContent().readAllBytes();
         } catch (Exception e) {
             log.error("Error downloading photo from: {}", baseUrl, e);
             throw new RuntimeException("Error downloading photo", e);
         }
     }
 
+    public MediaDownload openDownload(String baseUrl) throws IOException {
+        return openDownload(baseUrl, 0);
+    }
+
+    /**
+     * Opens the source media positioned at {@code offset}, using a range request
+     * and falling back to skipping when the source ignores the range.
+     */
+    public MediaDownload openDownload(String baseUrl, long offset) throws IOException {
+        HttpRequest request = googleHttpTransport.createRequestFactory()
+                .buildGetRequest(new GenericUrl(baseUrl + "=d"));
+        if (offset > 0) {
+            request.getHeaders().setRange("bytes=" + offset + "-");
+        }
+        MediaDownload download = new MediaDownload(request.execute());
+        if (offset > 0 && download.getStatusCode() != 206) {
+            download.getContent().skipNBytes(offset);
+        }
+        return download;
+    }
+
     public void uploadPhoto(String accessToken, byte[] photoData, String fileName) {
         try {
-            HttpTransport httpTransport = GoogleNetHttpTransport.newTrustedTransport();
-            HttpRequestFactory requestFactory = httpTransport.createRequestFactory(req -> {
-                req.getHeaders().setAuthorization("Bearer " + accessToken);
-                req.getHeaders().setContentType("application/octet-stream");
-                req.getHeaders().set("X-Goog-Upload-File-Name", fileName);
-                req.getHeaders().set("X-Goog-Upload-Protocol", "raw");
-            });
+            String uploadToken = uploadBytes(accessToken,
+                    new ByteArrayContent("application/octet-stream", photoData), fileName);
+            createMediaItem(accessToken, uploadToken, fileName);
+            log.info("Successfully uploaded photo: {}", fileName);
+
+        } catch (Exception e) {
+            log.error("Failed to upload photo: {}", fileName, e);
+            throw new RuntimeException("Failed to upload photo", e);
+        }
+    }
 
-            GenericUrl uploadUrl = new GenericUrl("https://photoslibrary.googleapis.com/v1/uploads");
-            HttpContent content = new ByteArrayContent("application/octet-stream", photoData);
-            HttpRequest request = requestFactory.buildPostRequest(uploadUrl, content);
+    /**
+     * Uploads bytes already held in memory and returns the upload token without
+     * creating the media item.
+     */
+    public String uploadRaw(String accessToken, byte[] photoData, String fileName) throws IOException {
+        return uploadBytes(accessToken, new ByteArrayContent("application/octet-stream", photoData), fileName);
+    }
+
+    /**
+     * Uploads {@code length} bytes read from {@code source} through a buffer of
+     * {@code photo.transfer.stream-buffer-bytes}, returning the upload token and
+     * the SHA-256 of the bytes actually sent.
+     */
+    public StreamedUpload uploadStream(String accessToken, InputStream source, long length,
+                                       String fileName) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        MediaStreamContent content = new MediaStreamContent(new DigestInputStream(source, digest),
+                length, "application/octet-stream", streamBufferBytes);
+        String uploadToken = uploadBytes(accessToken, content, fileName);
+        return new StreamedUpload(uploadToken, content.getBytesWritten(), HexFormat.of().formatHex(digest.digest()));
+    }
 
-            HttpResponse response = request.execute();
-            String uploadToken = response.parseAsString();
+    /**
+     * Streams a photo from the source account straight into an upload on the
+     * target account. Only {@code photo.transfer.stream-buffer-bytes} of the file
+     * are held in memory at any time. Files above the resumable threshold are sent
+     * in chunks whose progress is stored under {@code sessionKey}, so a later call
+     * with the same key resumes instead of starting from byte zero.
+     * <p>
+     * The returned upload token still has to be committed with
+     * {@link #createMediaItems}, typically through {@link UploadTokenBatcher}.
+     */
+    public StreamedUpload streamUpload(String sourceBaseUrl, String targetAccessToken, String fileName,
+                                       String sessionKey) {
+        try {
+            if (sessionKey != null) {
+                // Continuing an earlier attempt opens the source at the committed offset instead of byte zero
+                ResumableUploader.Resumed resumed = resumableUploader.resume(sessionKey, targetAccessToken,
+                        offset -> openDownload(sourceBaseUrl, offset));
+                if (resumed != null) {
+                    // Chunks were sent across several attempts, so no single pass saw every byte
+                    return new StreamedUpload(resumed.uploadToken(), resumed.totalBytes(), null);
+                }
+            }
+            try (MediaDownload download = openDownload(sourceBaseUrl)) {
+                long length = download.getLength();
+                if (sessionKey != null && length > 0 && resumableUploader.shouldUse(length)) {
+                    String uploadToken = resumableUploader.upload(sessionKey, targetAccessToken, fileName,
+                            download.getContentType(), length, download.getContent());
+                    // A later attempt may finish it from a checkpoint, so no hash either way
+                    return new StreamedUpload(uploadToken, length, null);
+                }
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                MediaStreamContent content = new MediaStreamContent(
+                        new DigestInputStream(download.getContent(), digest), length, "application/octet-stream",
+                        streamBufferBytes);
+                String uploadToken = uploadBytes(targetAccessToken, content, fileName);
+                log.info("Streamed photo bytes: {} ({} bytes)", fileName, content.getBytesWritten());
+                return new StreamedUpload(uploadToken, content.getBytesWritten(),
+                        HexFormat.of().formatHex(digest.digest()));
+            }
+        } catch (Exception e) {
+            log.error("Failed to stream photo: {}", fileName, e);
+            throw new RuntimeException("Failed to stream photo", e);
+        }
+    }
 
-            NewMediaItem newMediaItem = new NewMediaItem()
-                    .setDescription(fileName)
-                    .setSimpleMediaItem(new SimpleMediaItem().setUploadToken(uploadToken));
+    public List<NewMediaItemResult> createMediaItems(String accessToken, List<NewMediaItem> items) throws IOException {
+        return createMediaItems(accessToken, null, items);
+    }
 
-            BatchCreateMediaItemsRequest createRequest = new BatchCreateMediaItemsRequest()
-                    .setNewMediaItems(Collections.singletonList(newMediaItem));
+    /**
+     * Commits up to 50 upload tokens in a single {@code mediaItems.batchCreate} call,
+     * adding the new items to {@code albumId} when it is set.
+     */
+    public List<NewMediaItemResult> createMediaItems(String accessToken, String albumId,
+                                                     List<NewMediaItem> items) throws IOException {
+        BatchCreateMediaItemsRequest createRequest = new BatchCreateMediaItemsRequest()
+                .setAlbumId(albumId)
+                .setNewMediaItems(items);
+        BatchCreateMediaItemsResponse response = getPhotosLibraryClient(accessToken).mediaItems()
+                .batchCreate(createRequest).execute();
+        return response.getNewMediaItemResults() != null
+                ? response.getNewMediaItemResults()
+                : Collections.emptyList();
+    }
 
-            PhotosLibrary client = getPhotosLibraryClient(accessToken);
+    private String uploadBytes(String accessToken, HttpContent content, String fileName) throws IOException {
+        HttpRequestFactory requestFactory = googleHttpTransport.createRequestFactory(req -> {
+            req.getHeaders().setAuthorization("Bearer " + accessToken);
+            req.getHeaders().setContentType("application/octet-stream");
+            req.getHeaders().set("X-Goog-Upload-File-Name", fileName);
+            req.getHeaders().set("X-Goog-Upload-Protocol", "raw");
+        });
 
-            client.mediaItems().batchCreate(createRequest).execute();
-            log.info("Successfully uploaded photo: {}", fileName);
+        HttpRequest request = requestFactory.buildPostRequest(new GenericUrl(UPLOADS_URL), content);
+        return request.execute().parseAsString();
+    }
 
-        } catch (Exception e) {
-            log.error("Failed to upload photo: {}", fileName, e);
-            throw new RuntimeException("Failed to upload photo", e);
+    private void createMediaItem(String accessToken, String uploadToken, String fileName) throws IOException {
+        NewMediaItem newMediaItem = new NewMediaItem()
+                .setDescription(fileName)
+                .setSimpleMediaItem(new SimpleMediaItem().setUploadToken(uploadToken));
+        List<NewMediaItemResult> results = createMediaItems(accessToken, Collections.singletonList(newMediaItem));
+        if (!results.isEmpty() && !UploadTokenBatcher.isSuccess(results.get(0))) {
+            throw new IOException("Media item creation failed: " + results.get(0).getStatus().getMessage());
         }
     }
+
+    /**
+     * @param contentHash hex SHA-256 of the bytes sent, or {@code null} when the
+     *                    upload was resumable
+     */
+    public record StreamedUpload(String uploadToken, long bytes, String contentHash) {
+    }
 }
@@ -0,0 +1,138 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.model.TransferStatus;
+import com.bikash.photo_porter.repository.TransferJobRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accumulates per-job counter deltas in memory and applies them to the
+ * {@code transfer_jobs} row with one UPDATE per job per flush, instead of
+ * recounting photo rows or writing the job once per photo. Deltas are added
+ * and idle entries evicted under {@code deltas.compute}, so an entry is never
+ * dropped while a transition is adding to it.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class JobProgressTracker {
+
+    private final TransferJobRepository transferJobRepository;
+
+    private final Map<Long, Delta> deltas = new ConcurrentHashMap<>();
+
+    /**
+     * Records {@code photos} photos moving from one status to another. A
+     * {@code null} {@code from} means the photos are new to the job.
+     */
+    public void transition(Long jobId, TransferStatus from, TransferStatus to, long photos, long bytes) {
+        if (jobId == null) {
+            return;
+        }
+        deltas.compute(jobId, (id, delta) -> {
+            Delta d = delta != null ? delta : new Delta();
+            if (from != null) {
+                d.counter(from).add(-photos);
+            }
+            d.counter(to).add(photos);
+            if (bytes != 0) {
+                d.bytes.add(bytes);
+            }
+            return d;
+        });
+    }
+
+    public void transition(Long jobId, TransferStatus from, TransferStatus to) {
+        transition(jobId, from, to, 1, 0);
+    }
+
+    @Scheduled(fixedDelayString = "${photo.transfer.job.progress-flush-ms:1000}")
+    public void flushAll() {
+        for (Long jobId : deltas.keySet()) {
+            Delta delta = deltas.get(jobId);
+            if (delta != null) {
+                apply(jobId, delta);
+                evictIfIdle(jobId);
+            }
+        }
+    }
+
+    /**
+     * Writes out the job's pending deltas. Called once a job run has finished
+     * so its final counters are visible before the job is marked done.
+     */
+    public void flush(Long jobId) {
+        Delta delta = deltas.get(jobId);
+        if (delta != null) {
+            apply(jobId, delta);
+            evictIfIdle(jobId);
+        }
+    }
+
+    /**
+     * Forgets the job's entry if nothing was added since it was applied, so
+     * finished jobs do not stay in the map.
+     */
+    private void evictIfIdle(Long jobId) {
+        deltas.computeIfPresent(jobId, (id, delta) -> delta.isIdle() ? null : delta);
+    }
+
+    private void apply(Long jobId, Delta delta) {
+        long pending = delta.pending.sumThenReset();
+        long inProgress = delta.inProgress.sumThenReset();
+        long success = delta.success.sumThenReset();
+        long failed = delta.failed.sumThenReset();
+        long skipped = delta.skipped.sumThenReset();
+        long bytes = delta.bytes.sumThenReset();
+        if (pending == 0 && inProgress == 0 && success == 0 && failed == 0 && skipped == 0 && bytes == 0) {
+            return;
+        }
+        try {
+            transferJobRepository.applyProgress(jobId, pending, inProgress, success, failed, skipped, bytes);
+        } catch (Exception e) {
+            log.error("Failed to flush progress for job {}: {}", jobId, e.getMessage());
+            // Put the deltas back so the next flush retries them
+            deltas.compute(jobId, (id, current) -> {
+                Delta retry = current != null ? current : new Delta();
+                retry.pending.add(pending);
+                retry.inProgress.add(inProgress);
+                retry.success.add(success);
+                retry.failed.add(failed);
+                retry.skipped.add(skipped);
+                retry.bytes.add(bytes);
+                return retry;
+            });
+        }
+    }
+
+    private static final class Delta {
+        final LongAdder pending = new LongAdder();
+        final LongAdder inProgress = new LongAdder();
+        final LongAdder success = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+
+        boolean isIdle() {
+            return pending.sum() == 0 && inProgress.sum() == 0 && success.sum() == 0 && failed.sum() == 0
+                    && skipped.sum() == 0 && bytes.sum() == 0;
+        }
+
+        LongAdder counter(TransferStatus status) {
+            return switch (status) {
+                // Rows waiting out a retry backoff are still pending from the job's point of view
+                case PENDING, RETRY_PENDING -> pending;
+                case IN_PROGRESS -> inProgress;
+                case SUCCESS -> success;
+                case FAILED -> failed;
+                case SKIPPED -> skipped;
+            };
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.model.TransferStatus;
+import com.bikash.photo_porter.repository.TransferJobRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Resumes jobs whose runner went away. At startup this picks up everything this
+ * instance was running before it restarted; afterwards it periodically claims
+ * jobs whose lease expired because another instance stopped heartbeating. The
+ * resumed run requeues the rows that were in flight and carries on from the
+ * rows still pending, and large uploads continue from their persisted offsets.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class JobRecovery {
+
+    private static final List<TransferStatus> OPEN = List.of(TransferStatus.PENDING, TransferStatus.IN_PROGRESS);
+    private static final List<TransferStatus> UNFINISHED = List.of(TransferStatus.PENDING, TransferStatus.IN_PROGRESS);
+
+    private final TransferJobRepository transferJobRepository;
+    private final TransferJobRunner transferJobRunner;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeOnStartup() {
+        resume(transferJobRunner.getInstanceId());
+    }
+
+    @Scheduled(initialDelayString = "${photo.transfer.job.recovery-ms:30000}",
+            fixedDelayString = "${photo.transfer.job.recovery-ms:30000}")
+    public void claimExpired() {
+        // A self-owned lease that is still live belongs to a job running right here
+        resume(null);
+    }
+
+    private void resume(String self) {
+        List<Long> orphaned = transferJobRepository.findOrphanedJobIds(OPEN, UNFINISHED, self, LocalDateTime.now());
+        for (Long jobId : orphaned) {
+            if (transferJobRunner.isRunning(jobId)) {
+                continue;
+            }
+            log.info("Resuming orphaned transfer job {}", jobId);
+            transferJobRunner.dispatch(jobId);
+        }
+    }
+}
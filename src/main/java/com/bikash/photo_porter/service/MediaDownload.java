@@ -0,0 +1,54 @@
+package com.bikash.photo_porter.service;
+
+import com.google.api.client.http.HttpResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An open source media response. The body is read lazily; closing releases the
+ * pooled connection.
+ */
+public class MediaDownload implements Closeable {
+
+    private final HttpResponse response;
+    private final InputStream content;
+
+    MediaDownload(HttpResponse response) throws IOException {
+        this.response = response;
+        this.content = response.getContent();
+    }
+
+    public InputStream getContent() {
+        return content;
+    }
+
+    /**
+     * @return the body length announced by the source, or -1 when unknown
+     */
+    public long getLength() {
+        Long length = response.getHeaders().getContentLength();
+        return length != null ? length : -1L;
+    }
+
+    public int getStatusCode() {
+        return response.getStatusCode();
+    }
+
+    public String getContentType() {
+        String type = response.getContentType();
+        return type != null ? type : "application/octet-stream";
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (content != null) {
+                content.close();
+            }
+        } finally {
+            response.disconnect();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.dto.GoogleAlbum;
+import com.bikash.photo_porter.dto.GooglePhoto;
+import com.google.api.services.photoslibrary.v1.model.Album;
+import com.google.api.services.photoslibrary.v1.model.MediaItem;
+import com.google.api.services.photoslibrary.v1.model.MediaMetadata;
+
+/**
+ * Maps Photos Library API models onto the application's immutable DTOs.
+ */
+public final class MediaMapper {
+
+    private MediaMapper() {
+    }
+
+    public static GoogleAlbum toAlbum(Album album) {
+        return new GoogleAlbum(
+                album.getId(),
+                album.getTitle(),
+                album.getMediaItemsCount(),
+                album.getCoverPhotoBaseUrl(),
+                album.getProductUrl(),
+                album.getIsWriteable());
+    }
+
+    public static GooglePhoto toPhoto(MediaItem item) {
+        MediaMetadata metadata = item.getMediaMetadata();
+        return new GooglePhoto(
+                item.getId(),
+                item.getFilename(),
+                item.getBaseUrl(),
+                item.getMimeType(),
+                metadata != null ? metadata.getCreationTime() : null,
+                metadata != null ? metadata.getWidth() : null,
+                metadata != null ? metadata.getHeight() : null);
+    }
+}
@@ -0,0 +1,127 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.dto.GooglePhoto;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves photo ids to their metadata (base URL, filename, MIME type,
+ * dimensions) with {@code mediaItems.batchGet}, 50 ids per call. Results are
+ * cached for a little less than the hour a base URL stays valid, so a retried
+ * or re-run photo does not cost another lookup. Callers about to download can
+ * pass a maximum age to get a base URL that still has time left on it.
+ */
+@Component
+@Slf4j
+public class MediaMetadataResolver {
+
+    private static final int BATCH_GET_MAX = 50;
+
+    private final GooglePhotosClient googlePhotosClient;
+    private final Cache<String, Resolved> cache;
+    private final Counter calls;
+    private final Counter cacheHits;
+
+    public MediaMetadataResolver(GooglePhotosClient googlePhotosClient,
+                                 MeterRegistry registry,
+                                 @Value("${photo.metadata.cache-ttl-seconds:3000}") long ttlSeconds,
+                                 @Value("${photo.metadata.cache-max-size:100000}") long maxSize) {
+        this.googlePhotosClient = googlePhotosClient;
+        this.cache = CacheBuilder.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .build();
+        this.calls = Counter.builder("photo.metadata.batch.get.calls")
+                .description("mediaItems.batchGet calls made to resolve photo metadata")
+                .register(registry);
+        this.cacheHits = Counter.builder("photo.metadata.cache.hits")
+                .description("Photo metadata served from the cache")
+                .register(registry);
+    }
+
+    /**
+     * Resolves a single photo, or returns {@code null} if {@code batchGet}
+     * reports it as not found.
+     *
+     * @throws UncheckedIOException if the lookup itself fails
+     */
+    public GooglePhoto resolve(String accessToken, String photoId) {
+        return resolve(accessToken, photoId, null);
+    }
+
+    /**
+     * Resolves a single photo from a lookup made less than {@code maxAge} ago,
+     * or returns {@code null} if {@code batchGet} reports it as not found. A
+     * failed lookup is thrown rather than reported as a missing photo, so a
+     * transient 429 or 5xx is classified and retried instead of failing the
+     * photo for good.
+     *
+     * @throws UncheckedIOException if the lookup itself fails
+     */
+    public GooglePhoto resolve(String accessToken, String photoId, Duration maxAge) {
+        try {
+            return resolveAll(accessToken, List.of(photoId), maxAge).get(photoId);
+        } catch (IOException e) {
+            log.error("Failed to get photo details for photo ID: {}", photoId, e);
+            throw new UncheckedIOException("Failed to get photo details for " + photoId, e);
+        }
+    }
+
+    public Map<String, GooglePhoto> resolveAll(String accessToken, Collection<String> photoIds) throws IOException {
+        return resolveAll(accessToken, photoIds, null);
+    }
+
+    /**
+     * Resolves the photos with one {@code batchGet} per 50 ids that are not
+     * cached, or were cached more than {@code maxAge} ago. Photos that do not
+     * exist or are not visible to the account are missing from the returned map.
+     */
+    public Map<String, GooglePhoto> resolveAll(String accessToken, Collection<String> photoIds, Duration maxAge)
+            throws IOException {
+        Instant cutoff = maxAge != null ? Instant.now().minus(maxAge) : Instant.MIN;
+        Map<String, GooglePhoto> resolved = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String photoId : new LinkedHashSet<>(photoIds)) {
+            Resolved cached = cache.getIfPresent(photoId);
+            if (cached != null && cached.fetchedAt().isAfter(cutoff)) {
+                resolved.put(photoId, cached.photo());
+            } else {
+                missing.add(photoId);
+            }
+        }
+        cacheHits.increment(resolved.size());
+
+        for (int i = 0; i < missing.size(); i += BATCH_GET_MAX) {
+            List<String> batch = missing.subList(i, Math.min(missing.size(), i + BATCH_GET_MAX));
+            calls.increment();
+            Instant fetchedAt = Instant.now();
+            for (GooglePhoto photo : googlePhotosClient.batchGetMediaItems(accessToken, batch)) {
+                cache.put(photo.id(), new Resolved(photo, fetchedAt));
+                resolved.put(photo.id(), photo);
+            }
+        }
+        if (resolved.size() < photoIds.size()) {
+            log.warn("Resolved metadata for {} of {} photos", resolved.size(), photoIds.size());
+        }
+        return resolved;
+    }
+
+    private record Resolved(GooglePhoto photo, Instant fetchedAt) {
+    }
+}
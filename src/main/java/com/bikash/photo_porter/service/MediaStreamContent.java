@@ -0,0 +1,58 @@
+package com.bikash.photo_porter.service;
+
+import com.google.api.client.http.HttpContent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Request body that pipes a source stream into the upload request through a
+ * fixed-size buffer, so memory per transfer does not depend on the file size.
+ */
+public class MediaStreamContent implements HttpContent {
+
+    private final InputStream source;
+    private final long length;
+    private final String type;
+    private final int bufferSize;
+    private long bytesWritten;
+
+    public MediaStreamContent(InputStream source, long length, String type, int bufferSize) {
+        this.source = source;
+        this.length = length;
+        this.type = type;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public String getType() {
+        return type;
+    }
+
+    @Override
+    public boolean retrySupported() {
+        // The source stream is consumed as it is written
+        return false;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        byte[] buffer = new byte[bufferSize];
+        int read;
+        while ((read = source.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            bytesWritten += read;
+        }
+        out.flush();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+}
@@ -0,0 +1,231 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.model.MigratedMedia;
+import com.bikash.photo_porter.repository.MigratedMediaRepository;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Answers "has this photo already been moved to this target?" from the
+ * {@code migrated_media} table, with a Bloom filter in front of it. A Bloom miss
+ * is definitive, so photos that were never migrated - the common case - are
+ * cleared without touching the database. Only Bloom hits are confirmed with one
+ * {@code IN} query per batch.
+ * <p>
+ * Until the filter has been loaded at startup every lookup goes to the database.
+ * <p>
+ * Index rows are written in their own transaction and duplicates are ignored,
+ * so a photo indexed concurrently never rolls back the caller's status updates.
+ */
+@Component
+@Slf4j
+public class MigrationIndex {
+
+    private static final int LOOKUP_CHUNK = 1000;
+
+    private final MigratedMediaRepository migratedMediaRepository;
+    private final TransactionTemplate indexTransaction;
+    private final BloomFilter<CharSequence> bloom;
+    private final int warmupPageSize;
+    private volatile boolean warm;
+
+    private final Counter bloomMisses;
+    private final Counter confirmedHits;
+    private final Counter falsePositives;
+
+    public MigrationIndex(MigratedMediaRepository migratedMediaRepository,
+                          PlatformTransactionManager transactionManager,
+                          MeterRegistry registry,
+                          @Value("${photo.dedupe.bloom.expected-insertions:1000000}") long expectedInsertions,
+                          @Value("${photo.dedupe.bloom.fpp:0.01}") double fpp,
+                          @Value("${photo.dedupe.warmup-page-size:5000}") int warmupPageSize) {
+        this.migratedMediaRepository = migratedMediaRepository;
+        this.indexTransaction = new TransactionTemplate(transactionManager);
+        this.indexTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.bloom = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedInsertions, fpp);
+        this.warmupPageSize = warmupPageSize;
+        this.bloomMisses = Counter.builder("photo.dedupe.bloom.misses")
+                .description("Photos cleared as not yet migrated without a database lookup")
+                .register(registry);
+        this.confirmedHits = Counter.builder("photo.dedupe.hits")
+                .description("Photos skipped because they were already migrated")
+                .register(registry);
+        this.falsePositives = Counter.builder("photo.dedupe.bloom.false.positives")
+                .description("Bloom filter hits the database did not confirm")
+                .register(registry);
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        long loaded = 0;
+        Long afterId = 0L;
+        List<MigratedMediaRepository.MigratedKey> page;
+        do {
+            page = migratedMediaRepository.findKeysAfter(afterId, PageRequest.of(0, warmupPageSize));
+            for (MigratedMediaRepository.MigratedKey k : page) {
+                bloom.put(key(k.getSourceUserId(), k.getTargetUserId(), k.getPhotoId()));
+                afterId = k.getId();
+            }
+            loaded += page.size();
+        } while (page.size() == warmupPageSize);
+        warm = true;
+        log.info("Loaded {} migrated photos into the dedupe filter", loaded);
+    }
+
+    /**
+     * Returns the subset of {@code photoIds} already migrated from the source to
+     * the target user.
+     */
+    public Set<String> alreadyMigrated(Long sourceUserId, Long targetUserId, Collection<String> photoIds) {
+        return lookup(sourceUserId, targetUserId, photoIds, true);
+    }
+
+    private Set<String> lookup(Long sourceUserId, Long targetUserId, Collection<String> photoIds, boolean record) {
+        List<String> candidates;
+        if (warm) {
+            candidates = new ArrayList<>();
+            for (String photoId : photoIds) {
+                if (bloom.mightContain(key(sourceUserId, targetUserId, photoId))) {
+                    candidates.add(photoId);
+                }
+            }
+            if (record) {
+                bloomMisses.increment(photoIds.size() - candidates.size());
+            }
+        } else {
+            candidates = new ArrayList<>(photoIds);
+        }
+        if (candidates.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> migrated = new HashSet<>();
+        for (int i = 0; i < candidates.size(); i += LOOKUP_CHUNK) {
+            migrated.addAll(migratedMediaRepository.findMigratedPhotoIds(sourceUserId, targetUserId,
+                    candidates.subList(i, Math.min(candidates.size(), i + LOOKUP_CHUNK))));
+        }
+        if (!record) {
+            return migrated;
+        }
+        confirmedHits.increment(migrated.size());
+        if (warm) {
+            falsePositives.increment(candidates.size() - migrated.size());
+        }
+        return migrated;
+    }
+
+    public boolean isMigrated(Long sourceUserId, Long targetUserId, String photoId) {
+        return !alreadyMigrated(sourceUserId, targetUserId, List.of(photoId)).isEmpty();
+    }
+
+    /**
+     * Returns the entries not yet indexed, keeping one per photo when the same
+     * photo appears more than once.
+     */
+    List<MigratedMedia> newEntries(Collection<MigratedMedia> entries) {
+        Map<String, MigratedMedia> unique = new LinkedHashMap<>();
+        for (MigratedMedia entry : entries) {
+            unique.putIfAbsent(key(entry.getSourceUserId(), entry.getTargetUserId(), entry.getPhotoId()), entry);
+        }
+        Map<String, List<MigratedMedia>> byPair = new HashMap<>();
+        for (MigratedMedia entry : unique.values()) {
+            byPair.computeIfAbsent(entry.getSourceUserId() + ":" + entry.getTargetUserId(), k -> new ArrayList<>())
+                    .add(entry);
+        }
+        List<MigratedMedia> fresh = new ArrayList<>(unique.size());
+        for (List<MigratedMedia> group : byPair.values()) {
+            MigratedMedia first = group.get(0);
+            Set<String> known = lookup(first.getSourceUserId(), first.getTargetUserId(),
+                    group.stream().map(MigratedMedia::getPhotoId).toList(), false);
+            for (MigratedMedia entry : group) {
+                if (!known.contains(entry.getPhotoId())) {
+                    fresh.add(entry);
+                }
+            }
+        }
+        return fresh;
+    }
+
+    /**
+     * Returns the target library ids of photos already migrated, where known.
+     */
+    public List<String> targetMediaItemIds(Long sourceUserId, Long targetUserId, Collection<String> photoIds) {
+        List<String> ids = new ArrayList<>(photoIds);
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += LOOKUP_CHUNK) {
+            result.addAll(migratedMediaRepository.findTargetMediaItemIds(sourceUserId, targetUserId,
+                    ids.subList(i, Math.min(ids.size(), i + LOOKUP_CHUNK))));
+        }
+        return result;
+    }
+
+    /**
+     * Indexes a single migrated photo in its own transaction.
+     */
+    public void record(MigratedMedia entry) {
+        recordAll(List.of(entry));
+    }
+
+    /**
+     * Indexes newly migrated photos in a transaction of their own. Photos that
+     * are already indexed, or indexed concurrently by another transfer, are left
+     * as they are, so this never fails on the index's unique key.
+     */
+    public void recordAll(Collection<MigratedMedia> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<MigratedMedia> fresh = newEntries(entries);
+        if (fresh.isEmpty()) {
+            return;
+        }
+        try {
+            indexTransaction.executeWithoutResult(status -> migratedMediaRepository.saveAllAndFlush(fresh));
+        } catch (DataIntegrityViolationException e) {
+            // Some were indexed concurrently; insert the rest one by one
+            log.debug("Batch of {} index rows hit the unique key, retrying row by row", fresh.size());
+            for (MigratedMedia entry : fresh) {
+                entry.setId(null);
+                try {
+                    indexTransaction.executeWithoutResult(status -> migratedMediaRepository.saveAndFlush(entry));
+                } catch (DataIntegrityViolationException duplicate) {
+                    log.debug("Photo {} already indexed: {}", entry.getPhotoId(), duplicate.getMessage());
+                }
+            }
+        }
+        remember(fresh);
+    }
+
+    public void remember(Collection<MigratedMedia> entries) {
+        for (MigratedMedia entry : entries) {
+            bloom.put(key(entry.getSourceUserId(), entry.getTargetUserId(), entry.getPhotoId()));
+        }
+    }
+
+    private static String key(Long sourceUserId, Long targetUserId, String photoId) {
+        return sourceUserId + ":" + targetUserId + ":" + photoId;
+    }
+}
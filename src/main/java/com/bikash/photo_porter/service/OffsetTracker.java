@@ -0,0 +1,84 @@
+package com.bikash.photo_porter.service;
+
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks records of each partition that are being processed out of order and
+ * acknowledges only the contiguous low-water mark: when the oldest in-flight
+ * record completes, the newest record of the completed run behind it is acked,
+ * which commits everything up to it. A record that is still running therefore
+ * holds back the commit of every later record of its partition, so a crash
+ * redelivers it and nothing is lost.
+ */
+public class OffsetTracker {
+
+    private final Map<TopicPartition, TreeMap<Long, Pending>> partitions = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a record before it is handed to a worker. Records of a partition
+     * must be registered in offset order, as the consumer delivers them.
+     */
+    public void register(TopicPartition partition, long offset, Acknowledgment ack) {
+        TreeMap<Long, Pending> pending = partitions.computeIfAbsent(partition, p -> new TreeMap<>());
+        synchronized (pending) {
+            pending.put(offset, new Pending(ack));
+        }
+    }
+
+    /**
+     * Marks the record done and acks the new low-water mark if it moved.
+     */
+    public void complete(TopicPartition partition, long offset) {
+        TreeMap<Long, Pending> pending = partitions.get(partition);
+        if (pending == null) {
+            // Partition was revoked; the new owner processes the record again
+            return;
+        }
+        Acknowledgment lowWaterMark = null;
+        synchronized (pending) {
+            Pending record = pending.get(offset);
+            if (record == null) {
+                return;
+            }
+            record.done = true;
+            while (!pending.isEmpty() && pending.firstEntry().getValue().done) {
+                lowWaterMark = pending.pollFirstEntry().getValue().ack;
+            }
+        }
+        if (lowWaterMark != null) {
+            lowWaterMark.acknowledge();
+        }
+    }
+
+    /**
+     * Forgets revoked partitions; completions for them are ignored from now on.
+     */
+    public void revoke(Collection<TopicPartition> revoked) {
+        revoked.forEach(partitions::remove);
+    }
+
+    public int inFlight() {
+        int count = 0;
+        for (TreeMap<Long, Pending> pending : partitions.values()) {
+            synchronized (pending) {
+                count += pending.size();
+            }
+        }
+        return count;
+    }
+
+    private static class Pending {
+        private final Acknowledgment ack;
+        private boolean done;
+
+        Pending(Acknowledgment ack) {
+            this.ack = ack;
+        }
+    }
+}
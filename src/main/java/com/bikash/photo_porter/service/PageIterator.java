@@ -0,0 +1,149 @@
+package com.bikash.photo_porter.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily walks a {@code nextPageToken} paginated listing. With a prefetch depth
+ * above zero, a background task fetches up to that many pages ahead of the
+ * consumer so the next page is usually ready by the time the current one is done.
+ */
+@Slf4j
+public class PageIterator<T> implements Iterator<T>, AutoCloseable {
+
+    @FunctionalInterface
+    public interface PageFetcher<T> {
+        Page<T> fetch(String pageToken) throws IOException;
+    }
+
+    public record Page<T>(List<T> items, String nextPageToken) {
+        public Page {
+            items = items != null ? items : Collections.emptyList();
+        }
+    }
+
+    private static final Object END = new Object();
+
+    private final PageFetcher<T> fetcher;
+    private final BlockingQueue<Object> prefetched;
+    private final Future<?> producer;
+
+    private Iterator<T> current = Collections.emptyIterator();
+    private String nextPageToken;
+    private boolean exhausted;
+
+    public PageIterator(PageFetcher<T> fetcher, int prefetchPages, ExecutorService executor) {
+        this.fetcher = fetcher;
+        if (prefetchPages > 0) {
+            this.prefetched = new ArrayBlockingQueue<>(prefetchPages);
+            this.producer = executor.submit(this::produce);
+        } else {
+            this.prefetched = null;
+            this.producer = null;
+        }
+    }
+
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+                .onClose(this::close);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (exhausted) {
+                return false;
+            }
+            current = nextPage().items().iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    @Override
+    public void close() {
+        exhausted = true;
+        if (producer != null) {
+            producer.cancel(true);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Page<T> nextPage() {
+        if (prefetched == null) {
+            Page<T> page = fetchUnchecked(nextPageToken);
+            nextPageToken = page.nextPageToken();
+            exhausted = nextPageToken == null || nextPageToken.isEmpty();
+            return page;
+        }
+        try {
+            Object taken = prefetched.take();
+            if (taken == END) {
+                exhausted = true;
+                return new Page<>(null, null);
+            }
+            if (taken instanceof RuntimeException e) {
+                exhausted = true;
+                throw e;
+            }
+            return (Page<T>) taken;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IllegalStateException("Interrupted while waiting for the next page", e);
+        }
+    }
+
+    private void produce() {
+        Object terminal = END;
+        String pageToken = null;
+        try {
+            do {
+                Page<T> page = fetchUnchecked(pageToken);
+                prefetched.put(page);
+                pageToken = page.nextPageToken();
+            } while (pageToken != null && !pageToken.isEmpty());
+        } catch (InterruptedException e) {
+            // Consumer closed the iterator
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Throwable e) {
+            // Whatever went wrong, the consumer must get a terminal marker or it waits forever
+            log.debug("Page prefetch failed: {}", e.getMessage());
+            terminal = e instanceof RuntimeException ? e : new IllegalStateException("Page prefetch failed", e);
+        }
+        try {
+            prefetched.put(terminal);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Page<T> fetchUnchecked(String pageToken) {
+        try {
+            return fetcher.fetch(pageToken);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to fetch page: " + e.getMessage(), e);
+        }
+    }
+}
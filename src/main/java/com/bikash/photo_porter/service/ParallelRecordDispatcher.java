@@ -0,0 +1,238 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.dto.TransferMessage;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs records of {@code photo.kafka.consumer.mode=parallel} on a worker pool
+ * so the listener thread can go back to polling. With ordering {@code key},
+ * records with the same key (the target account) run one after another;
+ * with {@code unordered}, any record may run next to any other. Once
+ * {@code max-in-flight} records are running the listener container is paused,
+ * so the consumer stops fetching but keeps polling, and it is resumed when half
+ * of them are done. Offsets are committed through the {@link OffsetTracker}.
+ */
+@Component
+@Slf4j
+public class ParallelRecordDispatcher {
+
+    public static final String LISTENER_ID = "photo-transfer-parallel";
+
+    private static final long MAX_HANDLER_BACKOFF_MS = 30_000;
+
+    private final TransferRetryRouter retryRouter;
+    private final KafkaListenerEndpointRegistry listenerRegistry;
+    private final ExecutorService workers;
+    private final int maxInFlight;
+    private final boolean keyOrdered;
+    private final int maxAttempts;
+    private final long backoffMs;
+    private final AtomicInteger running = new AtomicInteger();
+    private final OffsetTracker offsets = new OffsetTracker();
+    private final Map<String, CompletableFuture<Void>> keyTails = new ConcurrentHashMap<>();
+    private boolean paused;
+
+    public ParallelRecordDispatcher(MeterRegistry registry,
+                                    TransferRetryRouter retryRouter,
+                                    KafkaListenerEndpointRegistry listenerRegistry,
+                                    @Value("${photo.kafka.consumer.parallel.workers:32}") int workers,
+                                    @Value("${photo.kafka.consumer.parallel.max-in-flight:64}") int maxInFlight,
+                                    @Value("${photo.kafka.consumer.parallel.ordering:unordered}") String ordering,
+                                    @Value("${photo.kafka.consumer.parallel.max-attempts:5}") int maxAttempts,
+                                    @Value("${photo.kafka.consumer.parallel.backoff-ms:1000}") long backoffMs) {
+        this.retryRouter = retryRouter;
+        this.listenerRegistry = listenerRegistry;
+        this.workers = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("kafka-parallel-"));
+        this.maxInFlight = maxInFlight;
+        this.keyOrdered = "key".equals(ordering);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMs = backoffMs;
+        Gauge.builder("photo.kafka.consumer.parallel.in.flight", offsets, OffsetTracker::inFlight)
+                .description("Records dispatched or waiting for a lower offset before they are committed")
+                .register(registry);
+    }
+
+    /**
+     * Registers the record for offset tracking and queues it. Called on the
+     * listener thread, in offset order per partition; never blocks.
+     */
+    public void dispatch(ConsumerRecord<String, TransferMessage> record,
+                         Acknowledgment ack,
+                         Consumer<ConsumerRecord<String, TransferMessage>> handler) {
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        offsets.register(partition, record.offset(), ack);
+        running.incrementAndGet();
+        applyBackpressure();
+        submit(record, () -> process(record, partition, handler));
+    }
+
+    private void submit(ConsumerRecord<String, TransferMessage> record, Runnable work) {
+        if (!keyOrdered || record.key() == null) {
+            workers.execute(work);
+            return;
+        }
+        String key = record.key();
+        CompletableFuture<Void> tail = keyTails.compute(key, (k, previous) -> previous == null
+                ? CompletableFuture.runAsync(work, workers)
+                : previous.exceptionally(error -> null).thenRunAsync(work, workers));
+        tail.whenComplete((ignored, error) -> keyTails.remove(key, tail));
+    }
+
+    /**
+     * Completes the record's offset once it is handled or dead-lettered. A
+     * worker interrupted while backing off has done neither, so the record is
+     * queued again rather than left holding back its partition's commits.
+     */
+    private void process(ConsumerRecord<String, TransferMessage> record, TopicPartition partition,
+                         Consumer<ConsumerRecord<String, TransferMessage>> handler) {
+        try {
+            if (handle(record, handler)) {
+                offsets.complete(partition, record.offset());
+            } else {
+                redeliver(record, partition, handler);
+            }
+        } finally {
+            running.decrementAndGet();
+            applyBackpressure();
+        }
+    }
+
+    /**
+     * Queues an interrupted record again, behind any records of its key that
+     * are already waiting. If the pool is shutting down it stays uncommitted,
+     * so the partition's next owner processes it.
+     */
+    private void redeliver(ConsumerRecord<String, TransferMessage> record, TopicPartition partition,
+                           Consumer<ConsumerRecord<String, TransferMessage>> handler) {
+        log.warn("Interrupted while retrying record {}-{}@{}, queueing it again", record.topic(),
+                record.partition(), record.offset());
+        running.incrementAndGet();
+        try {
+            submit(record, () -> process(record, partition, handler));
+        } catch (RejectedExecutionException e) {
+            running.decrementAndGet();
+            log.warn("Record {}-{}@{} left uncommitted for redelivery after shutdown", record.topic(),
+                    record.partition(), record.offset());
+        }
+    }
+
+    /**
+     * Failed photos are routed to the retry topics inside the handler, so an
+     * exception here is either infrastructure (database, broker) or a record
+     * that can never be processed. It is retried in place up to
+     * {@code max-attempts} times, then dead-lettered so its offset can be
+     * committed. Only the dead-letter hand-off itself is retried indefinitely.
+     *
+     * @return {@code false} if the worker was interrupted during a backoff
+     * before the record was handled or dead-lettered
+     */
+    private boolean handle(ConsumerRecord<String, TransferMessage> record,
+                           Consumer<ConsumerRecord<String, TransferMessage>> handler) {
+        long delayMs = backoffMs;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                handler.accept(record);
+                return true;
+            } catch (Exception e) {
+                if (attempt >= maxAttempts) {
+                    return deadLetter(record, e, attempt);
+                }
+                log.error("Failed to process record {}-{}@{}, retrying in {} ms", record.topic(), record.partition(),
+                        record.offset(), delayMs, e);
+                if (!sleep(delayMs)) {
+                    return false;
+                }
+                delayMs = Math.min(MAX_HANDLER_BACKOFF_MS, delayMs * 2);
+            }
+        }
+    }
+
+    private boolean deadLetter(ConsumerRecord<String, TransferMessage> record, Exception error, int attempts) {
+        log.error("Giving up on record {}-{}@{} after {} attempts", record.topic(), record.partition(),
+                record.offset(), attempts, error);
+        long delayMs = backoffMs;
+        while (true) {
+            try {
+                retryRouter.deadLetter(record.value(), null, RetryPolicy.classify(error), error.getMessage(),
+                        attempts).join();
+                return true;
+            } catch (Exception e) {
+                log.error("Failed to dead-letter record {}-{}@{}, retrying in {} ms", record.topic(),
+                        record.partition(), record.offset(), delayMs, e);
+                if (!sleep(delayMs)) {
+                    return false;
+                }
+                delayMs = Math.min(MAX_HANDLER_BACKOFF_MS, delayMs * 2);
+            }
+        }
+    }
+
+    /**
+     * @return {@code false} if interrupted; the interrupt is cleared so it
+     * ends this record's attempts only, not the pooled worker's next task
+     */
+    private static boolean sleep(long delayMs) {
+        try {
+            Thread.sleep(delayMs);
+            return true;
+        } catch (InterruptedException ie) {
+            return false;
+        }
+    }
+
+    /**
+     * Pauses the container at {@code max-in-flight} running records and
+     * resumes it at half that. Pausing keeps the consumer polling, so it stays
+     * in the group however long the workers take.
+     */
+    private synchronized void applyBackpressure() {
+        int inFlight = running.get();
+        if (!paused && inFlight >= maxInFlight) {
+            MessageListenerContainer container = listenerRegistry.getListenerContainer(LISTENER_ID);
+            if (container != null) {
+                paused = true;
+                container.pause();
+            }
+        } else if (paused && inFlight <= maxInFlight / 2) {
+            paused = false;
+            MessageListenerContainer container = listenerRegistry.getListenerContainer(LISTENER_ID);
+            if (container != null) {
+                container.resume();
+            }
+        }
+    }
+
+    /**
+     * Called when partitions are taken away; their records are redelivered to
+     * the new owner, so nothing more is committed for them here.
+     */
+    public void revoke(Collection<TopicPartition> partitions) {
+        offsets.revoke(partitions);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+    }
+}
@@ -1,52 +1,422 @@
 package com.bikash.photo_porter.service;
 
 import com.bikash.photo_porter.dto.TransferMessage;
+import com.bikash.photo_porter.model.JobPriority;
+import com.bikash.photo_porter.model.MigratedMedia;
 import com.bikash.photo_porter.model.Transfer;
 import com.bikash.photo_porter.model.TransferStatus;
 import com.bikash.photo_porter.repository.TransferRepository;
+import com.bikash.photo_porter.repository.UserTokenRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
+/**
+ * Consumes transfer messages one at a time, a whole poll at a time with
+ * {@code photo.kafka.consumer.mode=batch}, or many at once per partition with
+ * {@code parallel} (see {@link ParallelRecordDispatcher}). Failed
+ * photos are handed to the {@link TransferRetryRouter}; its retry tiers are
+ * consumed here too, each by its own container so a long delay in one tier
+ * never holds up another. Photos are uploaded with the target account's
+ * current token rather than the one embedded when the message was produced,
+ * which has long expired by the later retry tiers or a dead-letter replay.
+ */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class PhotoTransferConsumer {
 
-    private final GooglePhotosClient googlePhotosClient;
+    private final TransferEngine transferEngine;
     private final TransferRepository transferRepository;
+    private final MigrationIndex migrationIndex;
+    private final TransferOutcomeWriter outcomeWriter;
+    private final TransferRetryRouter retryRouter;
+    private final ParallelRecordDispatcher parallelDispatcher;
+    private final UserTokenRepository userTokenRepository;
+    private final TokenRefreshService tokenRefreshService;
 
-    @KafkaListener(topics = "${photo.kafka.topic}", groupId = "photo-transfer-group")
-    public void consume(TransferMessage message) {
+    @Value("${photo.kafka.retry.max-pause-ms:60000}")
+    private long maxRetryPauseMs;
+
+    @Value("${photo.kafka.consumer.batch.outcome-chunk-size:50}")
+    private int outcomeChunkSize;
+
+    @KafkaListener(id = "photo-transfer", topics = "${photo.kafka.topic}", groupId = "photo-transfer-group",
+            autoStartup = "#{'${photo.kafka.consumer.mode:single}' == 'single'}")
+    public void consume(ConsumerRecord<String, TransferMessage> record) {
+        process(record.value(), transferIdOf(record), 0);
+    }
+
+    /**
+     * Hands the record to the worker pool and returns to polling. The offset
+     * is committed once it and every earlier record of the partition are done.
+     */
+    @KafkaListener(id = ParallelRecordDispatcher.LISTENER_ID, topics = "${photo.kafka.topic}",
+            groupId = "photo-transfer-group", containerFactory = "parallelKafkaListenerContainerFactory",
+            autoStartup = "#{'${photo.kafka.consumer.mode:single}' == 'parallel'}")
+    public void consumeParallel(ConsumerRecord<String, TransferMessage> record, Acknowledgment ack) {
+        parallelDispatcher.dispatch(record, ack, r -> process(r.value(), transferIdOf(r), 0));
+    }
+
+    @KafkaListener(id = "photo-transfer-retry-0", topics = "#{@transferRetryRouter.tierTopic(0)}",
+            groupId = "photo-transfer-group", containerFactory = "retryKafkaListenerContainerFactory")
+    public void consumeRetryTier0(ConsumerRecord<String, TransferMessage> record, Acknowledgment ack) {
+        consumeRetry(record, ack);
+    }
+
+    @KafkaListener(id = "photo-transfer-retry-1", topics = "#{@transferRetryRouter.tierTopic(1)}",
+            groupId = "photo-transfer-group", containerFactory = "retryKafkaListenerContainerFactory")
+    public void consumeRetryTier1(ConsumerRecord<String, TransferMessage> record, Acknowledgment ack) {
+        consumeRetry(record, ack);
+    }
+
+    @KafkaListener(id = "photo-transfer-retry-2", topics = "#{@transferRetryRouter.tierTopic(2)}",
+            groupId = "photo-transfer-group", containerFactory = "retryKafkaListenerContainerFactory")
+    public void consumeRetryTier2(ConsumerRecord<String, TransferMessage> record, Acknowledgment ack) {
+        consumeRetry(record, ack);
+    }
+
+    /**
+     * Processes a retry record once it is due. Every record in a tier waits the
+     * same delay, so while the head is not due nothing behind it is either; the
+     * partition is paused (not the thread) and the record redelivered later.
+     */
+    void consumeRetry(ConsumerRecord<String, TransferMessage> record, Acknowledgment ack) {
+        String dueAt = TransferRetryRouter.headerValue(record.headers(), TransferRetryRouter.DUE_AT);
+        long wait = dueAt != null ? Long.parseLong(dueAt) - System.currentTimeMillis() : 0;
+        if (wait > 0) {
+            ack.nack(Duration.ofMillis(Math.min(wait, maxRetryPauseMs)));
+            return;
+        }
+        String attempts = TransferRetryRouter.headerValue(record.headers(), TransferRetryRouter.ATTEMPTS);
+        process(record.value(), transferIdOf(record), attempts != null ? Integer.parseInt(attempts) : 0);
+        ack.acknowledge();
+    }
+
+    /**
+     * The {@link Transfer} row of an earlier attempt, carried by retried and
+     * replayed records.
+     */
+    private static Long transferIdOf(ConsumerRecord<String, TransferMessage> record) {
+        String transferId = TransferRetryRouter.headerValue(record.headers(), TransferRetryRouter.TRANSFER_ID);
+        return transferId != null ? Long.valueOf(transferId) : null;
+    }
+
+    /**
+     * Transfers one photo, reusing the {@link Transfer} row of an earlier
+     * attempt when there is one.
+     *
+     * @param attempts failed attempts before this one
+     */
+    private void process(TransferMessage message, Long transferId, int attempts) {
         log.info("Consuming message for photo: {}", message.getFileName());
 
-        Transfer transfer = new Transfer();
-        transfer.setPhotoId(message.getPhotoId());
-        transfer.setSourceUserId(message.getSourceUserId());
-        transfer.setTargetUserId(message.getTargetUserId());
+        Transfer transfer = transferId != null ? transferRepository.findById(transferId).orElse(null) : null;
+        if (transfer == null) {
+            transfer = new Transfer();
+            transfer.setPhotoId(message.getPhotoId());
+            transfer.setSourceUserId(message.getSourceUserId());
+            transfer.setTargetUserId(message.getTargetUserId());
+            transfer.setStartedAt(LocalDateTime.now());
+        }
+
+        if (migrationIndex.isMigrated(message.getSourceUserId(), message.getTargetUserId(), message.getPhotoId())) {
+            log.info("Photo {} already migrated, skipping", message.getPhotoId());
+            transfer.setStatus(TransferStatus.SKIPPED.name());
+            transfer.setCompletedAt(LocalDateTime.now());
+            transferRepository.save(transfer);
+            return;
+        }
+
         transfer.setStatus(TransferStatus.IN_PROGRESS.name());
-        transfer.setStartedAt(LocalDateTime.now());
+        transfer.setErrorMessage(null);
         transfer = transferRepository.save(transfer);
 
+        Transfer record = transfer;
+        TransferTask task = toTask(message, transfer.getId(), targetAccessToken(message));
+        transferEngine.submit(List.of(task), new TransferLedger() {
+            @Override
+            public void onSuccess(TransferTask t) {
+                record.setStatus(TransferStatus.SUCCESS.name());
+                record.setCompletedAt(LocalDateTime.now());
+                transferRepository.save(record);
+                migrationIndex.record(new MigratedMedia(null, message.getSourceUserId(), message.getTargetUserId(),
+                        message.getPhotoId(), t.getTargetMediaItemId(), t.getContentHash(), t.getBytes(),
+                        record.getCompletedAt()));
+                log.info("Transfer successful: {}", t.getFileName());
+            }
+
+            @Override
+            public void onFailure(TransferTask t, String errorMessage) {
+                TransferRetryRouter.Route route = retryRouter.route(message, record.getId(), t.getErrorClass(),
+                        errorMessage, attempts + 1);
+                if (route == TransferRetryRouter.Route.RETRY) {
+                    record.setStatus(TransferStatus.RETRY_PENDING.name());
+                } else {
+                    record.setStatus(TransferStatus.FAILED.name());
+                    record.setCompletedAt(LocalDateTime.now());
+                }
+                record.setErrorMessage(errorMessage);
+                transferRepository.save(record);
+                log.error("Transfer failed: {}: {}", t.getFileName(), errorMessage);
+            }
+        }).join();
+    }
+
+    /**
+     * Handles one poll: inserts every {@link Transfer} row in one JDBC batch,
+     * runs all photos through the engine concurrently and writes their outcomes
+     * in chunks of {@code photo.kafka.consumer.batch.outcome-chunk-size}, each
+     * in its own transaction. Failed photos are routed to the retry topics only
+     * once their outcome is committed. If an outcome cannot be written, the
+     * records before it are committed and it and the rest are redelivered.
+     * Replayed records reuse the {@link Transfer} row of their earlier attempt.
+     */
+    @KafkaListener(id = "photo-transfer-batch", topics = "${photo.kafka.topic}", groupId = "photo-transfer-group",
+            containerFactory = "batchKafkaListenerContainerFactory",
+            autoStartup = "#{'${photo.kafka.consumer.mode:single}' == 'batch'}")
+    public void consumeBatch(List<ConsumerRecord<String, TransferMessage>> records) {
+        log.info("Consuming batch of {} transfer messages", records.size());
+
+        List<TransferMessage> messages = records.stream().map(ConsumerRecord::value).toList();
+        Set<Integer> skipped = alreadyMigrated(messages);
+        Map<Long, Transfer> earlier = earlierTransfers(records);
+        LocalDateTime now = LocalDateTime.now();
+        List<Transfer> transfers = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            TransferMessage message = messages.get(i);
+            Long transferId = transferIdOf(records.get(i));
+            Transfer transfer = transferId != null ? earlier.remove(transferId) : null;
+            if (transfer == null) {
+                transfer = new Transfer();
+                transfer.setPhotoId(message.getPhotoId());
+                transfer.setSourceUserId(message.getSourceUserId());
+                transfer.setTargetUserId(message.getTargetUserId());
+                transfer.setStartedAt(now);
+            }
+            transfer.setErrorMessage(null);
+            transfer.setCompletedAt(null);
+            if (skipped.contains(i)) {
+                transfer.setStatus(TransferStatus.SKIPPED.name());
+                transfer.setCompletedAt(now);
+            } else {
+                transfer.setStatus(TransferStatus.IN_PROGRESS.name());
+            }
+            transfers.add(transfer);
+        }
+        transfers = transferRepository.saveAll(transfers);
+        Map<Long, Integer> indexByTransferId = new HashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            indexByTransferId.put(transfers.get(i).getId(), i);
+        }
+
+        Map<Integer, TransferOutcomeWriter.Outcome> outcomes = new ConcurrentHashMap<>();
+        TransferLedger ledger = new TransferLedger() {
+            @Override
+            public void onSuccess(TransferTask t) {
+                outcomes.put(indexByTransferId.get(t.getRecordId()), TransferOutcomeWriter.Outcome.success(t));
+            }
+
+            @Override
+            public void onFailure(TransferTask t, String errorMessage) {
+                log.error("Transfer failed: {}: {}", t.getFileName(), errorMessage);
+                outcomes.put(indexByTransferId.get(t.getRecordId()),
+                        TransferRetryRouter.routeFor(t.getErrorClass(), 1) == TransferRetryRouter.Route.RETRY
+                                ? TransferOutcomeWriter.Outcome.retry(t, errorMessage, null)
+                                : TransferOutcomeWriter.Outcome.failure(t, errorMessage));
+            }
+        };
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        Map<Long, String> targetTokens = new HashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            if (!skipped.contains(i)) {
+                TransferMessage message = messages.get(i);
+                String targetToken = targetTokens.computeIfAbsent(message.getTargetUserId(),
+                        userId -> targetAccessToken(message));
+                pending.add(transferEngine.submit(List.of(toTask(message, transfers.get(i).getId(), targetToken)),
+                        ledger));
+            }
+        }
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+
+        int failedAt = writeOutcomes(messages, outcomes);
+        if (failedAt >= 0) {
+            abandon(messages, outcomes, failedAt);
+            throw new BatchListenerFailedException("Failed to record outcome of photo "
+                    + messages.get(failedAt).getPhotoId(), failedAt);
+        }
+        log.info("Completed batch of {} transfer messages ({} skipped)", messages.size(), skipped.size());
+    }
+
+    /**
+     * Writes the outcomes in record order, one transaction per chunk, and routes
+     * each committed failure. When a chunk fails its records are written one at
+     * a time to find the one that cannot be recorded.
+     *
+     * @return the index of the first record whose outcome could not be written, or -1
+     */
+    private int writeOutcomes(List<TransferMessage> messages, Map<Integer, TransferOutcomeWriter.Outcome> outcomes) {
+        int chunkSize = Math.max(1, outcomeChunkSize);
+        for (int start = 0; start < messages.size(); start += chunkSize) {
+            List<Integer> chunk = new ArrayList<>();
+            for (int i = start; i < Math.min(messages.size(), start + chunkSize); i++) {
+                if (outcomes.containsKey(i)) {
+                    chunk.add(i);
+                }
+            }
+            if (chunk.isEmpty()) {
+                continue;
+            }
+            try {
+                outcomeWriter.applyTransfers(chunk.stream().map(outcomes::get).toList());
+                chunk.forEach(i -> routeFailure(messages.get(i), outcomes.get(i)));
+            } catch (RuntimeException e) {
+                log.warn("Failed to write {} transfer outcomes, writing them one at a time", chunk.size(), e);
+                for (Integer i : chunk) {
+                    try {
+                        outcomeWriter.applyTransfers(List.of(outcomes.get(i)));
+                    } catch (RuntimeException single) {
+                        log.error("Failed to record outcome of photo {}", messages.get(i).getPhotoId(), single);
+                        return i;
+                    }
+                    routeFailure(messages.get(i), outcomes.get(i));
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void routeFailure(TransferMessage message, TransferOutcomeWriter.Outcome outcome) {
+        if (outcome.isFailedAttempt()) {
+            retryRouter.route(message, outcome.recordId(), outcome.errorClass(), outcome.errorMessage(), 1);
+        }
+    }
+
+    /**
+     * Best effort before the records from {@code from} on are redelivered:
+     * photos that did reach the target are indexed so the redelivery skips them
+     * instead of uploading them again, and the rows of this attempt are closed.
+     */
+    private void abandon(List<TransferMessage> messages, Map<Integer, TransferOutcomeWriter.Outcome> outcomes,
+                         int from) {
+        List<MigratedMedia> uploaded = new ArrayList<>();
+        List<TransferOutcomeWriter.Outcome> closed = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = from; i < messages.size(); i++) {
+            TransferOutcomeWriter.Outcome outcome = outcomes.get(i);
+            if (outcome == null) {
+                continue;
+            }
+            TransferMessage message = messages.get(i);
+            if (outcome.status() == TransferStatus.SUCCESS) {
+                uploaded.add(new MigratedMedia(null, message.getSourceUserId(), message.getTargetUserId(),
+                        message.getPhotoId(), outcome.targetMediaItemId(), outcome.contentHash(), outcome.bytes(),
+                        outcome.completedAt()));
+            }
+            closed.add(new TransferOutcomeWriter.Outcome(outcome.recordId(), TransferStatus.FAILED, null, null,
+                    null, "Outcome could not be recorded; message redelivered", outcome.errorClass(), null, now));
+        }
         try {
-            googlePhotosClient.uploadPhoto(message.getTargetAccessToken(),
-                    message.getPhotoBytes(),
-                    message.getFileName());
+            migrationIndex.recordAll(uploaded);
+            outcomeWriter.applyTransfers(closed);
+        } catch (RuntimeException e) {
+            log.warn("Could not close {} abandoned transfer rows: {}", closed.size(), e.getMessage());
+        }
+    }
 
-            transfer.setStatus(TransferStatus.SUCCESS.name());
-            transfer.setCompletedAt(LocalDateTime.now());
-            log.info("Transfer successful: {}", message.getFileName());
+    private Map<Long, Transfer> earlierTransfers(List<ConsumerRecord<String, TransferMessage>> records) {
+        List<Long> ids = new ArrayList<>();
+        for (ConsumerRecord<String, TransferMessage> record : records) {
+            Long transferId = transferIdOf(record);
+            if (transferId != null) {
+                ids.add(transferId);
+            }
+        }
+        Map<Long, Transfer> earlier = new HashMap<>();
+        if (!ids.isEmpty()) {
+            transferRepository.findAllById(ids).forEach(t -> earlier.put(t.getId(), t));
+        }
+        return earlier;
+    }
 
-        } catch (Exception e) {
-            transfer.setStatus(TransferStatus.FAILED.name());
-            transfer.setErrorMessage(e.getMessage());
-            transfer.setCompletedAt(LocalDateTime.now());
-            log.error("Transfer failed: {}", message.getFileName(), e);
+    /**
+     * Indexes of the messages whose photo is already in the target library,
+     * checked with one index lookup per account pair.
+     */
+    private Set<Integer> alreadyMigrated(List<TransferMessage> messages) {
+        Map<List<Long>, List<Integer>> byPair = new HashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            TransferMessage message = messages.get(i);
+            byPair.computeIfAbsent(List.of(message.getSourceUserId(), message.getTargetUserId()),
+                    k -> new ArrayList<>()).add(i);
         }
+        Set<Integer> skipped = new HashSet<>();
+        byPair.forEach((pair, indexes) -> {
+            Set<String> migrated = migrationIndex.alreadyMigrated(pair.get(0), pair.get(1),
+                    indexes.stream().map(i -> messages.get(i).getPhotoId()).collect(Collectors.toList()));
+            for (Integer i : indexes) {
+                if (migrated.contains(messages.get(i).getPhotoId())) {
+                    skipped.add(i);
+                }
+            }
+        });
+        return skipped;
+    }
+
+    /**
+     * The target account's stored token, refreshed if it is about to expire.
+     * The token in the message is only a fallback when the account has no
+     * stored token or it cannot be refreshed; the upload then fails as AUTH
+     * and can be replayed once the user re-connects.
+     */
+    private String targetAccessToken(TransferMessage message) {
+        try {
+            return userTokenRepository.findByUserId(message.getTargetUserId())
+                    .map(tokenRefreshService::refreshTokenIfNeeded)
+                    .orElseGet(() -> {
+                        log.warn("No stored token for target user {}, using the message's",
+                                message.getTargetUserId());
+                        return message.getTargetAccessToken();
+                    });
+        } catch (RuntimeException e) {
+            log.warn("Could not refresh token of target user {}, using the message's: {}",
+                    message.getTargetUserId(), e.getMessage());
+            return message.getTargetAccessToken();
+        }
+    }
 
-        transferRepository.save(transfer);
+    private TransferTask toTask(TransferMessage message, Long transferId, String targetAccessToken) {
+        TransferTask task = new TransferTask();
+        task.setRecordId(transferId);
+        task.setPhotoId(message.getPhotoId());
+        task.setFileName(message.getFileName());
+        if (message.getContentRef() != null) {
+            task.setContent(new SpoolStore.SpoolObject(message.getContentRef(),
+                    message.getContentLength() != null ? message.getContentLength() : -1L,
+                    message.getContentSha256()));
+        } else {
+            task.setPayload(message.getPhotoBytes());
+        }
+        task.setTargetAccessToken(targetAccessToken);
+        task.setAccountKey(String.valueOf(message.getTargetUserId()));
+        task.setFlow(new FairScheduler.Flow(JobPriority.NORMAL, String.valueOf(message.getSourceUserId()), null, 1));
+        return task;
     }
 }
@@ -1,24 +1,206 @@
 package com.bikash.photo_porter.service;
 
+import com.bikash.photo_porter.config.AccountPartitioner;
 import com.bikash.photo_porter.dto.TransferMessage;
-import lombok.RequiredArgsConstructor;
+import com.bikash.photo_porter.model.Transfer;
+import com.bikash.photo_porter.model.TransferStatus;
+import com.bikash.photo_porter.repository.TransferRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes transfer messages and tracks each one until the broker acks it.
+ * A send the producer gives up on is retried with {@link RetryPolicy} backoff;
+ * once the retries run out, the photo's {@link Transfer} row is marked FAILED
+ * (or one is inserted, for a first send that has none yet) so it is not lost
+ * silently.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class PhotoTransferProducer {
 
+    private final KafkaTemplate<String, TransferMessage> kafkaTemplate;
+    private final RetryPolicy retryPolicy;
+    private final TransferRepository transferRepository;
+    private final ScheduledExecutorService resendExecutor =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("kafka-resend-"));
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Timer deliveryLatency;
+    private final Counter delivered;
+    private final Counter failures;
+    private final Counter resends;
+
     @Value("${photo.kafka.topic}")
     private String topic;
 
-    private final KafkaTemplate<String, TransferMessage> kafkaTemplate;
+    // "target" keys by target account; "target-source" adds the source account
+    @Value("${photo.kafka.key:target}")
+    private String keyStrategy;
+
+    public PhotoTransferProducer(KafkaTemplate<String, TransferMessage> kafkaTemplate,
+                                 RetryPolicy retryPolicy,
+                                 TransferRepository transferRepository,
+                                 MeterRegistry registry) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.retryPolicy = retryPolicy;
+        this.transferRepository = transferRepository;
+        this.deliveryLatency = Timer.builder("photo.kafka.send.latency")
+                .description("Time from send to broker ack")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.delivered = Counter.builder("photo.kafka.send.delivered").register(registry);
+        this.failures = Counter.builder("photo.kafka.send.failures")
+                .description("Sends that failed after the producer's own retries")
+                .register(registry);
+        this.resends = Counter.builder("photo.kafka.send.resends").register(registry);
+        Gauge.builder("photo.kafka.send.in.flight", inFlight, AtomicInteger::get)
+                .description("Records sent but not yet acked or failed")
+                .register(registry);
+        Gauge.builder("photo.kafka.producer.batch.fill.ratio", this, PhotoTransferProducer::batchFillRatio)
+                .description("Average batch size relative to batch.size")
+                .register(registry);
+    }
+
+    /**
+     * Sends the message and returns a handle that completes once the broker
+     * has acked it, or exceptionally once every resend has failed.
+     */
+    public CompletableFuture<SendResult<String, TransferMessage>> send(TransferMessage message) {
+        return send(topic, message, List.of());
+    }
+
+    /**
+     * Sends the message to another topic of the pipeline (a retry tier or the
+     * dead-letter topic) with the given headers, keyed like the main topic.
+     */
+    public CompletableFuture<SendResult<String, TransferMessage>> send(String topic, TransferMessage message,
+                                                                       List<Header> headers) {
+        CompletableFuture<SendResult<String, TransferMessage>> delivery = new CompletableFuture<>();
+        send(topic, message, headers, 1, delivery);
+        return delivery;
+    }
+
+    private void send(String topic, TransferMessage message, List<Header> headers, int attempt,
+                      CompletableFuture<SendResult<String, TransferMessage>> delivery) {
+        inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        CompletableFuture<SendResult<String, TransferMessage>> sent;
+        try {
+            sent = kafkaTemplate.send(new ProducerRecord<>(topic, null, keyFor(message), message, headers));
+        } catch (RuntimeException e) {
+            // Serialization errors and a full buffer are thrown instead of completing the future
+            sent = CompletableFuture.failedFuture(e);
+        }
+        sent.whenComplete((result, error) -> {
+            inFlight.decrementAndGet();
+            deliveryLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (error == null) {
+                delivered.increment();
+                log.info("Published transfer task to Kafka: {} (partition {}, offset {})", message.getFileName(),
+                        result.getRecordMetadata().partition(), result.getRecordMetadata().offset());
+                delivery.complete(result);
+                return;
+            }
+            failures.increment();
+            LocalDateTime retryAt = retryPolicy.nextAttemptAt(RetryPolicy.classify(error), attempt);
+            if (retryAt != null) {
+                long delayMs = Math.max(0, Duration.between(LocalDateTime.now(), retryAt).toMillis());
+                log.warn("Failed to publish photo {} (attempt {}), resending in {} ms: {}", message.getPhotoId(),
+                        attempt, delayMs, error.getMessage());
+                resends.increment();
+                resendExecutor.schedule(() -> send(topic, message, headers, attempt + 1, delivery), delayMs,
+                        TimeUnit.MILLISECONDS);
+                return;
+            }
+            log.error("Giving up publishing photo {} after {} attempts", message.getPhotoId(), attempt, error);
+            recordFailure(message, headers, error);
+            delivery.completeExceptionally(error);
+        });
+    }
+
+    /**
+     * Marks the row named by the record's {@link TransferRetryRouter#TRANSFER_ID}
+     * header failed, so a retry or replay that cannot be published does not
+     * leave it pending; a record without one gets a new row.
+     */
+    private void recordFailure(TransferMessage message, List<Header> headers, Throwable error) {
+        try {
+            String transferId = TransferRetryRouter.headerValue(new RecordHeaders(headers),
+                    TransferRetryRouter.TRANSFER_ID);
+            Transfer transfer = transferId != null
+                    ? transferRepository.findById(Long.valueOf(transferId)).orElse(null) : null;
+            if (transfer == null) {
+                transfer = new Transfer();
+                transfer.setPhotoId(message.getPhotoId());
+                transfer.setSourceUserId(message.getSourceUserId());
+                transfer.setTargetUserId(message.getTargetUserId());
+            }
+            transfer.setStatus(TransferStatus.FAILED.name());
+            transfer.setErrorMessage("Failed to publish: " + error.getMessage());
+            transfer.setCompletedAt(LocalDateTime.now());
+            transferRepository.save(transfer);
+        } catch (Exception e) {
+            log.error("Failed to record unpublished photo {}", message.getPhotoId(), e);
+        }
+    }
+
+    /**
+     * Builds the record key. The target account always comes first, which is
+     * what {@link AccountPartitioner} partitions on.
+     */
+    String keyFor(TransferMessage message) {
+        String target = String.valueOf(message.getTargetUserId());
+        if ("target-source".equals(keyStrategy)) {
+            return target + AccountPartitioner.KEY_SEPARATOR + message.getSourceUserId();
+        }
+        return target;
+    }
+
+    private double batchFillRatio() {
+        Object batchSize = kafkaTemplate.getProducerFactory().getConfigurationProperties()
+                .get(ProducerConfig.BATCH_SIZE_CONFIG);
+        if (!(batchSize instanceof Number size) || size.doubleValue() <= 0) {
+            return Double.NaN;
+        }
+        try {
+            for (Metric metric : kafkaTemplate.metrics().values()) {
+                if ("batch-size-avg".equals(metric.metricName().name())
+                        && "producer-metrics".equals(metric.metricName().group())
+                        && metric.metricValue() instanceof Number avg) {
+                    return avg.doubleValue() / size.doubleValue();
+                }
+            }
+        } catch (RuntimeException e) {
+            // No producer created yet
+        }
+        return Double.NaN;
+    }
 
-    public void send(TransferMessage message) {
-        kafkaTemplate.send(topic, message);
-        log.info("Published transfer task to Kafka: {}", message.getFileName());
+    @PreDestroy
+    public void shutdown() {
+        resendExecutor.shutdownNow();
     }
 }
@@ -0,0 +1,125 @@
+package com.bikash.photo_porter.service;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.photoslibrary.v1.PhotosLibrary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps authorized {@link PhotosLibrary} clients per access token so that
+ * repeated calls for the same account share one client on the pooled transport.
+ * Entries expire together with the access token they were built for: when
+ * {@link TokenRefreshService} hands out a token it reports the token's expiry,
+ * and the client is dropped {@code expiry-margin-seconds} before it. A token
+ * whose expiry was never reported is kept at most {@code ttl-seconds}.
+ */
+@Component
+@Slf4j
+public class PhotosLibraryClientCache {
+
+    private static final String APPLICATION_NAME = "GooglePhotosTransferApp";
+    private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
+
+    private final HttpTransport httpTransport;
+    private final Map<String, CachedClient> clients = new ConcurrentHashMap<>();
+    private final Map<String, Instant> tokenExpiries = new ConcurrentHashMap<>();
+
+    @Value("${photo.google.client-cache.ttl-seconds:3300}")
+    private long ttlSeconds;
+
+    @Value("${photo.google.client-cache.expiry-margin-seconds:60}")
+    private long expiryMarginSeconds;
+
+    @Value("${photo.google.client-cache.max-size:256}")
+    private int maxSize;
+
+    public PhotosLibraryClientCache(HttpTransport googleHttpTransport, MeterRegistry registry) {
+        this.httpTransport = googleHttpTransport;
+        Gauge.builder("google.photos.client.cache.size", clients, Map::size).register(registry);
+    }
+
+    public PhotosLibrary get(String accessToken) {
+        Instant now = Instant.now();
+        CachedClient cached = clients.get(accessToken);
+        if (cached != null && cached.expiresAt().isAfter(now)) {
+            return cached.client();
+        }
+        if (clients.size() >= maxSize) {
+            purgeExpired();
+        }
+        CachedClient created = new CachedClient(build(accessToken), expiresAt(accessToken, now));
+        clients.put(accessToken, created);
+        return created.client();
+    }
+
+    /**
+     * Records when the token expires, so its client lives no longer than the
+     * token does however old the token was when first seen.
+     */
+    public void tokenExpiresAt(String accessToken, Instant expiresAt) {
+        if (accessToken == null || expiresAt == null) {
+            return;
+        }
+        tokenExpiries.put(accessToken, expiresAt);
+        Instant usableUntil = expiresAt.minusSeconds(expiryMarginSeconds);
+        clients.computeIfPresent(accessToken, (token, cached) -> cached.expiresAt().isAfter(usableUntil)
+                ? new CachedClient(cached.client(), usableUntil) : cached);
+    }
+
+    /**
+     * Drops the client built for a token, e.g. once the token has been refreshed.
+     */
+    public void evict(String accessToken) {
+        if (accessToken != null) {
+            clients.remove(accessToken);
+            tokenExpiries.remove(accessToken);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${photo.google.client-cache.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        Instant now = Instant.now();
+        clients.entrySet().removeIf(e -> !e.getValue().expiresAt().isAfter(now));
+        tokenExpiries.values().removeIf(expiresAt -> !expiresAt.isAfter(now));
+        // Still full after dropping expired tokens: start over rather than grow unbounded
+        if (clients.size() >= maxSize) {
+            log.debug("Photos client cache full ({} entries), clearing", clients.size());
+            clients.clear();
+        }
+        if (tokenExpiries.size() >= maxSize) {
+            tokenExpiries.clear();
+        }
+    }
+
+    private Instant expiresAt(String accessToken, Instant now) {
+        Instant ttl = now.plus(Duration.ofSeconds(ttlSeconds));
+        Instant tokenExpiry = tokenExpiries.get(accessToken);
+        if (tokenExpiry == null) {
+            return ttl;
+        }
+        Instant usableUntil = tokenExpiry.minusSeconds(expiryMarginSeconds);
+        return usableUntil.isBefore(ttl) ? usableUntil : ttl;
+    }
+
+    private PhotosLibrary build(String accessToken) {
+        GoogleCredential credential = new GoogleCredential().setAccessToken(accessToken);
+        return new PhotosLibrary.Builder(httpTransport, JSON_FACTORY, credential)
+                .setApplicationName(APPLICATION_NAME)
+                .build();
+    }
+
+    private record CachedClient(PhotosLibrary client, Instant expiresAt) {
+    }
+}
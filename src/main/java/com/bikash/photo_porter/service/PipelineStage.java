@@ -0,0 +1,62 @@
+package com.bikash.photo_porter.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed-size worker pool with a bounded queue. When the queue is full,
+ * {@link #execute} blocks the caller, which is how backpressure propagates from
+ * a slow stage to the stages feeding it.
+ */
+public class PipelineStage {
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final Timer latency;
+
+    public PipelineStage(String name, int concurrency, int queueCapacity, MeterRegistry registry) {
+        this.name = name;
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("transfer-" + name + "-"),
+                (task, pool) -> {
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException("Stage " + name + " is shut down");
+                    }
+                    try {
+                        pool.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for stage " + name, e);
+                    }
+                });
+        this.latency = Timer.builder("transfer.stage.latency")
+                .tag("stage", name)
+                .description("Time spent processing one item in a transfer stage")
+                .register(registry);
+        Gauge.builder("transfer.stage.queue.depth", executor, e -> e.getQueue().size())
+                .tag("stage", name)
+                .register(registry);
+        Gauge.builder("transfer.stage.active", executor, ThreadPoolExecutor::getActiveCount)
+                .tag("stage", name)
+                .register(registry);
+    }
+
+    public void execute(Runnable work) {
+        executor.execute(() -> latency.record(work));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
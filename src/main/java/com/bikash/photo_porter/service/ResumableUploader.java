@@ -0,0 +1,288 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.model.UploadSession;
+import com.bikash.photo_porter.repository.UploadSessionRepository;
+import com.google.api.client.http.*;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Uploads large media with the Google Photos resumable protocol. The session URL
+ * and committed offset are persisted after every chunk so that a later attempt
+ * with the same session key continues where the previous one stopped: callers
+ * try {@link #resume} before opening the source from its first byte.
+ */
+@Component
+@Slf4j
+public class ResumableUploader {
+
+    private static final String UPLOADS_URL = "https://photoslibrary.googleapis.com/v1/uploads";
+    private static final int DEFAULT_GRANULARITY = 256 * 1024;
+
+    /**
+     * Re-opens the source positioned at the given byte offset.
+     */
+    @FunctionalInterface
+    public interface RangedSource {
+        MediaDownload openAt(long offset) throws IOException;
+    }
+
+    /**
+     * An upload finished by {@link #resume}.
+     */
+    public record Resumed(String uploadToken, long totalBytes) {
+    }
+
+    private final HttpTransport httpTransport;
+    private final UploadSessionRepository uploadSessionRepository;
+    private final Counter bytesResent;
+    private final Counter bytesSaved;
+    private final Counter sessionsResumed;
+    private final DistributionSummary chunkSizes;
+
+    @Value("${photo.upload.resumable.threshold-bytes:33554432}")
+    private long thresholdBytes;
+
+    @Value("${photo.upload.resumable.initial-chunk-bytes:4194304}")
+    private int initialChunkBytes;
+
+    @Value("${photo.upload.resumable.max-chunk-bytes:8388608}")
+    private int maxChunkBytes;
+
+    @Value("${photo.upload.resumable.target-chunk-seconds:5}")
+    private double targetChunkSeconds;
+
+    @Value("${photo.upload.resumable.max-chunk-retries:3}")
+    private int maxChunkRetries;
+
+    public ResumableUploader(HttpTransport googleHttpTransport, UploadSessionRepository uploadSessionRepository,
+                             MeterRegistry registry) {
+        this.httpTransport = googleHttpTransport;
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.bytesResent = Counter.builder("photo.upload.resumable.bytes.resent")
+                .description("Bytes sent again after a failed chunk")
+                .register(registry);
+        this.bytesSaved = Counter.builder("photo.upload.resumable.bytes.saved")
+                .description("Already committed bytes that did not have to be sent again after a failure")
+                .register(registry);
+        this.sessionsResumed = Counter.builder("photo.upload.resumable.sessions.resumed")
+                .register(registry);
+        this.chunkSizes = DistributionSummary.builder("photo.upload.resumable.chunk.bytes")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    public boolean shouldUse(long totalBytes) {
+        return totalBytes >= thresholdBytes;
+    }
+
+    /**
+     * Uploads {@code totalBytes} of media from its first byte in a new session
+     * and returns the upload token.
+     */
+    public String upload(String sessionKey, String accessToken, String fileName, String mimeType,
+                         long totalBytes, InputStream content) throws IOException {
+        UploadSession session = startSession(sessionKey, accessToken, fileName, mimeType, totalBytes);
+        return uploadChunks(session, accessToken, content, 0);
+    }
+
+    /**
+     * Continues the session an earlier attempt left under {@code sessionKey},
+     * opening the source at the offset the server has committed.
+     *
+     * @return the finished upload, or {@code null} when there is no session
+     * left to continue and the upload has to start over
+     */
+    public Resumed resume(String sessionKey, String accessToken, RangedSource source) throws IOException {
+        UploadSession session = uploadSessionRepository.findBySessionKey(sessionKey).orElse(null);
+        if (session == null) {
+            return null;
+        }
+        long totalBytes = session.getTotalBytes();
+        long received = querySession(session.getUploadUrl(), accessToken);
+        if (received < 0 || received >= totalBytes) {
+            // Expired, or finalized without a recorded token: start over
+            uploadSessionRepository.delete(session);
+            return null;
+        }
+        // The server's view wins over the last checkpoint, it may have received more
+        session.setCommittedOffset(received);
+
+        log.info("Resuming upload of {} at byte {} of {}", session.getFileName(), received, totalBytes);
+        sessionsResumed.increment();
+        bytesSaved.increment(received);
+        try (MediaDownload resumed = source.openAt(received)) {
+            return new Resumed(uploadChunks(session, accessToken, resumed.getContent(), received), totalBytes);
+        }
+    }
+
+    private UploadSession startSession(String sessionKey, String accessToken, String fileName, String mimeType,
+                                       long totalBytes) throws IOException {
+        HttpRequest request = httpTransport.createRequestFactory()
+                .buildPostRequest(new GenericUrl(UPLOADS_URL), new EmptyContent());
+        HttpHeaders headers = request.getHeaders();
+        headers.setAuthorization("Bearer " + accessToken);
+        headers.set("X-Goog-Upload-Command", "start");
+        headers.set("X-Goog-Upload-Content-Type", mimeType);
+        headers.set("X-Goog-Upload-File-Name", fileName);
+        headers.set("X-Goog-Upload-Protocol", "resumable");
+        headers.set("X-Goog-Upload-Raw-Size", String.valueOf(totalBytes));
+
+        HttpResponse response = request.execute();
+        try {
+            String uploadUrl = response.getHeaders().getFirstHeaderStringValue("X-Goog-Upload-URL");
+            if (uploadUrl == null) {
+                throw new IOException("Resumable upload start returned no upload URL");
+            }
+            String granularity = response.getHeaders().getFirstHeaderStringValue("X-Goog-Upload-Chunk-Granularity");
+
+            UploadSession session = new UploadSession();
+            session.setSessionKey(sessionKey);
+            session.setUploadUrl(uploadUrl);
+            session.setFileName(fileName);
+            session.setTotalBytes(totalBytes);
+            session.setCommittedOffset(0L);
+            session.setChunkGranularity(granularity != null ? Integer.valueOf(granularity) : DEFAULT_GRANULARITY);
+            return uploadSessionRepository.save(session);
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    private String uploadChunks(UploadSession session, String accessToken, InputStream in, long offset)
+            throws IOException {
+        long totalBytes = session.getTotalBytes();
+        int granularity = granularity(session);
+        int chunkSize = clampChunk(initialChunkBytes, granularity);
+        byte[] buffer = new byte[chunkSize];
+
+        while (true) {
+            int wanted = (int) Math.min(chunkSize, totalBytes - offset);
+            if (buffer.length < wanted) {
+                buffer = new byte[chunkSize];
+            }
+            int len = in.readNBytes(buffer, 0, wanted);
+            if (len < wanted) {
+                throw new IOException("Source ended at byte " + (offset + len) + " of " + totalBytes);
+            }
+            boolean last = offset + len >= totalBytes;
+
+            long started = System.nanoTime();
+            String uploadToken = sendChunk(session, accessToken, buffer, len, offset, last);
+            double seconds = (System.nanoTime() - started) / 1_000_000_000.0;
+            chunkSizes.record(len);
+
+            offset += len;
+            if (last) {
+                uploadSessionRepository.delete(session);
+                return uploadToken;
+            }
+            session.setCommittedOffset(offset);
+            uploadSessionRepository.save(session);
+
+            // Aim for chunks that take about targetChunkSeconds at the measured throughput
+            double bytesPerSecond = len / Math.max(seconds, 0.001);
+            chunkSize = clampChunk((long) (bytesPerSecond * targetChunkSeconds), granularity);
+        }
+    }
+
+    private String sendChunk(UploadSession session, String accessToken, byte[] buffer, int len, long offset,
+                             boolean last) throws IOException {
+        int sent = 0;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return postChunk(session.getUploadUrl(), accessToken, buffer, sent, len - sent, offset + sent, last);
+            } catch (IOException e) {
+                if (attempt >= maxChunkRetries) {
+                    throw e;
+                }
+                long received = querySession(session.getUploadUrl(), accessToken);
+                if (received < offset) {
+                    throw new IOException("Upload session lost committed data for " + session.getFileName(), e);
+                }
+                sent = (int) Math.min(received - offset, len);
+                bytesResent.increment(len - sent);
+                // Earlier chunks were never at risk; only what this chunk need not resend counts
+                bytesSaved.increment(sent);
+                log.warn("Chunk at offset {} of {} failed (attempt {}), resending from {}",
+                        offset, session.getFileName(), attempt + 1, offset + sent);
+                sleepBeforeRetry(attempt);
+            }
+        }
+    }
+
+    private String postChunk(String uploadUrl, String accessToken, byte[] buffer, int from, int length,
+                             long offset, boolean last) throws IOException {
+        HttpContent content = new ByteArrayContent("application/octet-stream", buffer, from, length);
+        HttpRequest request = httpTransport.createRequestFactory()
+                .buildPostRequest(new GenericUrl(uploadUrl), content);
+        request.getHeaders().setAuthorization("Bearer " + accessToken);
+        request.getHeaders().set("X-Goog-Upload-Command", last ? "upload, finalize" : "upload");
+        request.getHeaders().set("X-Goog-Upload-Offset", String.valueOf(offset));
+
+        HttpResponse response = request.execute();
+        if (last) {
+            return response.parseAsString();
+        }
+        response.disconnect();
+        return null;
+    }
+
+    /**
+     * @return bytes the server has committed for the session, or -1 if the session is no longer active
+     */
+    private long querySession(String uploadUrl, String accessToken) {
+        try {
+            HttpRequest request = httpTransport.createRequestFactory()
+                    .buildPostRequest(new GenericUrl(uploadUrl), new EmptyContent());
+            request.getHeaders().setAuthorization("Bearer " + accessToken);
+            request.getHeaders().set("X-Goog-Upload-Command", "query");
+            request.setThrowExceptionOnExecuteError(false);
+
+            HttpResponse response = request.execute();
+            try {
+                String status = response.getHeaders().getFirstHeaderStringValue("X-Goog-Upload-Status");
+                String received = response.getHeaders().getFirstHeaderStringValue("X-Goog-Upload-Size-Received");
+                if (!response.isSuccessStatusCode() || !"active".equals(status) || received == null) {
+                    return -1;
+                }
+                return Long.parseLong(received);
+            } finally {
+                response.disconnect();
+            }
+        } catch (Exception e) {
+            log.warn("Could not query upload session: {}", e.getMessage());
+            return -1;
+        }
+    }
+
+    private int clampChunk(long desired, int granularity) {
+        long bounded = Math.max(granularity, Math.min(desired, maxChunkBytes));
+        return (int) Math.max(granularity, alignDown(bounded, granularity));
+    }
+
+    private static long alignDown(long value, int granularity) {
+        return value - (value % granularity);
+    }
+
+    private static int granularity(UploadSession session) {
+        Integer granularity = session.getChunkGranularity();
+        return granularity != null && granularity > 0 ? granularity : DEFAULT_GRANULARITY;
+    }
+
+    private static void sleepBeforeRetry(int attempt) throws IOException {
+        try {
+            Thread.sleep(Math.min(1000L << attempt, 10_000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while retrying chunk upload", e);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.model.ErrorClass;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.services.photoslibrary.v1.model.Status;
+import org.apache.kafka.common.errors.RetriableException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a failed photo is tried again and when. Rate limits, server
+ * errors and network failures back off exponentially from a per-class base
+ * delay, with equal jitter so a burst of 429s does not come back in lockstep.
+ * Auth and client errors fail immediately.
+ */
+@Component
+public class RetryPolicy {
+
+    @Value("${photo.retry.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${photo.retry.max-delay-ms:1800000}")
+    private long maxDelayMs;
+
+    @Value("${photo.retry.rate-limited.base-delay-ms:30000}")
+    private long rateLimitedBaseDelayMs;
+
+    @Value("${photo.retry.server-error.base-delay-ms:10000}")
+    private long serverErrorBaseDelayMs;
+
+    @Value("${photo.retry.network.base-delay-ms:5000}")
+    private long networkBaseDelayMs;
+
+    /**
+     * Returns when the photo should be tried again, or {@code null} when it
+     * should be marked failed.
+     *
+     * @param attempts failed attempts so far, including the one just made
+     */
+    public LocalDateTime nextAttemptAt(ErrorClass errorClass, int attempts) {
+        if (errorClass == null || attempts >= maxAttempts) {
+            return null;
+        }
+        long base = switch (errorClass) {
+            case RATE_LIMITED -> rateLimitedBaseDelayMs;
+            case SERVER_ERROR -> serverErrorBaseDelayMs;
+            case NETWORK -> networkBaseDelayMs;
+            case AUTH, CLIENT, UNKNOWN -> -1;
+        };
+        if (base < 0) {
+            return null;
+        }
+        long delay = Math.min(maxDelayMs, base << Math.min(attempts - 1, 20));
+        long jittered = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        return LocalDateTime.now().plusNanos(jittered * 1_000_000);
+    }
+
+    /**
+     * Classifies by the first HTTP or network failure in the cause chain, so a
+     * client call that wraps it in a plain {@code RuntimeException} is retried
+     * the same as one that throws it directly.
+     */
+    public static ErrorClass classify(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof HttpResponseException http) {
+                return classifyHttp(http.getStatusCode());
+            }
+            if (t instanceof IOException || t instanceof RetriableException) {
+                return ErrorClass.NETWORK;
+            }
+        }
+        return ErrorClass.UNKNOWN;
+    }
+
+    /**
+     * Classifies a per-item {@code batchCreate} status, which carries a gRPC code.
+     */
+    public static ErrorClass classify(Status status) {
+        if (status == null || status.getCode() == null) {
+            return ErrorClass.UNKNOWN;
+        }
+        return switch (status.getCode()) {
+            case 8 -> ErrorClass.RATE_LIMITED;              // RESOURCE_EXHAUSTED
+            case 4, 10, 13, 14 -> ErrorClass.SERVER_ERROR;  // DEADLINE_EXCEEDED, ABORTED, INTERNAL, UNAVAILABLE
+            case 7, 16 -> ErrorClass.AUTH;                  // PERMISSION_DENIED, UNAUTHENTICATED
+            default -> ErrorClass.CLIENT;
+        };
+    }
+
+    static ErrorClass classifyHttp(int statusCode) {
+        if (statusCode == 429) {
+            return ErrorClass.RATE_LIMITED;
+        }
+        if (statusCode >= 500) {
+            return ErrorClass.SERVER_ERROR;
+        }
+        if (statusCode == 401 || statusCode == 403) {
+            return ErrorClass.AUTH;
+        }
+        if (statusCode == 408) {
+            return ErrorClass.NETWORK;
+        }
+        return ErrorClass.CLIENT;
+    }
+}
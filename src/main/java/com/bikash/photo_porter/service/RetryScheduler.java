@@ -0,0 +1,55 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.model.TransferStatus;
+import com.bikash.photo_porter.repository.PhotoTransferRepository;
+import com.bikash.photo_porter.repository.PhotoTransferRepository.DueRetry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Polls for {@code RETRY_PENDING} rows whose backoff has run out, makes them
+ * pending again and re-dispatches their jobs, so retries go back through the
+ * engine in batches with the rest of the job rather than one photo at a time.
+ * The schedule lives in the database, so retries survive a restart.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RetryScheduler {
+
+    private final PhotoTransferRepository photoTransferRepository;
+    private final JobProgressTracker progressTracker;
+    private final TransferJobRunner transferJobRunner;
+
+    @Value("${photo.retry.poll-batch-size:500}")
+    private int pollBatchSize;
+
+    @Scheduled(fixedDelayString = "${photo.retry.poll-ms:5000}")
+    public void releaseDueRetries() {
+        List<DueRetry> due = photoTransferRepository.findDueRetries(TransferStatus.RETRY_PENDING,
+                LocalDateTime.now(), PageRequest.of(0, pollBatchSize));
+        if (due.isEmpty()) {
+            return;
+        }
+        Map<Long, List<Long>> byJob = new LinkedHashMap<>();
+        for (DueRetry retry : due) {
+            byJob.computeIfAbsent(retry.getJobId(), id -> new ArrayList<>()).add(retry.getId());
+        }
+        byJob.forEach((jobId, ids) -> {
+            photoTransferRepository.updateStatus(ids, TransferStatus.PENDING);
+            progressTracker.transition(jobId, TransferStatus.RETRY_PENDING, TransferStatus.PENDING, ids.size(), 0);
+            log.info("Releasing {} due retries for job {}", ids.size(), jobId);
+            transferJobRunner.dispatch(jobId);
+        });
+    }
+}
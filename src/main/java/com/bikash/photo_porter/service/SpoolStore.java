@@ -0,0 +1,39 @@
+package com.bikash.photo_porter.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Content-addressed object store that holds photo bytes while a Kafka message
+ * only carries a reference to them (claim check). The operations mirror the
+ * S3 object API, so a bucket-backed store can replace the local one.
+ */
+public interface SpoolStore {
+
+    /**
+     * Stores the stream under the hex SHA-256 of its bytes. Storing content that
+     * is already present keeps the existing object.
+     */
+    SpoolObject putObject(InputStream content) throws IOException;
+
+    /**
+     * Opens the stored bytes for reading; the caller closes the stream.
+     */
+    InputStream getObject(String key) throws IOException;
+
+    void deleteObject(String key) throws IOException;
+
+    /**
+     * Says whether the object is still stored; objects are purged after a
+     * retention period.
+     */
+    boolean objectExists(String key);
+
+    /**
+     * @param key    reference carried in the message
+     * @param size   stored length in bytes
+     * @param sha256 hex SHA-256 of the stored bytes
+     */
+    record SpoolObject(String key, long size, String sha256) {
+    }
+}
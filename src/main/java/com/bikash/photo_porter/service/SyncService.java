@@ -0,0 +1,156 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.dto.GooglePhoto;
+import com.bikash.photo_porter.exception.TransferException;
+import com.bikash.photo_porter.model.JobPriority;
+import com.bikash.photo_porter.model.SyncState;
+import com.bikash.photo_porter.model.TransferJob;
+import com.bikash.photo_porter.model.TransferStatus;
+import com.bikash.photo_porter.model.User;
+import com.bikash.photo_porter.model.UserToken;
+import com.bikash.photo_porter.repository.SyncStateRepository;
+import com.bikash.photo_porter.repository.TransferJobRepository;
+import com.bikash.photo_porter.repository.UserRepository;
+import com.bikash.photo_porter.repository.UserTokenRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Runs incremental syncs between account pairs. A run searches the source
+ * library for media created after the pair's watermark and submits only that
+ * delta as a regular transfer job, so an unchanged library costs one search
+ * page per night instead of a full listing.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SyncService {
+
+    private final UserRepository userRepository;
+    private final UserTokenRepository userTokenRepository;
+    private final SyncStateRepository syncStateRepository;
+    private final TransferJobRepository transferJobRepository;
+    private final TokenRefreshService tokenRefreshService;
+    private final GooglePhotosClient googlePhotosClient;
+    private final TransferService transferService;
+
+    /**
+     * Registers (or re-enables) incremental sync for the account pair.
+     */
+    public SyncState enableSync(String sourceEmail, String targetEmail) {
+        User sourceUser = userRepository.findByEmail(sourceEmail).orElseThrow(() -> new TransferException("Source user not found: " + sourceEmail));
+        User targetUser = userRepository.findByEmail(targetEmail).orElseThrow(() -> new TransferException("Target user not found: " + targetEmail));
+
+        SyncState state = syncStateRepository.findBySourceUserIdAndTargetUserId(sourceUser.getId(), targetUser.getId())
+                .orElseGet(() -> {
+                    SyncState created = new SyncState();
+                    created.setSourceUser(sourceUser);
+                    created.setTargetUser(targetUser);
+                    return created;
+                });
+        state.setEnabled(true);
+        return syncStateRepository.save(state);
+    }
+
+    public void disableSync(Long syncId) {
+        SyncState state = syncStateRepository.findById(syncId)
+                .orElseThrow(() -> new TransferException("Sync not found with id: " + syncId));
+        state.setEnabled(false);
+        syncStateRepository.save(state);
+    }
+
+    @Scheduled(cron = "${photo.sync.cron:0 0 2 * * *}")
+    public void runScheduled() {
+        List<Long> ids = syncStateRepository.findEnabledIds();
+        log.info("Running scheduled sync for {} account pairs", ids.size());
+        for (Long id : ids) {
+            try {
+                runSync(id);
+            } catch (Exception e) {
+                log.error("Scheduled sync {} failed: {}", id, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Submits a job for media created after the watermark.
+     *
+     * @return the submitted job, or {@code null} when there was nothing new or
+     *         the previous run's job is still going
+     */
+    public TransferJob runSync(Long syncId) {
+        SyncState state = syncStateRepository.findWithUsersById(syncId)
+                .orElseThrow(() -> new TransferException("Sync not found with id: " + syncId));
+
+        if (state.getLastJobId() != null) {
+            TransferJob lastJob = transferJobRepository.findById(state.getLastJobId()).orElse(null);
+            TransferStatus lastStatus = lastJob != null ? lastJob.getStatus() : null;
+            if (lastStatus == TransferStatus.PENDING || lastStatus == TransferStatus.IN_PROGRESS) {
+                log.info("Sync {} skipped, job {} is still running", syncId, state.getLastJobId());
+                return null;
+            }
+            if (lastStatus == TransferStatus.SUCCESS) {
+                state.setWatermark(state.getPendingWatermark());
+            }
+            // On failure the watermark stays put; the dedupe index skips what did make it over
+            state.setPendingWatermark(null);
+            state.setLastJobId(null);
+        }
+
+        UserToken sourceToken = userTokenRepository.findByUserId(state.getSourceUser().getId())
+                .orElseThrow(() -> new TransferException("Source user token not found"));
+        String accessToken = tokenRefreshService.refreshTokenIfNeeded(sourceToken);
+
+        Instant watermark = state.getWatermark();
+        List<String> photoIds = new ArrayList<>();
+        Instant newest = watermark;
+        try (Stream<GooglePhoto> photos = googlePhotosClient.streamPhotosCreatedSince(accessToken, watermark)) {
+            for (GooglePhoto photo : (Iterable<GooglePhoto>) photos::iterator) {
+                Instant created = parseCreationTime(photo.creationTime());
+                if (watermark != null && (created == null || !created.isAfter(watermark))) {
+                    continue;
+                }
+                photoIds.add(photo.id());
+                if (created != null && (newest == null || created.isAfter(newest))) {
+                    newest = created;
+                }
+            }
+        }
+
+        state.setLastRunAt(LocalDateTime.now());
+        TransferJob job = null;
+        if (photoIds.isEmpty()) {
+            log.info("Sync {} found no media newer than {}", syncId, watermark);
+        } else {
+            // Background catch-up; interactive transfers go first
+            job = transferService.submitTransfer(state.getSourceUser().getEmail(),
+                    state.getTargetUser().getEmail(), photoIds, JobPriority.LOW);
+            state.setLastJobId(job.getId());
+            state.setPendingWatermark(newest);
+            log.info("Sync {} submitted job {} for {} new media items", syncId, job.getId(), photoIds.size());
+        }
+        syncStateRepository.save(state);
+        return job;
+    }
+
+    private static Instant parseCreationTime(String creationTime) {
+        if (creationTime == null) {
+            return null;
+        }
+        try {
+            return Instant.parse(creationTime);
+        } catch (DateTimeParseException e) {
+            log.warn("Unparseable creation time {}", creationTime);
+            return null;
+        }
+    }
+}
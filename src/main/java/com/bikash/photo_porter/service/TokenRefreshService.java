@@ -4,7 +4,6 @@ import com.bikash.photo_porter.model.UserToken;
 import com.bikash.photo_porter.repository.UserTokenRepository;
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
 import com.google.api.client.http.HttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
 import lombok.RequiredArgsConstructor;
@@ -13,7 +12,9 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 @Service
 @RequiredArgsConstructor
@@ -27,6 +28,8 @@ public class TokenRefreshService {
     private String clientSecret;
 
     private final UserTokenRepository userTokenRepository;
+    private final HttpTransport googleHttpTransport;
+    private final PhotosLibraryClientCache clientCache;
 
     public String refreshTokenIfNeeded(UserToken userToken) {
         if (isTokenExpired(userToken)) {
@@ -37,9 +40,16 @@ public class TokenRefreshService {
                 throw new RuntimeException("Token refresh failed", e);
             }
         }
+        // Lets the client cache drop this token's client when the token expires
+        clientCache.tokenExpiresAt(userToken.getAccessToken(), expiresAt(userToken));
         return userToken.getAccessToken();
     }
 
+    private static Instant expiresAt(UserToken userToken) {
+        return userToken.getIssuedAt().plusSeconds(userToken.getExpiresIn())
+                .atZone(ZoneId.systemDefault()).toInstant();
+    }
+
     private boolean isTokenExpired(UserToken userToken) {
         if (userToken.getExpiresIn() == null || userToken.getIssuedAt() == null) {
             return true;
@@ -50,11 +60,10 @@ public class TokenRefreshService {
     }
 
     private String refreshToken(UserToken userToken) throws IOException {
-        HttpTransport httpTransport = new NetHttpTransport();
         JsonFactory jsonFactory = GsonFactory.getDefaultInstance();
 
         GoogleCredential credential = new GoogleCredential.Builder()
-                .setTransport(httpTransport)
+                .setTransport(googleHttpTransport)
                 .setJsonFactory(jsonFactory)
                 .setClientSecrets(clientId, clientSecret)
                 .build()
@@ -65,10 +74,12 @@ public class TokenRefreshService {
             throw new RuntimeException("Failed to refresh token");
         }
 
+        clientCache.evict(userToken.getAccessToken());
         userToken.setAccessToken(credential.getAccessToken());
         userToken.setExpiresIn(credential.getExpiresInSeconds().intValue());
         userToken.setIssuedAt(LocalDateTime.now());
         userTokenRepository.save(userToken);
+        clientCache.tokenExpiresAt(userToken.getAccessToken(), expiresAt(userToken));
 
         log.info("Token refreshed successfully for user: {}", userToken.getUser().getEmail());
         return credential.getAccessToken();
@@ -0,0 +1,256 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.dto.GooglePhoto;
+import com.bikash.photo_porter.model.ErrorClass;
+import com.bikash.photo_porter.service.GooglePhotosClient.StreamedUpload;
+import com.google.api.client.http.HttpResponseException;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Moves photos through separately sized stages:
+ * <ol>
+ *     <li>resolve - look up source metadata (base URL, filename), unless the task
+ *     carries a base URL looked up within {@code photo.engine.media-max-age-seconds}</li>
+ *     <li>transfer - stream the download into an upload and obtain an upload token</li>
+ *     <li>commit - create the media item through {@link UploadTokenBatcher}</li>
+ *     <li>ledger - record the outcome through the caller's {@link TransferLedger}</li>
+ * </ol>
+ * Each stage has a bounded queue; a full queue blocks the stage feeding it, so
+ * a slow upload side throttles metadata resolution instead of piling up work.
+ * Tasks enter the pipeline through the {@link FairScheduler}, which holds a
+ * slot for each task until it leaves the transfer stage.
+ * Download and upload share one stage because the bytes are piped straight from
+ * one connection into the other without being buffered.
+ */
+@Component
+@Slf4j
+public class TransferEngine {
+
+    private final GooglePhotosClient googlePhotosClient;
+    private final MediaMetadataResolver metadataResolver;
+    private final UploadTokenBatcher uploadTokenBatcher;
+    private final FairScheduler scheduler;
+    private final SpoolStore spoolStore;
+
+    private final Duration mediaMaxAge;
+
+    private final PipelineStage resolveStage;
+    private final PipelineStage transferStage;
+    private final PipelineStage ledgerStage;
+
+    public TransferEngine(GooglePhotosClient googlePhotosClient,
+                          MediaMetadataResolver metadataResolver,
+                          UploadTokenBatcher uploadTokenBatcher,
+                          FairScheduler scheduler,
+                          SpoolStore spoolStore,
+                          MeterRegistry registry,
+                          @Value("${photo.engine.resolve.concurrency:4}") int resolveConcurrency,
+                          @Value("${photo.engine.transfer.concurrency:8}") int transferConcurrency,
+                          @Value("${photo.engine.ledger.concurrency:2}") int ledgerConcurrency,
+                          @Value("${photo.engine.queue-capacity:100}") int queueCapacity,
+                          @Value("${photo.engine.media-max-age-seconds:1800}") long mediaMaxAgeSeconds) {
+        this.googlePhotosClient = googlePhotosClient;
+        this.metadataResolver = metadataResolver;
+        this.uploadTokenBatcher = uploadTokenBatcher;
+        this.scheduler = scheduler;
+        this.spoolStore = spoolStore;
+        this.mediaMaxAge = Duration.ofSeconds(mediaMaxAgeSeconds);
+        this.resolveStage = new PipelineStage("resolve", resolveConcurrency, queueCapacity, registry);
+        this.transferStage = new PipelineStage("transfer", transferConcurrency, queueCapacity, registry);
+        this.ledgerStage = new PipelineStage("ledger", ledgerConcurrency, queueCapacity, registry);
+    }
+
+    /**
+     * Queues the tasks with the scheduler under their flow. Blocks while the
+     * job's backlog in the scheduler is full and returns a future that completes
+     * once every task has been recorded.
+     */
+    public CompletableFuture<Void> submit(List<TransferTask> tasks, TransferLedger ledger) {
+        CompletableFuture<?>[] done = new CompletableFuture<?>[tasks.size()];
+        for (int i = 0; i < tasks.size(); i++) {
+            TransferTask task = tasks.get(i);
+            CompletableFuture<Void> completion = new CompletableFuture<>();
+            done[i] = completion;
+            FairScheduler.Flow flow = task.getFlow() != null ? task.getFlow()
+                    : new FairScheduler.Flow(null, task.getAccountKey(), null, 1);
+            scheduler.submit(flow, release -> resolveStage.execute(() -> resolve(task, ledger, completion, release)));
+        }
+        return CompletableFuture.allOf(done);
+    }
+
+    private void resolve(TransferTask task, TransferLedger ledger, CompletableFuture<Void> completion,
+                         Runnable release) {
+        try {
+            // Runs after admission, so time spent queued in the scheduler cannot expire the base URL
+            if (task.getPayload() == null && task.getContent() == null && !hasFreshMedia(task)) {
+                GooglePhoto media = metadataResolver.resolve(task.getSourceAccessToken(), task.getPhotoId(),
+                        mediaMaxAge);
+                if (media == null) {
+                    release.run();
+                    fail(task, ledger, completion, ErrorClass.CLIENT, "Photo not found: " + task.getPhotoId());
+                    return;
+                }
+                task.setMedia(media);
+                task.setMediaResolvedAt(Instant.now());
+            }
+            if (task.getFileName() == null) {
+                String filename = task.getMedia() != null ? task.getMedia().filename() : null;
+                task.setFileName(filename != null ? filename : "photo_" + task.getPhotoId() + ".jpg");
+            }
+            transferStage.execute(() -> transfer(task, ledger, completion, release));
+        } catch (Exception e) {
+            log.error("Failed to resolve photo {}: {}", task.getPhotoId(), e.getMessage(), e);
+            release.run();
+            fail(task, ledger, completion, RetryPolicy.classify(e), e.getMessage());
+        }
+    }
+
+    private void transfer(TransferTask task, TransferLedger ledger, CompletableFuture<Void> completion,
+                          Runnable release) {
+        try {
+            transfer(task, ledger, completion);
+        } finally {
+            // The commit waits on the batcher, not a worker, so the slot can go to the next photo
+            release.run();
+        }
+    }
+
+    private void transfer(TransferTask task, TransferLedger ledger, CompletableFuture<Void> completion) {
+        try {
+            if (task.getPayload() != null) {
+                task.setUploadToken(googlePhotosClient.uploadRaw(task.getTargetAccessToken(),
+                        task.getPayload(), task.getFileName()));
+                task.setBytes(task.getPayload().length);
+                task.setContentHash(sha256(task.getPayload()));
+            } else if (task.getContent() != null) {
+                SpoolStore.SpoolObject spooled = task.getContent();
+                StreamedUpload upload;
+                try (InputStream in = spoolStore.getObject(spooled.key())) {
+                    upload = googlePhotosClient.uploadStream(task.getTargetAccessToken(), in, spooled.size(),
+                            task.getFileName());
+                }
+                if (spooled.sha256() != null && !spooled.sha256().equals(upload.contentHash())) {
+                    fail(task, ledger, completion, ErrorClass.CLIENT, "Spooled content of photo "
+                            + task.getPhotoId() + " does not match its checksum");
+                    return;
+                }
+                task.setUploadToken(upload.uploadToken());
+                task.setBytes(upload.bytes());
+                task.setContentHash(upload.contentHash());
+            } else {
+                StreamedUpload upload = streamFromSource(task);
+                task.setUploadToken(upload.uploadToken());
+                task.setBytes(upload.bytes());
+                task.setContentHash(upload.contentHash());
+            }
+            if (task.getBytes() == 0) {
+                fail(task, ledger, completion, ErrorClass.NETWORK, "Failed to download photo: " + task.getPhotoId());
+                return;
+            }
+            commit(task, ledger, completion);
+        } catch (Exception e) {
+            log.error("Failed to transfer photo {}: {}", task.getPhotoId(), e.getMessage(), e);
+            fail(task, ledger, completion, RetryPolicy.classify(e), e.getMessage());
+        }
+    }
+
+    private boolean hasFreshMedia(TransferTask task) {
+        return task.getMedia() != null && task.getMediaResolvedAt() != null
+                && task.getMediaResolvedAt().isAfter(Instant.now().minus(mediaMaxAge));
+    }
+
+    /**
+     * Streams from the task's base URL. A 403 usually means the URL expired
+     * before it was used, so it is looked up afresh and the stream tried once
+     * more; a 403 from the upload side costs one extra lookup.
+     */
+    private StreamedUpload streamFromSource(TransferTask task) {
+        try {
+            return googlePhotosClient.streamUpload(task.getMedia().baseUrl(), task.getTargetAccessToken(),
+                    task.getFileName(), task.getSessionKey());
+        } catch (RuntimeException e) {
+            if (!isForbidden(e)) {
+                throw e;
+            }
+            GooglePhoto media = metadataResolver.resolve(task.getSourceAccessToken(), task.getPhotoId(),
+                    Duration.ZERO);
+            if (media == null) {
+                throw e;
+            }
+            log.info("Base URL of photo {} was refused, retrying with a fresh one", task.getPhotoId());
+            task.setMedia(media);
+            task.setMediaResolvedAt(Instant.now());
+            return googlePhotosClient.streamUpload(media.baseUrl(), task.getTargetAccessToken(),
+                    task.getFileName(), task.getSessionKey());
+        }
+    }
+
+    private static boolean isForbidden(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof HttpResponseException http && http.getStatusCode() == 403) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void commit(TransferTask task, TransferLedger ledger, CompletableFuture<Void> completion) {
+        uploadTokenBatcher.submit(task.getAccountKey(), task.getTargetAccessToken(),
+                        task.getUploadToken(), task.getFileName(), task.getTargetAlbumId())
+                .whenComplete((result, error) -> {
+                    if (error == null && UploadTokenBatcher.isSuccess(result)) {
+                        if (result.getMediaItem() != null) {
+                            task.setTargetMediaItemId(result.getMediaItem().getId());
+                        }
+                        ledgerStage.execute(() -> record(completion, () -> ledger.onSuccess(task)));
+                    } else if (error != null) {
+                        fail(task, ledger, completion, RetryPolicy.classify(error), error.getMessage());
+                    } else if (result == null) {
+                        fail(task, ledger, completion, ErrorClass.UNKNOWN, "No result returned for upload");
+                    } else {
+                        fail(task, ledger, completion, RetryPolicy.classify(result.getStatus()),
+                                result.getStatus().getMessage());
+                    }
+                });
+    }
+
+    private void fail(TransferTask task, TransferLedger ledger, CompletableFuture<Void> completion,
+                      ErrorClass errorClass, String message) {
+        task.setErrorClass(errorClass);
+        ledgerStage.execute(() -> record(completion, () -> ledger.onFailure(task, message)));
+    }
+
+    private void record(CompletableFuture<Void> completion, Runnable entry) {
+        try {
+            entry.run();
+            completion.complete(null);
+        } catch (Exception e) {
+            log.error("Failed to record transfer outcome", e);
+            completion.completeExceptionally(e);
+        }
+    }
+
+    private static String sha256(byte[] bytes) throws NoSuchAlgorithmException {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        resolveStage.shutdown();
+        transferStage.shutdown();
+        ledgerStage.shutdown();
+    }
+}
@@ -0,0 +1,515 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.dto.GoogleAlbum;
+import com.bikash.photo_porter.dto.GooglePhoto;
+import com.bikash.photo_porter.exception.TransferException;
+import com.bikash.photo_porter.model.PhotoTransfer;
+import com.bikash.photo_porter.model.TransferJob;
+import com.bikash.photo_porter.model.TransferStatus;
+import com.bikash.photo_porter.model.User;
+import com.bikash.photo_porter.model.UserToken;
+import com.bikash.photo_porter.repository.PhotoTransferRepository;
+import com.bikash.photo_porter.repository.TransferJobRepository;
+import com.bikash.photo_porter.repository.UserTokenRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Runs submitted transfer jobs on its own threads so request threads never wait
+ * on token refreshes, downloads or uploads.
+ * <p>
+ * Each running job gets a thread of its own rather than a slot in a fixed pool.
+ * A runner spends most of its life parked in {@link FairScheduler#submit} while
+ * its job's backlog is full, and with a fixed pool a few large jobs parked that
+ * way would keep a newly submitted small job from even reaching the scheduler.
+ * How fast jobs actually move is decided by the scheduler and the engine.
+ */
+@Component
+@Slf4j
+public class TransferJobRunner {
+
+    private static final int STATUS_UPDATE_CHUNK = 1000;
+    private static final int ALBUM_ADD_MAX = 50;
+
+    private final TransferJobRepository transferJobRepository;
+    private final PhotoTransferRepository photoTransferRepository;
+    private final UserTokenRepository userTokenRepository;
+    private final TokenRefreshService tokenRefreshService;
+    private final TransferEngine transferEngine;
+    private final JobProgressTracker progressTracker;
+    private final TransferOutcomeWriter outcomeWriter;
+    private final MigrationIndex migrationIndex;
+    private final GooglePhotosClient googlePhotosClient;
+    private final MediaMetadataResolver metadataResolver;
+    private final RetryPolicy retryPolicy;
+    private final int outcomeBatchSize;
+    private final int albumChunkSize;
+    private final int pendingPageSize;
+    private final long leaseMs;
+    private final String instanceId;
+    private final ExecutorService executor;
+    private final Set<Long> running = ConcurrentHashMap.newKeySet();
+    private final Set<Long> rerunRequested = ConcurrentHashMap.newKeySet();
+
+    public TransferJobRunner(TransferJobRepository transferJobRepository,
+                             PhotoTransferRepository photoTransferRepository,
+                             UserTokenRepository userTokenRepository,
+                             TokenRefreshService tokenRefreshService,
+                             TransferEngine transferEngine,
+                             JobProgressTracker progressTracker,
+                             TransferOutcomeWriter outcomeWriter,
+                             MigrationIndex migrationIndex,
+                             GooglePhotosClient googlePhotosClient,
+                             MediaMetadataResolver metadataResolver,
+                             RetryPolicy retryPolicy,
+                             @Value("${photo.transfer.job.outcome-batch-size:50}") int outcomeBatchSize,
+                             @Value("${photo.google.media-page-size:100}") int albumChunkSize,
+                             @Value("${photo.transfer.job.page-size:1000}") int pendingPageSize,
+                             @Value("${photo.transfer.job.lease-ms:30000}") long leaseMs,
+                             @Value("${photo.instance-id:${HOSTNAME:local}}") String instanceId) {
+        this.transferJobRepository = transferJobRepository;
+        this.photoTransferRepository = photoTransferRepository;
+        this.userTokenRepository = userTokenRepository;
+        this.tokenRefreshService = tokenRefreshService;
+        this.transferEngine = transferEngine;
+        this.progressTracker = progressTracker;
+        this.outcomeWriter = outcomeWriter;
+        this.migrationIndex = migrationIndex;
+        this.googlePhotosClient = googlePhotosClient;
+        this.metadataResolver = metadataResolver;
+        this.retryPolicy = retryPolicy;
+        this.outcomeBatchSize = outcomeBatchSize;
+        this.albumChunkSize = albumChunkSize;
+        this.pendingPageSize = pendingPageSize;
+        this.leaseMs = leaseMs;
+        this.instanceId = instanceId;
+        this.executor = Executors.newCachedThreadPool(new CustomizableThreadFactory("transfer-job-"));
+    }
+
+    /**
+     * Queues the job's pending photos for processing and returns immediately. A
+     * job that is already running is run once more after it finishes, so rows
+     * made pending in the meantime are picked up without two runs overlapping.
+     */
+    public void dispatch(Long jobId) {
+        if (!running.add(jobId)) {
+            rerunRequested.add(jobId);
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                do {
+                    rerunRequested.remove(jobId);
+                    run(jobId);
+                } while (rerunRequested.remove(jobId));
+            } catch (Exception e) {
+                log.error("Transfer job {} failed: {}", jobId, e.getMessage(), e);
+                markJobFailed(jobId, e.getMessage());
+            } finally {
+                running.remove(jobId);
+            }
+            // A dispatch that slipped in between the last check and the removal above
+            if (rerunRequested.remove(jobId)) {
+                dispatch(jobId);
+            }
+        });
+    }
+
+    /**
+     * Extends the leases of the jobs running here. A job whose runner stops
+     * heartbeating becomes claimable by {@link JobRecovery} once its lease expires.
+     */
+    @Scheduled(fixedDelayString = "${photo.transfer.job.heartbeat-ms:10000}")
+    public void heartbeat() {
+        if (running.isEmpty()) {
+            return;
+        }
+        transferJobRepository.renewLeases(new ArrayList<>(running), instanceId,
+                LocalDateTime.now().plusNanos(leaseMs * 1_000_000));
+    }
+
+    public boolean isRunning(Long jobId) {
+        return running.contains(jobId);
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    void run(Long jobId) {
+        TransferJob job = transferJobRepository.findWithUsersById(jobId)
+                .orElseThrow(() -> new TransferException("Transfer job not found: " + jobId));
+
+        LocalDateTime now = LocalDateTime.now();
+        if (transferJobRepository.acquireLease(jobId, instanceId, now, now.plusNanos(leaseMs * 1_000_000)) == 0) {
+            log.info("Transfer job {} is leased by another instance, not running it here", jobId);
+            return;
+        }
+        try {
+            runLeased(job);
+        } finally {
+            transferJobRepository.releaseLease(jobId, instanceId);
+        }
+    }
+
+    private void runLeased(TransferJob job) {
+        Long jobId = job.getId();
+        // No other run of this job is live while we hold the lease, so anything
+        // still in flight was abandoned by a runner that died
+        int requeued = photoTransferRepository.requeueInProgress(jobId);
+        if (requeued > 0) {
+            log.info("Transfer job {}: requeued {} photos left in flight by an earlier run", jobId, requeued);
+            progressTracker.transition(jobId, TransferStatus.IN_PROGRESS, TransferStatus.PENDING, requeued, 0);
+        }
+
+        job.setStatus(TransferStatus.IN_PROGRESS);
+        job.setStartedAt(LocalDateTime.now());
+        job.setCompletedAt(null);
+        transferJobRepository.save(job);
+
+        UserToken sourceToken = userTokenRepository.findByUserId(job.getSourceUser().getId())
+                .orElseThrow(() -> new TransferException("Source user token not found"));
+        UserToken targetToken = userTokenRepository.findByUserId(job.getTargetUser().getId())
+                .orElseThrow(() -> new TransferException("Target user token not found"));
+        JobRun run = new JobRun(job,
+                tokenRefreshService.refreshTokenIfNeeded(sourceToken),
+                tokenRefreshService.refreshTokenIfNeeded(targetToken));
+
+        if (job.getSourceAlbumId() != null && !Boolean.TRUE.equals(job.getAlbumListed())) {
+            mirrorAlbum(run);
+            // Listed rows skipped as already migrated are still PENDING until
+            // their outcomes are written; the drain below must not pick them up
+            run.outcomes.flush();
+        }
+        drainPending(run);
+        run.outcomes.flush();
+        progressTracker.flush(jobId);
+
+        long retrying = photoTransferRepository.countByJobIdAndStatus(jobId, TransferStatus.RETRY_PENDING);
+        if (retrying > 0) {
+            // RetryScheduler dispatches the job again once the backoff runs out
+            transferJobRepository.save(job);
+            log.info("Transfer job {} waiting on {} retries", jobId, retrying);
+            return;
+        }
+        boolean failed = run.anyFailed.get()
+                || photoTransferRepository.countByJobIdAndStatus(jobId, TransferStatus.FAILED) > 0;
+        job.setStatus(failed ? TransferStatus.FAILED : TransferStatus.SUCCESS);
+        job.setCompletedAt(LocalDateTime.now());
+        transferJobRepository.save(job);
+        log.info("Transfer job {} finished with status {}", jobId, job.getStatus());
+    }
+
+    /**
+     * Submits the job's pending rows one keyset page at a time, so a large job
+     * is never loaded whole and each page is marked in flight as it is handed
+     * to the engine.
+     */
+    private void drainPending(JobRun run) {
+        Long jobId = run.job.getId();
+        List<CompletableFuture<Void>> pages = new ArrayList<>();
+        long afterId = 0;
+        int total = 0;
+        List<PhotoTransfer> page;
+        do {
+            page = photoTransferRepository.findByJobIdAndStatusAfter(jobId, TransferStatus.PENDING, afterId,
+                    PageRequest.of(0, pendingPageSize));
+            if (page.isEmpty()) {
+                break;
+            }
+            afterId = page.get(page.size() - 1).getId();
+            total += page.size();
+            pages.add(submitRows(run, page, Map.of()));
+        } while (page.size() == pendingPageSize);
+        CompletableFuture.allOf(pages.toArray(new CompletableFuture<?>[0])).join();
+        if (total > 0) {
+            log.info("Ran transfer job {}: {} photos from {} to {}", jobId, total,
+                    run.job.getSourceUser().getEmail(), run.job.getTargetUser().getEmail());
+        }
+    }
+
+    /**
+     * Walks the source album page by page, creating photo rows and feeding them
+     * to the engine one chunk at a time. The engine's bounded queues block this
+     * loop when uploads fall behind, so the album is never held in memory.
+     */
+    private void mirrorAlbum(JobRun run) {
+        TransferJob job = run.job;
+        Set<String> listedBefore;
+        if (job.getTargetAlbumId() == null) {
+            GoogleAlbum source = googlePhotosClient.getAlbumDetails(run.sourceAccessToken, job.getSourceAlbumId());
+            try {
+                job.setTargetAlbumId(googlePhotosClient.createAlbum(run.targetAccessToken, source.title()));
+            } catch (IOException e) {
+                throw new TransferException("Failed to create target album: " + e.getMessage());
+            }
+            if (source.mediaItemsCount() != null) {
+                job.setTotalPhotos(source.mediaItemsCount().intValue());
+            }
+            transferJobRepository.save(job);
+            listedBefore = Set.of();
+        } else {
+            // Listing was interrupted; rows created before that are drained as pending afterwards
+            listedBefore = new HashSet<>(photoTransferRepository.findPhotoIdsByJobId(job.getId()));
+        }
+        log.info("Mirroring album {} into {} for job {}", job.getSourceAlbumId(), job.getTargetAlbumId(), job.getId());
+
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        int listed = 0;
+        try (Stream<GooglePhoto> photos = googlePhotosClient.streamPhotosInAlbum(run.sourceAccessToken,
+                job.getSourceAlbumId())) {
+            Iterator<GooglePhoto> it = photos.iterator();
+            Map<String, GooglePhoto> chunk = new LinkedHashMap<>();
+            while (it.hasNext()) {
+                GooglePhoto photo = it.next();
+                listed++;
+                if (listedBefore.contains(photo.id())) {
+                    continue;
+                }
+                chunk.put(photo.id(), photo);
+                if (chunk.size() == albumChunkSize) {
+                    chunks.add(submitRows(run, createRows(job, chunk.keySet()), chunk));
+                    chunk = new LinkedHashMap<>();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                chunks.add(submitRows(run, createRows(job, chunk.keySet()), chunk));
+            }
+        }
+        CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).join();
+
+        job.setTotalPhotos(listed);
+        job.setAlbumListed(true);
+    }
+
+    private List<PhotoTransfer> createRows(TransferJob job, Set<String> photoIds) {
+        List<PhotoTransfer> rows = new ArrayList<>(photoIds.size());
+        for (String photoId : photoIds) {
+            PhotoTransfer pt = new PhotoTransfer();
+            pt.setJob(job);
+            pt.setSourceUser(job.getSourceUser());
+            pt.setTargetUser(job.getTargetUser());
+            pt.setPhotoId(photoId);
+            pt.setStatus(TransferStatus.PENDING);
+            rows.add(pt);
+        }
+        rows = photoTransferRepository.saveAll(rows);
+        progressTracker.transition(job.getId(), null, TransferStatus.PENDING, rows.size(), 0);
+        return rows;
+    }
+
+    /**
+     * Skips rows already migrated and hands the rest to the engine. Returns a
+     * future that completes once every submitted row has been recorded.
+     * Metadata of rows not listed from an album is looked up here in batches to
+     * warm the resolver's cache. The base URL itself is taken in the engine's
+     * resolve stage once the photo is admitted, so a photo that waits long in
+     * the scheduler does not start with an expired URL.
+     */
+    private CompletableFuture<Void> submitRows(JobRun run, List<PhotoTransfer> rows, Map<String, GooglePhoto> media) {
+        TransferJob job = run.job;
+        Long jobId = job.getId();
+        User sourceUser = job.getSourceUser();
+        User targetUser = job.getTargetUser();
+
+        Set<String> migrated = migrationIndex.alreadyMigrated(sourceUser.getId(), targetUser.getId(),
+                rows.stream().map(PhotoTransfer::getPhotoId).toList());
+
+        prefetchMetadata(run, rows, migrated, media);
+        Instant listedAt = Instant.now();
+
+        FairScheduler.Flow flow = new FairScheduler.Flow(job.getPriority(), String.valueOf(sourceUser.getId()),
+                jobId, job.getWeight() != null ? job.getWeight() : 1);
+        List<TransferTask> tasks = new ArrayList<>(rows.size());
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (PhotoTransfer pt : rows) {
+            if (migrated.contains(pt.getPhotoId())) {
+                run.outcomes.add(TransferOutcomeWriter.Outcome.skipped(pt.getId()));
+                continue;
+            }
+            ids.add(pt.getId());
+
+            TransferTask task = new TransferTask();
+            task.setRecordId(pt.getId());
+            task.setPhotoId(pt.getPhotoId());
+            GooglePhoto listed = media.get(pt.getPhotoId());
+            if (listed != null) {
+                task.setMedia(listed);
+                task.setMediaResolvedAt(listedAt);
+            }
+            task.setSourceAccessToken(run.sourceAccessToken);
+            task.setTargetAccessToken(run.targetAccessToken);
+            task.setAccountKey(String.valueOf(targetUser.getId()));
+            task.setSessionKey(uploadSessionKey(sourceUser, targetUser, pt.getPhotoId()));
+            task.setTargetAlbumId(job.getTargetAlbumId());
+            task.setAttempts(pt.getAttempts() != null ? pt.getAttempts() : 0);
+            task.setFlow(flow);
+            tasks.add(task);
+        }
+        for (int i = 0; i < ids.size(); i += STATUS_UPDATE_CHUNK) {
+            photoTransferRepository.updateStatus(ids.subList(i, Math.min(ids.size(), i + STATUS_UPDATE_CHUNK)),
+                    TransferStatus.IN_PROGRESS);
+        }
+        progressTracker.transition(jobId, TransferStatus.PENDING, TransferStatus.IN_PROGRESS, tasks.size(), 0);
+        if (!migrated.isEmpty()) {
+            log.info("Job {}: skipping {} photos already in the target library", jobId, migrated.size());
+            progressTracker.transition(jobId, TransferStatus.PENDING, TransferStatus.SKIPPED, rows.size() - tasks.size(), 0);
+            if (job.getTargetAlbumId() != null) {
+                attachExisting(run, migrated);
+            }
+        }
+
+        return transferEngine.submit(tasks, new TransferLedger() {
+            @Override
+            public void onSuccess(TransferTask task) {
+                run.outcomes.add(TransferOutcomeWriter.Outcome.success(task));
+                progressTracker.transition(jobId, TransferStatus.IN_PROGRESS, TransferStatus.SUCCESS, 1, task.getBytes());
+                log.info("Successfully transferred photo {} (ID: {})", task.getFileName(), task.getPhotoId());
+            }
+
+            @Override
+            public void onFailure(TransferTask task, String errorMessage) {
+                LocalDateTime retryAt = retryPolicy.nextAttemptAt(task.getErrorClass(), task.getAttempts() + 1);
+                if (retryAt != null) {
+                    log.warn("Transfer of photo {} failed ({}), retrying at {}: {}", task.getPhotoId(),
+                            task.getErrorClass(), retryAt, errorMessage);
+                    run.outcomes.add(TransferOutcomeWriter.Outcome.retry(task, errorMessage, retryAt));
+                    progressTracker.transition(jobId, TransferStatus.IN_PROGRESS, TransferStatus.RETRY_PENDING);
+                    return;
+                }
+                log.error("Failed to transfer photo {}: {}", task.getPhotoId(), errorMessage);
+                run.anyFailed.set(true);
+                run.outcomes.add(TransferOutcomeWriter.Outcome.failure(task, errorMessage));
+                progressTracker.transition(jobId, TransferStatus.IN_PROGRESS, TransferStatus.FAILED);
+            }
+        });
+    }
+
+    private void prefetchMetadata(JobRun run, List<PhotoTransfer> rows, Set<String> migrated,
+                                  Map<String, GooglePhoto> media) {
+        List<String> missing = rows.stream()
+                .map(PhotoTransfer::getPhotoId)
+                .filter(id -> !migrated.contains(id) && !media.containsKey(id))
+                .toList();
+        if (missing.isEmpty()) {
+            return;
+        }
+        try {
+            metadataResolver.resolveAll(run.sourceAccessToken, missing);
+        } catch (IOException e) {
+            // The engine resolves whatever is left one photo at a time
+            log.warn("Job {}: batch metadata lookup failed for {} photos: {}", run.job.getId(),
+                    missing.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Adds photos an earlier job already uploaded to this job's target album, so
+     * the mirrored album is complete even when its items were skipped.
+     */
+    private void attachExisting(JobRun run, Set<String> photoIds) {
+        TransferJob job = run.job;
+        List<String> mediaItemIds = migrationIndex.targetMediaItemIds(job.getSourceUser().getId(),
+                job.getTargetUser().getId(), photoIds);
+        for (int i = 0; i < mediaItemIds.size(); i += ALBUM_ADD_MAX) {
+            try {
+                googlePhotosClient.addToAlbum(run.targetAccessToken, job.getTargetAlbumId(),
+                        mediaItemIds.subList(i, Math.min(mediaItemIds.size(), i + ALBUM_ADD_MAX)));
+            } catch (IOException e) {
+                log.warn("Failed to add existing items to album {}: {}", job.getTargetAlbumId(), e.getMessage());
+            }
+        }
+    }
+
+    private void markJobFailed(Long jobId, String errorMessage) {
+        try {
+            transferJobRepository.findById(jobId).ifPresent(job -> {
+                job.setStatus(TransferStatus.FAILED);
+                job.setErrorMessage(errorMessage);
+                job.setCompletedAt(LocalDateTime.now());
+                transferJobRepository.save(job);
+            });
+        } catch (Exception e) {
+            log.error("Failed to record failure of transfer job {}", jobId, e);
+        }
+    }
+
+    /**
+     * State shared by every chunk of one job run.
+     */
+    private class JobRun {
+        private final TransferJob job;
+        private final String sourceAccessToken;
+        private final String targetAccessToken;
+        private final OutcomeBuffer outcomes = new OutcomeBuffer();
+        private final AtomicBoolean anyFailed = new AtomicBoolean();
+
+        JobRun(TransferJob job, String sourceAccessToken, String targetAccessToken) {
+            this.job = job;
+            this.sourceAccessToken = sourceAccessToken;
+            this.targetAccessToken = targetAccessToken;
+        }
+    }
+
+    /**
+     * Collects outcomes from the ledger threads and writes them in groups of
+     * {@code photo.transfer.job.outcome-batch-size} rows.
+     */
+    private class OutcomeBuffer {
+        private final List<TransferOutcomeWriter.Outcome> buffered = new ArrayList<>();
+
+        void add(TransferOutcomeWriter.Outcome outcome) {
+            List<TransferOutcomeWriter.Outcome> full = null;
+            synchronized (this) {
+                buffered.add(outcome);
+                if (buffered.size() >= outcomeBatchSize) {
+                    full = new ArrayList<>(buffered);
+                    buffered.clear();
+                }
+            }
+            if (full != null) {
+                outcomeWriter.apply(full);
+            }
+        }
+
+        void flush() {
+            List<TransferOutcomeWriter.Outcome> rest;
+            synchronized (this) {
+                rest = new ArrayList<>(buffered);
+                buffered.clear();
+            }
+            outcomeWriter.apply(rest);
+        }
+    }
+
+    static String uploadSessionKey(User sourceUser, User targetUser, String photoId) {
+        return sourceUser.getId() + ":" + targetUser.getId() + ":" + photoId;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,12 @@
+package com.bikash.photo_porter.service;
+
+/**
+ * Records the outcome of each {@link TransferTask}. Called on the engine's ledger
+ * stage, never on a transfer worker.
+ */
+public interface TransferLedger {
+
+    void onSuccess(TransferTask task);
+
+    void onFailure(TransferTask task, String errorMessage);
+}
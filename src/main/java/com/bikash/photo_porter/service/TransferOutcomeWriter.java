@@ -0,0 +1,120 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.model.ErrorClass;
+import com.bikash.photo_porter.model.MigratedMedia;
+import com.bikash.photo_porter.model.PhotoTransfer;
+import com.bikash.photo_porter.model.Transfer;
+import com.bikash.photo_porter.model.TransferStatus;
+import com.bikash.photo_porter.repository.PhotoTransferRepository;
+import com.bikash.photo_porter.repository.TransferRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Applies photo outcomes in groups: the rows are loaded with one query, updated
+ * in the persistence context and flushed at commit, which Hibernate sends as
+ * JDBC batches of {@code hibernate.jdbc.batch_size} updates. Successful photos
+ * are added to the {@link MigrationIndex}, which writes them in a transaction
+ * of its own so a duplicate index row cannot roll back the status updates.
+ * Job photos are {@link PhotoTransfer} rows; photos consumed from Kafka are
+ * {@link Transfer} rows.
+ */
+@Service
+@RequiredArgsConstructor
+public class TransferOutcomeWriter {
+
+    public record Outcome(Long recordId, TransferStatus status, Long bytes, String contentHash,
+                          String targetMediaItemId, String errorMessage, ErrorClass errorClass,
+                          LocalDateTime nextAttemptAt, LocalDateTime completedAt) {
+
+        public static Outcome success(TransferTask task) {
+            return new Outcome(task.getRecordId(), TransferStatus.SUCCESS, task.getBytes(), task.getContentHash(),
+                    task.getTargetMediaItemId(), null, null, null, LocalDateTime.now());
+        }
+
+        public static Outcome failure(TransferTask task, String errorMessage) {
+            return new Outcome(task.getRecordId(), TransferStatus.FAILED, null, null, null, errorMessage,
+                    task.getErrorClass(), null, LocalDateTime.now());
+        }
+
+        public static Outcome retry(TransferTask task, String errorMessage, LocalDateTime nextAttemptAt) {
+            return new Outcome(task.getRecordId(), TransferStatus.RETRY_PENDING, null, null, null, errorMessage,
+                    task.getErrorClass(), nextAttemptAt, null);
+        }
+
+        public static Outcome skipped(Long recordId) {
+            return new Outcome(recordId, TransferStatus.SKIPPED, null, null, null, null, null, null,
+                    LocalDateTime.now());
+        }
+
+        boolean isFailedAttempt() {
+            return status == TransferStatus.FAILED || status == TransferStatus.RETRY_PENDING;
+        }
+    }
+
+    private final PhotoTransferRepository photoTransferRepository;
+    private final TransferRepository transferRepository;
+    private final MigrationIndex migrationIndex;
+
+    @Transactional
+    public void apply(List<Outcome> outcomes) {
+        if (outcomes.isEmpty()) {
+            return;
+        }
+        Map<Long, Outcome> byId = outcomes.stream()
+                .collect(Collectors.toMap(Outcome::recordId, Function.identity(), (a, b) -> b));
+        List<MigratedMedia> migrated = new ArrayList<>();
+        for (PhotoTransfer pt : photoTransferRepository.findAllById(byId.keySet())) {
+            Outcome outcome = byId.get(pt.getId());
+            pt.setStatus(outcome.status());
+            pt.setBytesTransferred(outcome.bytes());
+            pt.setErrorMessage(outcome.errorMessage());
+            pt.setCompletedAt(outcome.completedAt());
+            pt.setNextAttemptAt(outcome.nextAttemptAt());
+            if (outcome.isFailedAttempt()) {
+                pt.setAttempts(pt.getAttempts() == null ? 1 : pt.getAttempts() + 1);
+                pt.setErrorClass(outcome.errorClass());
+            }
+            if (outcome.status() == TransferStatus.SUCCESS) {
+                migrated.add(new MigratedMedia(null, pt.getSourceUser().getId(), pt.getTargetUser().getId(),
+                        pt.getPhotoId(), outcome.targetMediaItemId(), outcome.contentHash(), outcome.bytes(),
+                        outcome.completedAt()));
+            }
+        }
+        recordMigrated(migrated);
+    }
+
+    @Transactional
+    public void applyTransfers(List<Outcome> outcomes) {
+        if (outcomes.isEmpty()) {
+            return;
+        }
+        Map<Long, Outcome> byId = outcomes.stream()
+                .collect(Collectors.toMap(Outcome::recordId, Function.identity(), (a, b) -> b));
+        List<MigratedMedia> migrated = new ArrayList<>();
+        for (Transfer transfer : transferRepository.findAllById(byId.keySet())) {
+            Outcome outcome = byId.get(transfer.getId());
+            transfer.setStatus(outcome.status().name());
+            transfer.setErrorMessage(outcome.errorMessage());
+            transfer.setCompletedAt(outcome.completedAt());
+            if (outcome.status() == TransferStatus.SUCCESS) {
+                migrated.add(new MigratedMedia(null, transfer.getSourceUserId(), transfer.getTargetUserId(),
+                        transfer.getPhotoId(), outcome.targetMediaItemId(), outcome.contentHash(), outcome.bytes(),
+                        outcome.completedAt()));
+            }
+        }
+        recordMigrated(migrated);
+    }
+
+    private void recordMigrated(List<MigratedMedia> migrated) {
+        migrationIndex.recordAll(migrated);
+    }
+}
@@ -0,0 +1,154 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.dto.TransferMessage;
+import com.bikash.photo_porter.model.ErrorClass;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Moves failed transfer messages off the main topic so a bad photo never
+ * blocks its partition. Retryable failures go to one of three delay tiers
+ * ({@code photo.kafka.retry.delays}, 30s/5m/1h by default), one tier further
+ * per attempt; rate limits skip the first tier. Auth and client errors, and
+ * anything that has been through every tier, go to the dead-letter topic with
+ * the failure recorded in headers.
+ */
+@Component
+@Slf4j
+public class TransferRetryRouter {
+
+    public static final int TIERS = 3;
+
+    public static final String ATTEMPTS = "photo-attempts";
+    public static final String TRANSFER_ID = "photo-transfer-id";
+    public static final String ERROR_CLASS = "photo-error-class";
+    public static final String ERROR_MESSAGE = "photo-error-message";
+    public static final String FAILED_AT = "photo-failed-at";
+    public static final String DUE_AT = "photo-due-at";
+    public static final String ORIGINAL_TOPIC = "photo-original-topic";
+
+    public enum Route { RETRY, DEAD_LETTER }
+
+    private final PhotoTransferProducer producer;
+    private final MeterRegistry registry;
+    private final String topic;
+    private final List<Duration> delays;
+
+    public TransferRetryRouter(PhotoTransferProducer producer,
+                               MeterRegistry registry,
+                               @Value("${photo.kafka.topic}") String topic,
+                               @Value("${photo.kafka.retry.delays:30s,5m,1h}") List<Duration> delays) {
+        if (delays.size() != TIERS) {
+            throw new IllegalArgumentException("photo.kafka.retry.delays needs " + TIERS + " delays, got " + delays);
+        }
+        this.producer = producer;
+        this.registry = registry;
+        this.topic = topic;
+        this.delays = List.copyOf(delays);
+    }
+
+    public String tierTopic(int tier) {
+        return topic + "-retry-" + tier;
+    }
+
+    public String deadLetterTopic() {
+        return topic + "-dlt";
+    }
+
+    /**
+     * Publishes the failed message to its next retry tier or to the dead-letter
+     * topic and says which.
+     *
+     * @param attempts failed attempts so far, including this one
+     */
+    public Route route(TransferMessage message, Long transferId, ErrorClass errorClass, String errorMessage,
+                       int attempts) {
+        int tier = tierFor(errorClass, attempts);
+        if (tier < 0) {
+            deadLetter(message, transferId, errorClass, errorMessage, attempts);
+            return Route.DEAD_LETTER;
+        }
+        List<Header> headers = failureHeaders(transferId, errorClass, errorMessage, attempts);
+        Instant dueAt = Instant.now().plus(delays.get(tier));
+        headers.add(header(DUE_AT, String.valueOf(dueAt.toEpochMilli())));
+        log.info("Photo {} failed ({}), retrying through {} at {}", message.getPhotoId(), errorClass,
+                tierTopic(tier), dueAt);
+        registry.counter("photo.kafka.retried", "tier", String.valueOf(tier)).increment();
+        producer.send(tierTopic(tier), message, headers);
+        return Route.RETRY;
+    }
+
+    /**
+     * Publishes the message straight to the dead-letter topic, whatever its
+     * error class.
+     *
+     * @return completes once the broker has the record
+     */
+    public CompletableFuture<SendResult<String, TransferMessage>> deadLetter(TransferMessage message, Long transferId, ErrorClass errorClass, String errorMessage,
+                           int attempts) {
+        log.warn("Dead-lettering photo {} after {} attempts ({}): {}", message.getPhotoId(), attempts,
+                errorClass, errorMessage);
+        registry.counter("photo.kafka.dead.lettered", "error", String.valueOf(errorClass)).increment();
+        return producer.send(deadLetterTopic(), message, failureHeaders(transferId, errorClass, errorMessage, attempts));
+    }
+
+    private List<Header> failureHeaders(Long transferId, ErrorClass errorClass, String errorMessage, int attempts) {
+        List<Header> headers = new ArrayList<>();
+        headers.add(header(ATTEMPTS, String.valueOf(attempts)));
+        if (transferId != null) {
+            headers.add(header(TRANSFER_ID, String.valueOf(transferId)));
+        }
+        headers.add(header(ERROR_CLASS, String.valueOf(errorClass)));
+        if (errorMessage != null) {
+            headers.add(header(ERROR_MESSAGE, errorMessage));
+        }
+        headers.add(header(FAILED_AT, Instant.now().toString()));
+        headers.add(header(ORIGINAL_TOPIC, topic));
+        return headers;
+    }
+
+    /**
+     * Says where {@link #route} would send a failure, without publishing it.
+     */
+    static Route routeFor(ErrorClass errorClass, int attempts) {
+        return tierFor(errorClass, attempts) < 0 ? Route.DEAD_LETTER : Route.RETRY;
+    }
+
+    /**
+     * @return the retry tier for the next attempt, or -1 to dead-letter
+     */
+    static int tierFor(ErrorClass errorClass, int attempts) {
+        if (errorClass == null) {
+            errorClass = ErrorClass.UNKNOWN;
+        }
+        int tier = switch (errorClass) {
+            case AUTH, CLIENT -> -1;
+            // Quotas take minutes to recover, so the shortest delay is wasted
+            case RATE_LIMITED -> attempts;
+            case SERVER_ERROR, NETWORK, UNKNOWN -> attempts - 1;
+        };
+        return tier < TIERS ? tier : -1;
+    }
+
+    public static String headerValue(Headers headers, String name) {
+        Header header = headers.lastHeader(name);
+        return header != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+
+    private static Header header(String name, String value) {
+        return new RecordHeader(name, value.getBytes(StandardCharsets.UTF_8));
+    }
+}
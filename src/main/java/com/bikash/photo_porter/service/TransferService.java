@@ -1,22 +1,31 @@
 package com.bikash.photo_porter.service;
 
 import com.bikash.photo_porter.dto.GooglePhoto;
+import com.bikash.photo_porter.dto.TransferHistoryPage;
+import com.bikash.photo_porter.dto.TransferJobProgress;
 import com.bikash.photo_porter.dto.TransferMessage;
 import com.bikash.photo_porter.exception.TransferException;
+import com.bikash.photo_porter.model.JobPriority;
 import com.bikash.photo_porter.model.PhotoTransfer;
+import com.bikash.photo_porter.model.TransferJob;
 import com.bikash.photo_porter.model.TransferStatus;
 import com.bikash.photo_porter.model.User;
 import com.bikash.photo_porter.model.UserToken;
 import com.bikash.photo_porter.repository.PhotoTransferRepository;
+import com.bikash.photo_porter.repository.TransferJobRepository;
 import com.bikash.photo_porter.repository.UserRepository;
 import com.bikash.photo_porter.repository.UserTokenRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import java.util.ArrayList;
+
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -27,88 +36,145 @@ public class TransferService {
     private final PhotoTransferRepository photoTransferRepository;
     private final GooglePhotosClient googlePhotosClient;
     private final PhotoTransferProducer kafkaProducer;
-    private final TokenRefreshService tokenRefreshService;
+    private final TransferJobRepository transferJobRepository;
+    private final TransferJobRunner transferJobRunner;
+    private final JobProgressTracker progressTracker;
+    private final SpoolStore spoolStore;
+
+    // Cursor used for the first page: later than any real transfer
+    private static final LocalDateTime HISTORY_START = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    @Value("${photo.history.default-page-size:50}")
+    private int defaultHistoryPageSize;
+
+    @Value("${photo.history.max-page-size:200}")
+    private int maxHistoryPageSize;
 
-    public void transferPhotos(String sourceEmail, String targetEmail, List<String> photoIds) {
-        log.info("Starting photo transfer from {} to {} for {} photos", sourceEmail, targetEmail, photoIds.size());
+    @Value("${photo.kafka.claim-check.enabled:true}")
+    private boolean claimCheck;
+
+    /**
+     * Persists a job with one pending row per photo and hands it to the job
+     * runner. Only database work happens on the calling thread.
+     */
+    public TransferJob submitTransfer(String sourceEmail, String targetEmail, List<String> photoIds) {
+        return submitTransfer(sourceEmail, targetEmail, photoIds, JobPriority.NORMAL);
+    }
+
+    public TransferJob submitTransfer(String sourceEmail, String targetEmail, List<String> photoIds,
+                                      JobPriority priority) {
+        // A photo listed twice would be moved twice
+        photoIds = List.copyOf(new LinkedHashSet<>(photoIds));
+        log.info("Submitting photo transfer from {} to {} for {} photos", sourceEmail, targetEmail, photoIds.size());
         
         User sourceUser = userRepository.findByEmail(sourceEmail).orElseThrow(() -> new TransferException("Source user not found: " + sourceEmail));
         User targetUser = userRepository.findByEmail(targetEmail).orElseThrow(() -> new TransferException("Target user not found: " + targetEmail));
 
-        UserToken sourceToken = userTokenRepository.findByUserId(sourceUser.getId()).orElseThrow(() -> new TransferException("Source user token not found"));
-        UserToken targetToken = userTokenRepository.findByUserId(targetUser.getId()).orElseThrow(() -> new TransferException("Target user token not found"));
+        userTokenRepository.findByUserId(sourceUser.getId()).orElseThrow(() -> new TransferException("Source user token not found"));
+        userTokenRepository.findByUserId(targetUser.getId()).orElseThrow(() -> new TransferException("Target user token not found"));
 
-        String validSourceToken = tokenRefreshService.refreshTokenIfNeeded(sourceToken);
-        String validTargetToken = tokenRefreshService.refreshTokenIfNeeded(targetToken);
+        TransferJob job = new TransferJob();
+        job.setSourceUser(sourceUser);
+        job.setTargetUser(targetUser);
+        job.setPriority(priority != null ? priority : JobPriority.NORMAL);
+        job.setTotalPhotos(photoIds.size());
+        job.setPendingCount((long) photoIds.size());
+        job = transferJobRepository.save(job);
 
-        for(String photoId : photoIds) {
+        List<PhotoTransfer> rows = new ArrayList<>(photoIds.size());
+        for (String photoId : photoIds) {
             PhotoTransfer pt = new PhotoTransfer();
+            pt.setJob(job);
             pt.setSourceUser(sourceUser);
             pt.setTargetUser(targetUser);
             pt.setPhotoId(photoId);
-            pt.setStatus(TransferStatus.IN_PROGRESS);
-            pt = photoTransferRepository.save(pt);
+            pt.setStatus(TransferStatus.PENDING);
+            rows.add(pt);
+        }
+        photoTransferRepository.saveAll(rows);
 
-            try {
-                log.info("Processing photo transfer {} for photo ID: {}", pt.getId(), photoId);
-                
-                Map<String, Object> photoDetails = getPhotoDetails(validSourceToken, photoId);
-                if (photoDetails == null) {
-                    throw new TransferException("Photo not found: " + photoId);
-                }
-                String baseUrl = (String) photoDetails.get("baseUrl");
-                String fileName = (String) photoDetails.get("filename");
-                if (fileName == null) {
-                    fileName = "photo_" + photoId + ".jpg";
-                }
+        transferJobRunner.dispatch(job.getId());
+        return job;
+    }
 
-                log.info("Downloading photo {} from source", fileName);
-                byte[] photoData = googlePhotosClient.downloadPhoto(baseUrl);
-                
-                if (photoData == null || photoData.length == 0) {
-                    throw new TransferException("Failed to download photo: " + photoId);
-                }
-                log.info("Uploading photo {} to target", fileName);
-                googlePhotosClient.uploadPhoto(validTargetToken, photoData, fileName);
-                pt.setStatus(TransferStatus.SUCCESS);
-                pt.setCompletedAt(LocalDateTime.now());
-                photoTransferRepository.save(pt);
-                log.info("Successfully transferred photo {} (ID: {})", fileName, photoId);
-            } catch (Exception e) {
-                log.error("Failed to transfer photo {}: {}", photoId, e.getMessage(), e);
-                pt.setStatus(TransferStatus.FAILED);
-                pt.setErrorMessage(e.getMessage());
-                pt.setCompletedAt(LocalDateTime.now());
-                photoTransferRepository.save(pt);
-            }
-        }
+    /**
+     * Persists a job that mirrors a whole source album into a new album on the
+     * target. The album is listed and created by the job runner, not here.
+     */
+    public TransferJob submitAlbumTransfer(String sourceEmail, String targetEmail, String albumId) {
+        log.info("Submitting album transfer of {} from {} to {}", albumId, sourceEmail, targetEmail);
+
+        User sourceUser = userRepository.findByEmail(sourceEmail).orElseThrow(() -> new TransferException("Source user not found: " + sourceEmail));
+        User targetUser = userRepository.findByEmail(targetEmail).orElseThrow(() -> new TransferException("Target user not found: " + targetEmail));
+
+        userTokenRepository.findByUserId(sourceUser.getId()).orElseThrow(() -> new TransferException("Source user token not found"));
+        userTokenRepository.findByUserId(targetUser.getId()).orElseThrow(() -> new TransferException("Target user token not found"));
+
+        TransferJob job = new TransferJob();
+        job.setSourceUser(sourceUser);
+        job.setTargetUser(targetUser);
+        job.setSourceAlbumId(albumId);
+        job.setAlbumListed(false);
+        job.setTotalPhotos(0);
+        job = transferJobRepository.save(job);
+
+        transferJobRunner.dispatch(job.getId());
+        return job;
     }
 
-    private Map<String, Object> getPhotoDetails(String accessToken, String photoId) {
-        try {
-            Map<String, Object> photoDetails = new java.util.HashMap<>();
-            photoDetails.put("id", photoId);
-            photoDetails.put("baseUrl", "https://photoslibrary.googleapis.com/v1/mediaItems/" + photoId);
-            photoDetails.put("filename", "photo_" + photoId + ".jpg");
-            return photoDetails;
-        } catch (Exception e) {
-            log.error("Failed to get photo details for photo ID: {}", photoId, e);
-            return null;
-        }
+    public TransferJobProgress getJobProgress(Long jobId) {
+        TransferJob job = transferJobRepository.findById(jobId)
+                .orElseThrow(() -> new TransferException("Transfer job not found with id: " + jobId));
+        return new TransferJobProgress(job.getId(), job.getStatus(), job.getTotalPhotos(),
+                job.getPendingCount(), job.getInProgressCount(), job.getSuccessCount(),
+                job.getFailedCount(), job.getSkippedCount(), job.getBytesTransferred(),
+                job.getCreatedAt(), job.getStartedAt(), job.getCompletedAt(), job.getErrorMessage());
     }
 
-    public List<PhotoTransfer> getTransfersForUser(String email) {
+    /**
+     * Returns one page of the user's transfers in both directions, newest first.
+     *
+     * @param cursor the previous page's {@code nextCursor}, or {@code null} for the first page
+     * @param status only return transfers in this status, or {@code null} for all
+     * @param limit  page size, clamped to {@code photo.history.max-page-size}
+     */
+    public TransferHistoryPage getTransferHistory(String email, String cursor, TransferStatus status, Integer limit) {
         User user = userRepository.findByEmail(email)
                 .orElseThrow(() -> new TransferException("User not found: " + email));
-        
-        List<PhotoTransfer> sourceTransfers = photoTransferRepository.findBySourceUser(user);
-        List<PhotoTransfer> targetTransfers = photoTransferRepository.findByTargetUser(user);
-        List<PhotoTransfer> all = new ArrayList<>();
-        all.addAll(sourceTransfers);
-        all.addAll(targetTransfers);
-        all.sort((a, b) -> b.getStartedAt().compareTo(a.getStartedAt()));
-        
-        return all;
+
+        int pageSize = Math.max(1, Math.min(limit != null ? limit : defaultHistoryPageSize, maxHistoryPageSize));
+        LocalDateTime beforeStartedAt = HISTORY_START;
+        long beforeId = Long.MAX_VALUE;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+                beforeStartedAt = LocalDateTime.parse(parts[0]);
+                beforeId = Long.parseLong(parts[1]);
+            } catch (RuntimeException e) {
+                throw new TransferException("Invalid history cursor");
+            }
+        }
+
+        // One extra row tells us whether there is a next page
+        List<PhotoTransferRepository.HistoryRow> rows = photoTransferRepository.findHistoryPage(user.getId(),
+                beforeStartedAt, beforeId, status != null ? status.ordinal() : -1, pageSize + 1);
+        boolean more = rows.size() > pageSize;
+        List<TransferHistoryPage.Item> items = new ArrayList<>(Math.min(rows.size(), pageSize));
+        for (PhotoTransferRepository.HistoryRow row : rows.subList(0, Math.min(rows.size(), pageSize))) {
+            items.add(new TransferHistoryPage.Item(row.getId(), row.getJobId(), row.getPhotoId(),
+                    user.getId().equals(row.getSourceUserId()) ? TransferHistoryPage.Direction.OUTGOING
+                            : TransferHistoryPage.Direction.INCOMING,
+                    row.getSourceUserId(), row.getTargetUserId(),
+                    row.getStatus() != null ? TransferStatus.values()[row.getStatus()] : null,
+                    row.getStartedAt(), row.getCompletedAt(), row.getBytesTransferred(), row.getErrorMessage()));
+        }
+        String nextCursor = null;
+        if (more) {
+            TransferHistoryPage.Item last = items.get(items.size() - 1);
+            nextCursor = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                    (last.startedAt() + "|" + last.id()).getBytes(StandardCharsets.UTF_8));
+        }
+        return new TransferHistoryPage(items, nextCursor);
     }
 
     public PhotoTransfer getTransferById(Long transferId) {
@@ -116,26 +182,40 @@ public class TransferService {
                 .orElseThrow(() -> new TransferException("Transfer not found with id: " + transferId));
     }
 
+    /**
+     * Publishes one message per photo. In claim-check mode
+     * ({@code photo.kafka.claim-check.enabled}) the bytes are streamed into the
+     * {@link SpoolStore} and the message only carries their key, size and
+     * checksum; otherwise they travel inline.
+     */
     public void queuePhotosForTransfer(UserToken source, UserToken target, List<GooglePhoto> photos) {
         log.info("Queueing {} photos for async transfer", photos.size());
         
         for (GooglePhoto photo : photos) {
             try {
-                byte[] photoData = googlePhotosClient.downloadPhoto(photo.getBaseUrl());
-
                 TransferMessage message = new TransferMessage();
-                message.setPhotoId(photo.getId());
-                message.setFileName(photo.getFilename());
-                message.setPhotoBytes(photoData);
+                message.setPhotoId(photo.id());
+                message.setFileName(photo.filename());
+                if (claimCheck) {
+                    SpoolStore.SpoolObject spooled;
+                    try (MediaDownload download = googlePhotosClient.openDownload(photo.baseUrl())) {
+                        spooled = spoolStore.putObject(download.getContent());
+                    }
+                    message.setContentRef(spooled.key());
+                    message.setContentLength(spooled.size());
+                    message.setContentSha256(spooled.sha256());
+                } else {
+                    message.setPhotoBytes(googlePhotosClient.downloadPhoto(photo.baseUrl()));
+                }
                 message.setSourceUserId(source.getUser().getId());
                 message.setTargetUserId(target.getUser().getId());
                 message.setTargetAccessToken(target.getAccessToken());
 
                 kafkaProducer.send(message);
-                log.info("Queued photo {} for async transfer", photo.getFilename());
+                log.info("Queued photo {} for async transfer", photo.filename());
                 
             } catch (Exception e) {
-                log.error("Failed to queue photo {} for transfer: {}", photo.getId(), e.getMessage(), e);
+                log.error("Failed to queue photo {} for transfer: {}", photo.id(), e.getMessage(), e);
             }
         }
     }
@@ -148,15 +228,44 @@ public class TransferService {
         }
 
         log.info("Retrying failed transfer: {}", transferId);
-        transfer.setStatus(TransferStatus.IN_PROGRESS);
+        TransferJob job = transfer.getJob();
+        if (job == null) {
+            job = new TransferJob();
+            job.setSourceUser(transfer.getSourceUser());
+            job.setTargetUser(transfer.getTargetUser());
+            job.setTotalPhotos(1);
+            job.setPendingCount(1L);
+            job = transferJobRepository.save(job);
+            transfer.setJob(job);
+        } else {
+            progressTracker.transition(job.getId(), TransferStatus.FAILED, TransferStatus.PENDING);
+        }
+        transfer.setStatus(TransferStatus.PENDING);
         transfer.setErrorMessage(null);
         transfer.setCompletedAt(null);
+        transfer.setAttempts(0);
+        transfer.setNextAttemptAt(null);
         photoTransferRepository.save(transfer);
-        List<String> photoIds = List.of(transfer.getPhotoId());
-        transferPhotos(
-            transfer.getSourceUser().getEmail(),
-            transfer.getTargetUser().getEmail(),
-            photoIds
-        );
+        transferJobRunner.dispatch(job.getId());
+    }
+
+    /**
+     * Puts every failed photo of the job back to pending with a fresh attempt
+     * budget and re-runs the job, which feeds them to the engine in batches.
+     *
+     * @return the number of photos queued for retry
+     */
+    public int retryFailedItems(Long jobId) {
+        TransferJob job = transferJobRepository.findById(jobId)
+                .orElseThrow(() -> new TransferException("Transfer job not found with id: " + jobId));
+
+        int reset = photoTransferRepository.resetFailed(jobId);
+        if (reset == 0) {
+            return 0;
+        }
+        log.info("Retrying {} failed photos of job {}", reset, jobId);
+        progressTracker.transition(job.getId(), TransferStatus.FAILED, TransferStatus.PENDING, reset, 0);
+        transferJobRunner.dispatch(job.getId());
+        return reset;
     }
 }
@@ -0,0 +1,40 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.dto.GooglePhoto;
+import com.bikash.photo_porter.model.ErrorClass;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * One photo moving through the {@link TransferEngine}. Either {@code media}
+ * (with a source base URL) or {@code payload} (bytes already fetched, as on the
+ * Kafka path) or {@code content} (a claim check into the {@link SpoolStore})
+ * provides the content; when none is set the engine resolves the metadata from
+ * {@code photoId} first. A base URL expires an hour after it was looked up, so
+ * {@code media} is only used as is while {@code mediaResolvedAt} is recent.
+ */
+@Data
+@NoArgsConstructor
+public class TransferTask {
+    private Long recordId;
+    private String photoId;
+    private String sourceAccessToken;
+    private String targetAccessToken;
+    private String accountKey;
+    private String sessionKey;
+    private String targetAlbumId;
+    private GooglePhoto media;
+    private Instant mediaResolvedAt;
+    private String fileName;
+    private byte[] payload;
+    private SpoolStore.SpoolObject content;
+    private String uploadToken;
+    private long bytes;
+    private String contentHash;
+    private String targetMediaItemId;
+    private int attempts;
+    private ErrorClass errorClass;
+    private FairScheduler.Flow flow;
+}
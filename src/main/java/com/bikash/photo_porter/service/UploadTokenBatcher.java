@@ -0,0 +1,159 @@
+package com.bikash.photo_porter.service;
+
+import com.google.api.services.photoslibrary.v1.model.NewMediaItem;
+import com.google.api.services.photoslibrary.v1.model.NewMediaItemResult;
+import com.google.api.services.photoslibrary.v1.model.SimpleMediaItem;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects upload tokens per target account and album and commits them with one
+ * {@code mediaItems.batchCreate} call per group of up to 50, flushing early when
+ * the linger timeout expires. Each submitted token completes with its own
+ * {@link NewMediaItemResult}.
+ */
+@Component
+@Slf4j
+public class UploadTokenBatcher {
+
+    private static final int API_MAX_BATCH = 50;
+
+    private final GooglePhotosClient googlePhotosClient;
+    private final ScheduledExecutorService executor;
+    private final DistributionSummary batchSizes;
+    private final Map<String, PendingBatch> pending = new HashMap<>();
+
+    @Value("${photo.upload.batch.max-size:50}")
+    private int maxBatchSize;
+
+    @Value("${photo.upload.batch.linger-ms:2000}")
+    private long lingerMs;
+
+    public UploadTokenBatcher(GooglePhotosClient googlePhotosClient, MeterRegistry registry,
+                              @Value("${photo.upload.batch.flush-threads:4}") int flushThreads) {
+        this.googlePhotosClient = googlePhotosClient;
+        this.executor = Executors.newScheduledThreadPool(flushThreads, new CustomizableThreadFactory("upload-batcher-"));
+        this.batchSizes = DistributionSummary.builder("photo.upload.batch.size")
+                .description("Upload tokens committed per batchCreate call")
+                .register(registry);
+    }
+
+    public CompletableFuture<NewMediaItemResult> submit(String accountKey, String accessToken,
+                                                        String uploadToken, String fileName) {
+        return submit(accountKey, accessToken, uploadToken, fileName, null);
+    }
+
+    /**
+     * Queues an upload token for creation in the target account.
+     *
+     * @param accountKey identifies the target account; tokens are only batched with the same key
+     * @param albumId    target album the item is created in, or {@code null} for the library only
+     */
+    public CompletableFuture<NewMediaItemResult> submit(String accountKey, String accessToken,
+                                                        String uploadToken, String fileName, String albumId) {
+        String batchKey = albumId != null ? accountKey + "|" + albumId : accountKey;
+        NewMediaItem item = new NewMediaItem()
+                .setDescription(fileName)
+                .setSimpleMediaItem(new SimpleMediaItem().setUploadToken(uploadToken));
+        CompletableFuture<NewMediaItemResult> result = new CompletableFuture<>();
+
+        PendingBatch full = null;
+        synchronized (pending) {
+            PendingBatch batch = pending.computeIfAbsent(batchKey, k -> new PendingBatch());
+            batch.accessToken = accessToken;
+            batch.albumId = albumId;
+            batch.items.add(item);
+            batch.results.add(result);
+            if (batch.items.size() >= Math.min(maxBatchSize, API_MAX_BATCH)) {
+                pending.remove(batchKey);
+                full = batch;
+            } else if (batch.lingerTask == null) {
+                batch.lingerTask = executor.schedule(() -> flush(batchKey, batch), lingerMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (full != null) {
+            if (full.lingerTask != null) {
+                full.lingerTask.cancel(false);
+            }
+            PendingBatch batch = full;
+            executor.execute(() -> commit(batch));
+        }
+        return result;
+    }
+
+    public static boolean isSuccess(NewMediaItemResult result) {
+        return result != null && (result.getStatus() == null || result.getStatus().getCode() == null
+                || result.getStatus().getCode() == 0);
+    }
+
+    private void flush(String batchKey, PendingBatch batch) {
+        synchronized (pending) {
+            // Already taken by a size-triggered flush
+            if (pending.get(batchKey) != batch) {
+                return;
+            }
+            pending.remove(batchKey);
+        }
+        commit(batch);
+    }
+
+    private void commit(PendingBatch batch) {
+        batchSizes.record(batch.items.size());
+        try {
+            List<NewMediaItemResult> results = googlePhotosClient.createMediaItems(batch.accessToken,
+                    batch.albumId, batch.items);
+            Map<String, NewMediaItemResult> byToken = new HashMap<>();
+            for (NewMediaItemResult r : results) {
+                byToken.put(r.getUploadToken(), r);
+            }
+            for (int i = 0; i < batch.items.size(); i++) {
+                String token = batch.items.get(i).getSimpleMediaItem().getUploadToken();
+                NewMediaItemResult r = byToken.get(token);
+                if (r == null && i < results.size()) {
+                    // Results are returned in request order when tokens are not echoed
+                    r = results.get(i);
+                }
+                batch.results.get(i).complete(r);
+            }
+            log.info("Committed {} media items in one batchCreate", batch.items.size());
+        } catch (Exception e) {
+            log.error("batchCreate failed for {} media items", batch.items.size(), e);
+            batch.results.forEach(f -> f.completeExceptionally(e));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List<PendingBatch> remaining;
+        synchronized (pending) {
+            remaining = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        remaining.forEach(this::commit);
+        executor.shutdown();
+    }
+
+    private static class PendingBatch {
+        private String accessToken;
+        private String albumId;
+        private final List<NewMediaItem> items = new ArrayList<>();
+        private final List<CompletableFuture<NewMediaItemResult>> results = new ArrayList<>();
+        private ScheduledFuture<?> lingerTask;
+    }
+}
@@ -0,0 +1,51 @@
+package com.bikash.photo_porter.config;
+
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountPartitionerTest {
+
+    private final AccountPartitioner partitioner = new AccountPartitioner();
+
+    @Test
+    void testPartition_CompositeKeysOfOneAccountShareAPartition() {
+        // Given: a topic with 12 partitions
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> infos = new ArrayList<>();
+        for (int p = 0; p < 12; p++) {
+            infos.add(new PartitionInfo("photo-transfer-topic", p, node, new Node[]{node}, new Node[]{node}));
+        }
+        Cluster cluster = new Cluster("test", List.of(node), infos, Set.of(), Set.of());
+
+        // When
+        int plain = partitioner.partition("photo-transfer-topic", "42", null, null, null, cluster);
+        int fromSource7 = partitioner.partition("photo-transfer-topic", "42:7", null, null, null, cluster);
+        int fromSource9 = partitioner.partition("photo-transfer-topic", "42:9", null, null, null, cluster);
+
+        // Then: every message for target account 42 lands on the same partition
+        assertEquals(plain, fromSource7);
+        assertEquals(plain, fromSource9);
+        assertTrue(plain >= 0 && plain < 12);
+    }
+
+    @Test
+    void testPartitionFor_SpreadsAccounts() {
+        // Given / When
+        Set<Integer> used = new HashSet<>();
+        for (int account = 0; account < 200; account++) {
+            used.add(AccountPartitioner.partitionFor(String.valueOf(account), 12));
+        }
+
+        // Then
+        assertEquals(12, used.size());
+    }
+}
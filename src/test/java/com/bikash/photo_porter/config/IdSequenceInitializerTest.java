@@ -0,0 +1,63 @@
+package com.bikash.photo_porter.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IdSequenceInitializerTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    private IdSequenceInitializer initializer;
+
+    @Test
+    void testSeedSequences_RaisesEverySequencePastTheLastBlockOfIds() {
+        // Given
+        when(jdbcTemplate.update(startsWith("UPDATE"))).thenReturn(1);
+
+        // When
+        initializer.seedSequences();
+
+        // Then
+        IdSequenceInitializer.SEQUENCES.forEach((table, sequence) -> verify(jdbcTemplate).update(
+                "UPDATE " + sequence + " SET next_val = GREATEST(next_val, (SELECT COALESCE(MAX(id), 0) + 51 FROM "
+                        + table + "))"));
+        verify(jdbcTemplate, never()).update(startsWith("INSERT"));
+    }
+
+    @Test
+    void testSeedSequences_InsertsTheRowOfAnEmptySequenceTable() {
+        // Given: transfers_seq exists but has no row yet
+        when(jdbcTemplate.update(startsWith("UPDATE"))).thenReturn(1);
+        when(jdbcTemplate.update(startsWith("UPDATE transfers_seq "))).thenReturn(0);
+
+        // When
+        initializer.seedSequences();
+
+        // Then
+        verify(jdbcTemplate).update("INSERT INTO transfers_seq (next_val) SELECT COALESCE(MAX(id), 0) + 51 FROM transfers");
+        verify(jdbcTemplate, times(1)).update(startsWith("INSERT"));
+    }
+
+    @Test
+    void testSeedSequences_MissingSequenceTableDoesNotStopStartup() {
+        // Given
+        when(jdbcTemplate.update(anyString())).thenThrow(new DataAccessResourceFailureException("no such table"));
+
+        // When / Then
+        assertDoesNotThrow(initializer::seedSequences);
+        verify(jdbcTemplate, times(IdSequenceInitializer.SEQUENCES.size())).update(anyString());
+    }
+}
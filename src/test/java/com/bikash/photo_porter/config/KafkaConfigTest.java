@@ -0,0 +1,46 @@
+package com.bikash.photo_porter.config;
+
+import com.bikash.photo_porter.dto.TransferMessage;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KafkaConfigTest {
+
+    @Test
+    void testConsumerFactory_JsonTrustsOnlyTheMessagePackage() {
+        // Given: the json wire format, configured the way the factory configures its consumers
+        KafkaConfig config = new KafkaConfig();
+        ReflectionTestUtils.setField(config, "bootstrapServers", "localhost:9092");
+        ReflectionTestUtils.setField(config, "groupId", "photo-transfer-group");
+        ReflectionTestUtils.setField(config, "wireFormat", "json");
+        DefaultKafkaConsumerFactory<String, TransferMessage> factory =
+                (DefaultKafkaConsumerFactory<String, TransferMessage>) config.consumerFactory();
+        Deserializer<TransferMessage> deserializer = factory.getValueDeserializer();
+        deserializer.configure(factory.getConfigurationProperties(), false);
+        TransferMessage message = new TransferMessage("photo-1", "a.jpg", null, 1L, 2L, "token", null, null, null);
+        RecordHeaders headers = new RecordHeaders();
+        byte[] json;
+        try (JsonSerializer<TransferMessage> serializer = new JsonSerializer<>()) {
+            json = serializer.serialize("t", headers, message);
+        }
+
+        // When / Then: the DTO named by the producer's type header is read, any other class is refused
+        assertEquals("com.bikash.photo_porter.dto", factory.getConfigurationProperties()
+                .get(JsonDeserializer.TRUSTED_PACKAGES));
+        assertEquals(message, deserializer.deserialize("t", headers, json));
+        RecordHeaders foreign = new RecordHeaders();
+        foreign.add("__TypeId__", "java.net.URI".getBytes(StandardCharsets.UTF_8));
+        IllegalArgumentException refused = assertThrows(IllegalArgumentException.class,
+                () -> deserializer.deserialize("t", foreign, json));
+        assertTrue(refused.getMessage().contains("not in the trusted packages"));
+    }
+}
@@ -0,0 +1,77 @@
+package com.bikash.photo_porter.config;
+
+import com.bikash.photo_porter.dto.TransferMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares bytes per message and round-trip throughput of the JSON wire format
+ * and {@link TransferMessageSerializer}, for a claim-check message and for one
+ * carrying 2 MB of photo bytes inline.
+ * Not part of the default test run: {@code mvn test -Dtest=TransferMessageSerdeBenchmark}.
+ */
+class TransferMessageSerdeBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    @Test
+    void compareJsonAndBinary() {
+        TransferMessage reference = new TransferMessage("AF1QipN" + "x".repeat(60), "IMG_20240101_120000.jpg",
+                null, 12345L, 67890L, "ya29." + "t".repeat(200), "ab".repeat(32), 2_097_152L, "ab".repeat(32));
+        byte[] photo = new byte[2 * 1024 * 1024];
+        new Random(1).nextBytes(photo);
+        TransferMessage inline = new TransferMessage(reference.getPhotoId(), reference.getFileName(), photo,
+                12345L, 67890L, reference.getTargetAccessToken(), null, null, null);
+
+        try (JsonSerializer<TransferMessage> jsonOut = new JsonSerializer<>();
+             JsonDeserializer<TransferMessage> jsonIn = new JsonDeserializer<>(TransferMessage.class, false);
+             TransferMessageSerializer binaryOut = new TransferMessageSerializer();
+             TransferMessageDeserializer binaryIn = new TransferMessageDeserializer()) {
+            Function<TransferMessage, TransferMessage> json = m -> jsonIn.deserialize("t", jsonOut.serialize("t", m));
+            Function<TransferMessage, TransferMessage> binary = m -> binaryIn.deserialize("t", binaryOut.serialize("t", m));
+
+            for (TransferMessage message : new TransferMessage[]{reference, inline}) {
+                String label = message.getPhotoBytes() == null ? "claim check" : "2 MB inline";
+                int iterations = message.getPhotoBytes() == null ? 200_000 : 50;
+                int jsonSize = jsonOut.serialize("t", message).length;
+                int binarySize = binaryOut.serialize("t", message).length;
+                double jsonRate = roundTripsPerSecond(json, message, iterations);
+                double binaryRate = roundTripsPerSecond(binary, message, iterations);
+
+                System.out.printf("%s: json %,d bytes %,.0f msg/s, binary %,d bytes %,.0f msg/s (%.1fx faster)%n",
+                        label, jsonSize, jsonRate, binarySize, binaryRate, binaryRate / jsonRate);
+                assertTrue(binarySize < jsonSize, "binary records should be smaller than JSON");
+            }
+        }
+    }
+
+    private static double roundTripsPerSecond(Function<TransferMessage, TransferMessage> roundTrip,
+                                              TransferMessage message, int iterations) {
+        for (int r = 0; r < WARMUP_ROUNDS; r++) {
+            run(roundTrip, message, iterations);
+        }
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            best = Math.min(best, run(roundTrip, message, iterations));
+        }
+        return iterations / (best / 1e9);
+    }
+
+    private static long run(Function<TransferMessage, TransferMessage> roundTrip, TransferMessage message,
+                            int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            if (roundTrip.apply(message) == null) {
+                throw new IllegalStateException();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+}
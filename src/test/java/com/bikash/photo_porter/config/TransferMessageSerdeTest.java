@@ -0,0 +1,67 @@
+package com.bikash.photo_porter.config;
+
+import com.bikash.photo_porter.dto.TransferMessage;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransferMessageSerdeTest {
+
+    private final TransferMessageSerializer serializer = new TransferMessageSerializer();
+    private final TransferMessageDeserializer deserializer = new TransferMessageDeserializer();
+
+    @Test
+    void testRoundTrip_AllFieldsAndNulls() {
+        // Given
+        TransferMessage full = new TransferMessage("photo-1", "IMG_0001 ✓.jpg", new byte[]{1, 2, 3}, 7L, 9L,
+                "token", "ab".repeat(32), 3L, "cd".repeat(32));
+        TransferMessage sparse = new TransferMessage("photo-2", null, null, null, 9L, null, null, null, null);
+
+        // When / Then
+        assertEquals(full, deserializer.deserialize("t", serializer.serialize("t", full)));
+        assertEquals(sparse, deserializer.deserialize("t", serializer.serialize("t", sparse)));
+    }
+
+    @Test
+    void testDeserialize_ReadsJsonRecordsWrittenBeforeTheSwitch() {
+        // Given
+        TransferMessage message = new TransferMessage("photo-1", "a.jpg", new byte[]{4, 5}, 7L, 9L, "token",
+                null, null, null);
+        byte[] json;
+        try (JsonSerializer<TransferMessage> jsonSerializer = new JsonSerializer<>()) {
+            json = jsonSerializer.serialize("t", message);
+        }
+
+        // When / Then
+        assertEquals(message, deserializer.deserialize("t", json));
+    }
+
+    @Test
+    void testDeserialize_RejectsTruncatedEmptyAndInvalidVersions() {
+        byte[] bytes = serializer.serialize("t", new TransferMessage("photo-1", "a.jpg", new byte[100], 7L, 9L,
+                "token", null, null, null));
+
+        assertThrows(SerializationException.class,
+                () -> deserializer.deserialize("t", Arrays.copyOf(bytes, bytes.length - 10)));
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("t", new byte[0]));
+        bytes[0] = 0;
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("t", bytes));
+    }
+
+    @Test
+    void testDeserialize_LaterVersionIsReadUpToTheFieldsItKnows() {
+        // Given: a version 2 record with a field appended
+        TransferMessage message = new TransferMessage("photo-1", "a.jpg", new byte[]{1, 2}, 7L, 9L, "token",
+                null, null, null);
+        byte[] v1 = serializer.serialize("t", message);
+        byte[] v2 = Arrays.copyOf(v1, v1.length + 5);
+        v2[0] = 2;
+
+        // When / Then
+        assertEquals(message, deserializer.deserialize("t", v2));
+    }
+}
@@ -0,0 +1,151 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.dto.TransferMessage;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeadLetterReplayerTest {
+
+    private static final String DLT = "photo-transfer-topic-dlt";
+    private static final TopicPartition PARTITION = new TopicPartition(DLT, 0);
+
+    @Mock
+    private ConsumerFactory<String, TransferMessage> consumerFactory;
+
+    @Mock
+    private PhotoTransferProducer producer;
+
+    @Mock
+    private TransferRetryRouter retryRouter;
+
+    @Mock
+    private SpoolStore spoolStore;
+
+    @Mock
+    private Consumer<String, TransferMessage> consumer;
+
+    private final Map<String, Long> committedByGroup = new HashMap<>();
+    private long seekedTo;
+
+    private DeadLetterReplayer replayer;
+
+    @BeforeEach
+    void setUp() {
+        replayer = new DeadLetterReplayer(consumerFactory, producer, retryRouter, spoolStore);
+        ReflectionTestUtils.setField(replayer, "topic", "photo-transfer-topic");
+        ReflectionTestUtils.setField(replayer, "maxRecords", 1000);
+        when(retryRouter.deadLetterTopic()).thenReturn(DLT);
+        when(producer.send(anyString(), any(), anyList())).thenReturn(CompletableFuture.completedFuture(null));
+
+        // Dead letters: 0 AUTH (transfer 7), 1 NETWORK, 2 AUTH whose spooled bytes were purged
+        ConsumerRecord<String, TransferMessage> auth = record(0, "AUTH", "7", null);
+        ConsumerRecord<String, TransferMessage> network = record(1, "NETWORK", null, null);
+        ConsumerRecord<String, TransferMessage> purged = record(2, "AUTH", null, "ab".repeat(32));
+        lenient().when(spoolStore.objectExists("ab".repeat(32))).thenReturn(false);
+
+        when(consumer.partitionsFor(DLT)).thenReturn(List.of(new PartitionInfo(DLT, 0, null, null, null)));
+        when(consumer.beginningOffsets(anyCollection())).thenReturn(Map.of(PARTITION, 0L));
+        when(consumer.endOffsets(anyCollection())).thenReturn(Map.of(PARTITION, 3L));
+        doAnswer(invocation -> seekedTo = invocation.getArgument(1)).when(consumer).seek(eq(PARTITION), anyLong());
+        when(consumer.poll(any())).thenAnswer(invocation -> new ConsumerRecords<>(Map.of(PARTITION,
+                List.of(auth, network, purged).stream().filter(r -> r.offset() >= seekedTo).toList())));
+        when(consumer.position(PARTITION)).thenReturn(3L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testReplay_FilteredReplayLeavesOtherClassesForLater() {
+        // Given: nothing replayed yet
+        givenConsumers("photo-transfer-dlt-replay-auth");
+
+        // When
+        int replayed = replayer.replay(null, "AUTH");
+
+        // Then: assigned rather than subscribed, one record re-published with its transfer id
+        assertEquals(1, replayed);
+        verify(consumer).assign(anyCollection());
+        verify(consumer, never()).subscribe(anyCollection());
+        ArgumentCaptor<List<Header>> headers = ArgumentCaptor.forClass(List.class);
+        verify(producer).send(eq("photo-transfer-topic"), argThat(m -> m.getPhotoId().equals("photo-0")),
+                headers.capture());
+        assertEquals("7", TransferRetryRouter.headerValue(new RecordHeaders(headers.getValue()),
+                TransferRetryRouter.TRANSFER_ID));
+        // Only the AUTH group moved; the full-replay group still starts before the NETWORK record
+        verify(consumer).commitSync(Map.of(PARTITION, new OffsetAndMetadata(3)));
+        assertFalse(committedByGroup.containsKey("photo-transfer-dlt-replay"));
+    }
+
+    @Test
+    void testReplay_FullReplaySkipsWhatAFilteredReplayAlreadyTook() {
+        // Given: an AUTH replay already covered the whole partition
+        givenConsumers("photo-transfer-dlt-replay");
+        committedByGroup.put("photo-transfer-dlt-replay-auth", 3L);
+
+        // When
+        int replayed = replayer.replay(null, null);
+
+        // Then: only the NETWORK record is re-published
+        assertEquals(1, replayed);
+        verify(producer).send(eq("photo-transfer-topic"), argThat(m -> m.getPhotoId().equals("photo-1")),
+                eq(List.of()));
+        verify(consumer).commitSync(Map.of(PARTITION, new OffsetAndMetadata(3)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void givenConsumers(String ownGroup) {
+        when(consumerFactory.createConsumer(eq(ownGroup), eq("dlt-replay"))).thenReturn(consumer);
+        when(consumer.committed(anySet())).thenAnswer(invocation -> committed(ownGroup));
+        when(consumerFactory.createConsumer(anyString(), eq("dlt-replay-offsets"))).thenAnswer(invocation -> {
+            String group = invocation.getArgument(0);
+            Consumer<String, TransferMessage> other = mock(Consumer.class);
+            when(other.committed(anySet())).thenAnswer(i -> committed(group));
+            return other;
+        });
+        doAnswer(invocation -> {
+            Map<TopicPartition, OffsetAndMetadata> offsets = invocation.getArgument(0);
+            committedByGroup.put(ownGroup, offsets.get(PARTITION).offset());
+            return null;
+        }).when(consumer).commitSync(anyMap());
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> committed(String group) {
+        Long offset = committedByGroup.get(group);
+        return offset != null ? Map.of(PARTITION, new OffsetAndMetadata(offset)) : Map.of();
+    }
+
+    private static ConsumerRecord<String, TransferMessage> record(long offset, String errorClass, String transferId,
+                                                                  String contentRef) {
+        ConsumerRecord<String, TransferMessage> record = new ConsumerRecord<>(DLT, 0, offset, "2",
+                new TransferMessage("photo-" + offset, "a.jpg", null, 1L, 2L, "token", contentRef, null, null));
+        record.headers().add(TransferRetryRouter.ERROR_CLASS, errorClass.getBytes(StandardCharsets.UTF_8));
+        if (transferId != null) {
+            record.headers().add(TransferRetryRouter.TRANSFER_ID, transferId.getBytes(StandardCharsets.UTF_8));
+        }
+        return record;
+    }
+}
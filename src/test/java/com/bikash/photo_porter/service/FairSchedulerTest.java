@@ -0,0 +1,110 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.model.JobPriority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FairSchedulerTest {
+
+    private FairScheduler scheduler;
+    private final List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new FairScheduler(new SimpleMeterRegistry(), 1, 1000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void testSmallJobIsServedBetweenItemsOfHugeJob() throws Exception {
+        // Given - the huge job's first photo holds the only slot until everything is queued
+        CountDownLatch queued = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(106);
+        FairScheduler.Flow huge = new FairScheduler.Flow(JobPriority.NORMAL, "alice", 1L, 1);
+        FairScheduler.Flow small = new FairScheduler.Flow(JobPriority.NORMAL, "bob", 2L, 1);
+        scheduler.submit(huge, release -> {
+            order.add("huge");
+            new Thread(() -> {
+                awaitQuietly(queued);
+                release.run();
+                done.countDown();
+            }).start();
+        });
+        for (int i = 0; i < 100; i++) {
+            scheduler.submit(huge, record("huge", done));
+        }
+        for (int i = 0; i < 5; i++) {
+            scheduler.submit(small, record("small", done));
+        }
+
+        // When
+        queued.countDown();
+
+        // Then
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        List<String> firstEleven = order.subList(0, 11);
+        assertEquals(5, Collections.frequency(firstEleven, "small"), "users should alternate: " + firstEleven);
+    }
+
+    @Test
+    void testJobWeightsAndPriorityTiers() throws Exception {
+        // Given
+        CountDownLatch queued = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(10);
+        FairScheduler.Flow blocker = new FairScheduler.Flow(JobPriority.LOW, "carol", 9L, 1);
+        scheduler.submit(blocker, release -> new Thread(() -> {
+            awaitQuietly(queued);
+            release.run();
+            done.countDown();
+        }).start());
+        FairScheduler.Flow heavy = new FairScheduler.Flow(JobPriority.NORMAL, "alice", 1L, 3);
+        FairScheduler.Flow light = new FairScheduler.Flow(JobPriority.NORMAL, "alice", 2L, 1);
+        FairScheduler.Flow background = new FairScheduler.Flow(JobPriority.LOW, "bob", 3L, 1);
+        scheduler.submit(background, record("background", done));
+        for (int i = 0; i < 4; i++) {
+            scheduler.submit(heavy, record("heavy", done));
+        }
+        for (int i = 0; i < 4; i++) {
+            scheduler.submit(light, record("light", done));
+        }
+
+        // When
+        queued.countDown();
+
+        // Then
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("heavy", "heavy", "heavy", "light", "heavy", "light", "light", "light", "background"),
+                order);
+    }
+
+    private Consumer<Runnable> record(String name, CountDownLatch done) {
+        return release -> {
+            order.add(name);
+            release.run();
+            done.countDown();
+        };
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
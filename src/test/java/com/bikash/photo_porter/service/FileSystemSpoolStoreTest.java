@@ -0,0 +1,71 @@
+package com.bikash.photo_porter.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileSystemSpoolStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testPutObject_ContentAddressedAndDeduplicated() throws Exception {
+        // Given
+        FileSystemSpoolStore store = new FileSystemSpoolStore(dir.toString(), 24);
+        byte[] bytes = "photo-bytes".getBytes(StandardCharsets.UTF_8);
+
+        // When: the same content is spooled twice
+        SpoolStore.SpoolObject first = store.putObject(new ByteArrayInputStream(bytes));
+        SpoolStore.SpoolObject second = store.putObject(new ByteArrayInputStream(bytes));
+
+        // Then: both share one object keyed by the content hash
+        assertEquals(first, second);
+        assertEquals(bytes.length, first.size());
+        assertEquals(64, first.key().length());
+        assertEquals(first.key(), first.sha256());
+        try (InputStream in = store.getObject(first.key())) {
+            assertArrayEquals(bytes, in.readAllBytes());
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            assertEquals(1, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void testPurgeExpired_RemovesOnlyOldObjects() throws Exception {
+        // Given: one object past retention and one fresh
+        FileSystemSpoolStore store = new FileSystemSpoolStore(dir.toString(), 24);
+        SpoolStore.SpoolObject old = store.putObject(new ByteArrayInputStream(new byte[]{1}));
+        SpoolStore.SpoolObject fresh = store.putObject(new ByteArrayInputStream(new byte[]{2}));
+        Path oldPath = dir.resolve(old.key().substring(0, 2)).resolve(old.key());
+        Files.setLastModifiedTime(oldPath, FileTime.from(Instant.now().minus(25, ChronoUnit.HOURS)));
+
+        // When
+        store.purgeExpired();
+
+        // Then
+        assertFalse(Files.exists(oldPath));
+        try (InputStream in = store.getObject(fresh.key())) {
+            assertArrayEquals(new byte[]{2}, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void testGetObject_RejectsKeysOutsideTheSpool() {
+        FileSystemSpoolStore store = new FileSystemSpoolStore(dir.toString(), 24);
+
+        assertThrows(IllegalArgumentException.class, () -> store.getObject("../../etc/passwd"));
+    }
+}
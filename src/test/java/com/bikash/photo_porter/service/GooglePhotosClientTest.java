@@ -0,0 +1,106 @@
+package com.bikash.photo_porter.service;
+
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GooglePhotosClientTest {
+
+    private static final byte[] SOURCE = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    @Mock
+    private PhotosLibraryClientCache clientCache;
+
+    @Mock
+    private ResumableUploader resumableUploader;
+
+    private final SourceServer source = new SourceServer();
+    private GooglePhotosClient client;
+
+    @AfterEach
+    void tearDown() {
+        if (client != null) {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    void testOpenDownload_UsesTheRangeOrSkipsWhenTheSourceIgnoresIt() throws Exception {
+        client = new GooglePhotosClient(source, clientCache, resumableUploader);
+
+        // When / Then: a source that honours the range
+        try (MediaDownload download = client.openDownload("https://source/1", 5)) {
+            assertEquals(206, download.getStatusCode());
+            assertEquals("56789", new String(download.getContent().readAllBytes(), StandardCharsets.US_ASCII));
+        }
+        assertEquals("bytes=5-", source.ranges.get(0));
+
+        // When / Then: one that sends the whole file
+        source.honourRange = false;
+        try (MediaDownload download = client.openDownload("https://source/1", 5)) {
+            assertEquals(200, download.getStatusCode());
+            assertEquals("56789", new String(download.getContent().readAllBytes(), StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    void testStreamUpload_ResumedUploadDoesNotOpenTheSourceFromTheStart() throws Exception {
+        // Given
+        client = new GooglePhotosClient(source, clientCache, resumableUploader);
+        when(resumableUploader.resume(eq("1:2:photo"), eq("target-token"), any()))
+                .thenReturn(new ResumableUploader.Resumed("upload-token", 100));
+
+        // When
+        GooglePhotosClient.StreamedUpload upload = client.streamUpload("https://source/1", "target-token",
+                "a.mp4", "1:2:photo");
+
+        // Then
+        assertEquals("upload-token", upload.uploadToken());
+        assertEquals(100, upload.bytes());
+        assertTrue(source.ranges.isEmpty());
+        verify(resumableUploader, never()).upload(any(), any(), any(), any(), anyLong(), any());
+    }
+
+    /**
+     * Serves {@link #SOURCE}, honouring {@code Range} requests unless told not to.
+     */
+    private static class SourceServer extends MockHttpTransport {
+        private final List<String> ranges = new ArrayList<>();
+        private boolean honourRange = true;
+
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) {
+            return new MockLowLevelHttpRequest(url) {
+                @Override
+                public LowLevelHttpResponse execute() {
+                    String range = getFirstHeaderValue("Range");
+                    ranges.add(range);
+                    if (range != null && honourRange) {
+                        int from = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                        byte[] rest = new byte[SOURCE.length - from];
+                        System.arraycopy(SOURCE, from, rest, 0, rest.length);
+                        return new MockLowLevelHttpResponse().setStatusCode(206).setContent(rest);
+                    }
+                    return new MockLowLevelHttpResponse().setContent(SOURCE);
+                }
+            };
+        }
+    }
+}
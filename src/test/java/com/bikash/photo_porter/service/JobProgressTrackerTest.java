@@ -0,0 +1,102 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.model.TransferStatus;
+import com.bikash.photo_porter.repository.TransferJobRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JobProgressTrackerTest {
+
+    @Mock
+    private TransferJobRepository transferJobRepository;
+
+    @InjectMocks
+    private JobProgressTracker tracker;
+
+    @Test
+    void testFlushAll_AppliesAccumulatedDeltasInOneUpdatePerJob() {
+        // Given
+        tracker.transition(7L, TransferStatus.PENDING, TransferStatus.IN_PROGRESS, 3, 0);
+        tracker.transition(7L, TransferStatus.IN_PROGRESS, TransferStatus.SUCCESS, 1, 100);
+        tracker.transition(7L, TransferStatus.IN_PROGRESS, TransferStatus.SUCCESS, 1, 50);
+        tracker.transition(7L, TransferStatus.IN_PROGRESS, TransferStatus.FAILED);
+        tracker.transition(8L, TransferStatus.FAILED, TransferStatus.PENDING);
+
+        // When
+        tracker.flushAll();
+        tracker.flushAll();
+
+        // Then
+        verify(transferJobRepository).applyProgress(7L, -3, 0, 2, 1, 0, 150);
+        verify(transferJobRepository).applyProgress(8L, 1, 0, 0, -1, 0, 0);
+        verifyNoMoreInteractions(transferJobRepository);
+    }
+
+    @Test
+    void testFlush_TransitionsConcurrentWithFlushesAreNeverLost() throws Exception {
+        // Given: every applied success delta is summed
+        AtomicLong applied = new AtomicLong();
+        when(transferJobRepository.applyProgress(eq(7L), anyLong(), anyLong(), anyLong(), anyLong(), anyLong(), anyLong()))
+                .thenAnswer(invocation -> {
+                    applied.addAndGet(invocation.<Long>getArgument(3));
+                    return 1;
+                });
+        int threads = 4;
+        int perThread = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        // When: late outcomes keep arriving while the runner flushes the job
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    tracker.transition(7L, TransferStatus.IN_PROGRESS, TransferStatus.SUCCESS);
+                }
+                done.countDown();
+            });
+        }
+        Future<?> flusher = executor.submit(() -> {
+            while (done.getCount() > 0) {
+                tracker.flush(7L);
+            }
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        flusher.get(30, TimeUnit.SECONDS);
+        tracker.flush(7L);
+        executor.shutdown();
+
+        // Then
+        assertEquals((long) threads * perThread, applied.get());
+    }
+
+    @Test
+    void testFlush_FailedUpdateIsRetriedOnNextFlush() {
+        // Given
+        when(transferJobRepository.applyProgress(eq(7L), anyLong(), anyLong(), anyLong(), anyLong(), anyLong(), anyLong()))
+                .thenThrow(new RuntimeException("db down"))
+                .thenReturn(1);
+        tracker.transition(7L, TransferStatus.IN_PROGRESS, TransferStatus.SUCCESS, 1, 10);
+
+        // When
+        tracker.flushAll();
+        tracker.flush(7L);
+
+        // Then
+        verify(transferJobRepository, times(2)).applyProgress(7L, 0, -1, 1, 0, 0, 10);
+    }
+}
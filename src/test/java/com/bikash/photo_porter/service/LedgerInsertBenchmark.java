@@ -0,0 +1,144 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.model.PhotoTransfer;
+import com.bikash.photo_porter.model.TransferJob;
+import com.bikash.photo_porter.model.TransferStatus;
+import com.bikash.photo_porter.model.User;
+import com.bikash.photo_porter.repository.PhotoTransferRepository;
+import com.bikash.photo_porter.repository.TransferJobRepository;
+import com.bikash.photo_porter.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures ledger throughput for a 10k-photo job against H2 in MySQL mode:
+ * pending-row creation one save at a time versus one {@code saveAll}, and
+ * outcome updates through {@link TransferOutcomeWriter}.
+ * Not part of the default test run: {@code mvn test -Dtest=LedgerInsertBenchmark}.
+ */
+@DataJpaTest(properties = {
+        "spring.profiles.active=",
+        "spring.datasource.url=jdbc:h2:mem:ledger;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({TransferOutcomeWriter.class, MigrationIndex.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class LedgerInsertBenchmark {
+
+    private static final int PHOTOS = 10_000;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransferJobRepository transferJobRepository;
+
+    @Autowired
+    private PhotoTransferRepository photoTransferRepository;
+
+    @Autowired
+    private TransferOutcomeWriter outcomeWriter;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void insertsPerSecondFor10kPhotoJob() {
+        User source = user("source@example.com");
+        User target = user("target@example.com");
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        // One save (and one transaction) per row, as submission used to do
+        TransferJob singleJob = job(source, target);
+        List<PhotoTransfer> singleRows = rows(singleJob, source, target);
+        long start = System.nanoTime();
+        for (PhotoTransfer pt : singleRows) {
+            photoTransferRepository.save(pt);
+        }
+        double singleRate = rate(start);
+
+        // One saveAll for the whole job
+        TransferJob batchJob = job(source, target);
+        List<PhotoTransfer> batchRows = rows(batchJob, source, target);
+        statistics.clear();
+        start = System.nanoTime();
+        photoTransferRepository.saveAll(batchRows);
+        double batchRate = rate(start);
+        long insertStatements = statistics.getPrepareStatementCount();
+
+        // Outcomes written in groups of 50, as the job runner does
+        start = System.nanoTime();
+        for (int i = 0; i < PHOTOS; i += 50) {
+            List<TransferOutcomeWriter.Outcome> outcomes = new ArrayList<>(50);
+            for (PhotoTransfer pt : batchRows.subList(i, i + 50)) {
+                TransferTask task = new TransferTask();
+                task.setRecordId(pt.getId());
+                task.setBytes(1024L);
+                outcomes.add(TransferOutcomeWriter.Outcome.success(task));
+            }
+            outcomeWriter.apply(outcomes);
+        }
+        double updateRate = rate(start);
+
+        System.out.printf("%,d-photo job: save() %,.0f inserts/s, saveAll() %,.0f inserts/s (%.1fx, %,d statements), "
+                        + "batched outcomes %,.0f updates/s%n",
+                PHOTOS, singleRate, batchRate, batchRate / singleRate, insertStatements, updateRate);
+        assertEquals(PHOTOS, photoTransferRepository.countByJobIdAndStatus(batchJob.getId(), TransferStatus.SUCCESS));
+        assertTrue(batchRate > singleRate, "saveAll should insert faster than one save per row");
+    }
+
+    private User user(String email) {
+        User user = new User();
+        user.setEmail(email);
+        return userRepository.save(user);
+    }
+
+    private TransferJob job(User source, User target) {
+        TransferJob job = new TransferJob();
+        job.setSourceUser(source);
+        job.setTargetUser(target);
+        job.setTotalPhotos(PHOTOS);
+        job.setPendingCount((long) PHOTOS);
+        return transferJobRepository.save(job);
+    }
+
+    private static List<PhotoTransfer> rows(TransferJob job, User source, User target) {
+        List<PhotoTransfer> rows = new ArrayList<>(PHOTOS);
+        for (int i = 0; i < PHOTOS; i++) {
+            PhotoTransfer pt = new PhotoTransfer();
+            pt.setJob(job);
+            pt.setSourceUser(source);
+            pt.setTargetUser(target);
+            pt.setPhotoId("photo-" + i);
+            pt.setStatus(TransferStatus.PENDING);
+            rows.add(pt);
+        }
+        return rows;
+    }
+
+    private static double rate(long startNanos) {
+        return PHOTOS / ((System.nanoTime() - startNanos) / 1_000_000_000.0);
+    }
+}
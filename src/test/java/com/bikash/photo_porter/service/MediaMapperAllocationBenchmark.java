@@ -0,0 +1,97 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.dto.GooglePhoto;
+import com.google.api.services.photoslibrary.v1.model.MediaItem;
+import com.google.api.services.photoslibrary.v1.model.MediaMetadata;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares heap allocation per 10k media items between the former reflective
+ * {@code Map<String, Object>} mapping and {@link MediaMapper}.
+ * Not part of the default test run: {@code mvn test -Dtest=MediaMapperAllocationBenchmark}.
+ */
+class MediaMapperAllocationBenchmark {
+
+    private static final int ITEMS = 10_000;
+    private static final int ROUNDS = 20;
+
+    @Test
+    void compareAllocationPer10kItems() {
+        List<MediaItem> items = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            items.add(new MediaItem()
+                    .setId("media-" + i)
+                    .setFilename("IMG_" + i + ".jpg")
+                    .setBaseUrl("https://lh3.googleusercontent.com/base/" + i)
+                    .setMimeType("image/jpeg")
+                    .setMediaMetadata(new MediaMetadata()
+                            .setCreationTime("2024-01-01T00:00:00Z")
+                            .setWidth(4032L)
+                            .setHeight(3024L)));
+        }
+
+        // Warm up both paths so JIT and reflection caches settle
+        for (int i = 0; i < 5; i++) {
+            mapLegacy(items);
+            mapTyped(items);
+        }
+
+        long legacy = Long.MAX_VALUE;
+        long typed = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            legacy = Math.min(legacy, allocatedBy(() -> mapLegacy(items)));
+            typed = Math.min(typed, allocatedBy(() -> mapTyped(items)));
+        }
+
+        System.out.printf("Allocation per %d items: legacy map %,d bytes, typed records %,d bytes (%.1fx less)%n",
+                ITEMS, legacy, typed, (double) legacy / typed);
+        assertTrue(typed < legacy, "typed mapping should allocate less than the map-based mapping");
+    }
+
+    private static List<GooglePhoto> mapTyped(List<MediaItem> items) {
+        List<GooglePhoto> out = new ArrayList<>(items.size());
+        for (MediaItem item : items) {
+            out.add(MediaMapper.toPhoto(item));
+        }
+        return out;
+    }
+
+    /** The mapping GooglePhotosClient used before the typed DTOs. */
+    private static List<Map<String, Object>> mapLegacy(List<MediaItem> items) {
+        List<Map<String, Object>> out = new ArrayList<>(items.size());
+        for (MediaItem item : items) {
+            Map<String, Object> photoMap = new HashMap<>();
+            photoMap.put("id", item.getId());
+            try {
+                Object filename = item.getClass().getMethod("getFilename").invoke(item);
+                if (filename != null) {
+                    photoMap.put("filename", filename);
+                }
+            } catch (Exception e) {
+                // ignored, as before
+            }
+            photoMap.put("baseUrl", item.getBaseUrl());
+            photoMap.put("mimeType", item.getMimeType());
+            photoMap.put("mediaMetadata", item.getMediaMetadata());
+            out.add(photoMap);
+        }
+        return out;
+    }
+
+    private static long allocatedBy(Runnable work) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        work.run();
+        return threads.getThreadAllocatedBytes(threadId) - before;
+    }
+}
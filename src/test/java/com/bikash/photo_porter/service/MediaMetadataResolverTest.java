@@ -0,0 +1,100 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.dto.GooglePhoto;
+import com.bikash.photo_porter.model.ErrorClass;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MediaMetadataResolverTest {
+
+    @Mock
+    private GooglePhotosClient googlePhotosClient;
+
+    private MediaMetadataResolver resolver;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        resolver = new MediaMetadataResolver(googlePhotosClient, new SimpleMeterRegistry(), 3000, 1000);
+        lenient().when(googlePhotosClient.batchGetMediaItems(eq("token"), anyList())).thenAnswer(invocation -> {
+            List<String> ids = invocation.getArgument(1);
+            return ids.stream()
+                    .filter(id -> !id.equals("gone"))
+                    .map(id -> new GooglePhoto(id, id + ".jpg", "https://lh3/" + id, "image/jpeg", null, null, null))
+                    .collect(Collectors.toList());
+        });
+    }
+
+    @Test
+    void testResolveAll_BatchesOfFiftyAndCachesResults() throws Exception {
+        // Given: 120 photo ids
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            ids.add("photo-" + i);
+        }
+
+        // When: resolving them twice
+        Map<String, GooglePhoto> first = resolver.resolveAll("token", ids);
+        Map<String, GooglePhoto> second = resolver.resolveAll("token", ids);
+
+        // Then: three batchGet calls cover the first pass and the second is served from the cache
+        assertEquals(120, first.size());
+        assertEquals(first, second);
+        assertEquals("photo-7.jpg", first.get("photo-7").filename());
+        verify(googlePhotosClient, times(3)).batchGetMediaItems(eq("token"), anyList());
+    }
+
+    @Test
+    void testResolve_MissingPhotoReturnsNull() throws Exception {
+        // When / Then
+        assertNull(resolver.resolve("token", "gone"));
+        assertEquals("https://lh3/found", resolver.resolve("token", "found").baseUrl());
+    }
+
+    @Test
+    void testResolve_FailedLookupIsThrownNotReportedAsMissing() throws Exception {
+        // Given
+        HttpResponseException tooMany = new HttpResponseException.Builder(429, "Too Many Requests", new HttpHeaders())
+                .build();
+        when(googlePhotosClient.batchGetMediaItems(eq("throttled"), anyList())).thenThrow(tooMany);
+
+        // When
+        UncheckedIOException e = assertThrows(UncheckedIOException.class,
+                () -> resolver.resolve("throttled", "photo-1"));
+
+        // Then
+        assertSame(tooMany, e.getCause());
+        assertEquals(ErrorClass.RATE_LIMITED, RetryPolicy.classify(e));
+    }
+
+    @Test
+    void testResolve_EntryOlderThanMaxAgeIsLookedUpAgain() throws Exception {
+        // Given: a cached lookup
+        resolver.resolve("token", "photo-1");
+
+        // When
+        resolver.resolve("token", "photo-1", Duration.ofMinutes(30));
+        resolver.resolve("token", "photo-1", Duration.ZERO);
+
+        // Then: only the zero max age goes back to the API
+        verify(googlePhotosClient, times(2)).batchGetMediaItems(eq("token"), anyList());
+    }
+}
@@ -0,0 +1,62 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.model.MigratedMedia;
+import com.bikash.photo_porter.repository.MigratedMediaRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MigrationIndexTest {
+
+    @Mock
+    private MigratedMediaRepository migratedMediaRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private MigrationIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new MigrationIndex(migratedMediaRepository, transactionManager, new SimpleMeterRegistry(), 10_000, 0.001, 100);
+        when(migratedMediaRepository.findKeysAfter(anyLong(), any())).thenReturn(List.of());
+        index.warmUp();
+    }
+
+    @Test
+    void testAlreadyMigrated_BloomMissesNeverReachTheDatabase() {
+        // When
+        Set<String> migrated = index.alreadyMigrated(1L, 2L, List.of("photo1", "photo2"));
+
+        // Then
+        assertTrue(migrated.isEmpty());
+        verify(migratedMediaRepository, never()).findMigratedPhotoIds(any(), any(), any());
+    }
+
+    @Test
+    void testAlreadyMigrated_RememberedPhotoIsConfirmedByDatabase() {
+        // Given
+        index.remember(List.of(new MigratedMedia(null, 1L, 2L, "photo1", null, null, 10L, null)));
+        when(migratedMediaRepository.findMigratedPhotoIds(1L, 2L, List.of("photo1"))).thenReturn(List.of("photo1"));
+
+        // When
+        Set<String> migrated = index.alreadyMigrated(1L, 2L, List.of("photo1", "photo2"));
+
+        // Then
+        assertEquals(Set.of("photo1"), migrated);
+        verify(migratedMediaRepository).findMigratedPhotoIds(1L, 2L, List.of("photo1"));
+    }
+}
@@ -0,0 +1,58 @@
+package com.bikash.photo_porter.service;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+class OffsetTrackerTest {
+
+    private final TopicPartition partition = new TopicPartition("photo-transfer-topic", 0);
+
+    @Test
+    void testComplete_AcksOnlyTheContiguousLowWaterMark() {
+        // Given: offsets 10..13 in flight
+        OffsetTracker tracker = new OffsetTracker();
+        Acknowledgment[] acks = new Acknowledgment[4];
+        for (int i = 0; i < 4; i++) {
+            acks[i] = mock(Acknowledgment.class);
+            tracker.register(partition, 10 + i, acks[i]);
+        }
+
+        // When: 11 and 13 finish before 10
+        tracker.complete(partition, 11);
+        tracker.complete(partition, 13);
+
+        // Then: nothing can be committed past the running offset 10
+        verifyNoInteractions(acks[0], acks[1], acks[2], acks[3]);
+
+        // When: 10 finishes
+        tracker.complete(partition, 10);
+
+        // Then: the run 10..11 is committed through its newest record; 12 still holds back 13
+        verify(acks[1]).acknowledge();
+        verifyNoInteractions(acks[0], acks[2], acks[3]);
+
+        // When: 12 finishes
+        tracker.complete(partition, 12);
+
+        // Then
+        verify(acks[3]).acknowledge();
+        verifyNoInteractions(acks[2]);
+    }
+
+    @Test
+    void testRevoke_IgnoresLaterCompletions() {
+        OffsetTracker tracker = new OffsetTracker();
+        Acknowledgment ack = mock(Acknowledgment.class);
+        tracker.register(partition, 5, ack);
+
+        tracker.revoke(List.of(partition));
+        tracker.complete(partition, 5);
+
+        verifyNoInteractions(ack);
+    }
+}
@@ -0,0 +1,81 @@
+package com.bikash.photo_porter.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageIteratorTest {
+
+    private static final Map<String, PageIterator.Page<Integer>> PAGES = Map.of(
+            "", new PageIterator.Page<>(List.of(1, 2), "p2"),
+            "p2", new PageIterator.Page<>(List.of(), "p3"),
+            "p3", new PageIterator.Page<>(List.of(3), null));
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testStream_WalksEveryPageInOrderWithAndWithoutPrefetch() {
+        List<String> fetched = new ArrayList<>();
+        PageIterator.PageFetcher<Integer> fetcher = token -> {
+            fetched.add(token);
+            return PAGES.get(token != null ? token : "");
+        };
+
+        try (PageIterator<Integer> direct = new PageIterator<>(fetcher, 0, executor)) {
+            assertEquals(List.of(1, 2, 3), direct.stream().collect(Collectors.toList()));
+        }
+        try (PageIterator<Integer> prefetching = new PageIterator<>(fetcher, 2, executor)) {
+            assertEquals(List.of(1, 2, 3), prefetching.stream().collect(Collectors.toList()));
+        }
+        assertEquals(6, fetched.size());
+    }
+
+    @Test
+    void testHasNext_FetchFailureReachesTheConsumer() {
+        PageIterator.PageFetcher<Integer> fetcher = token -> {
+            if (token == null) {
+                return PAGES.get("");
+            }
+            throw new IOException("quota exceeded");
+        };
+
+        try (PageIterator<Integer> it = new PageIterator<>(fetcher, 1, executor)) {
+            assertEquals(1, it.next());
+            assertEquals(2, it.next());
+            RuntimeException e = assertThrows(RuntimeException.class, it::hasNext);
+            assertTrue(e.getMessage().contains("quota exceeded"));
+            assertFalse(it.hasNext());
+        }
+    }
+
+    @Test
+    void testHasNext_ErrorInThePrefetchTaskDoesNotLeaveTheConsumerWaiting() {
+        // Given: the fetcher fails with an Error rather than an exception
+        PageIterator.PageFetcher<Integer> fetcher = token -> {
+            throw new StackOverflowError();
+        };
+
+        // When / Then
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            try (PageIterator<Integer> it = new PageIterator<>(fetcher, 1, executor)) {
+                IllegalStateException e = assertThrows(IllegalStateException.class, it::hasNext);
+                assertInstanceOf(StackOverflowError.class, e.getCause());
+            }
+        });
+    }
+}
@@ -0,0 +1,173 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.dto.TransferMessage;
+import com.bikash.photo_porter.model.ErrorClass;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ParallelRecordDispatcherTest {
+
+    private final TransferRetryRouter retryRouter = mock(TransferRetryRouter.class);
+    private final KafkaListenerEndpointRegistry listenerRegistry = mock(KafkaListenerEndpointRegistry.class);
+    private ParallelRecordDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testDispatch_RunsOnePartitionConcurrentlyAndCommitsInOrder() throws Exception {
+        // Given: 16 records of one partition whose handlers all wait for each other
+        dispatcher = dispatcher(16, 16, "unordered");
+        CountDownLatch allRunning = new CountDownLatch(16);
+        Acknowledgment[] acks = new Acknowledgment[16];
+
+        // When
+        for (int i = 0; i < 16; i++) {
+            acks[i] = mock(Acknowledgment.class);
+            dispatcher.dispatch(record(i, "account-" + (i % 4)), acks[i], r -> {
+                allRunning.countDown();
+                try {
+                    allRunning.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        // Then: every handler ran at the same time and the whole run is committed through offset 15
+        assertTrue(allRunning.await(5, TimeUnit.SECONDS));
+        verify(acks[15], timeout(5000)).acknowledge();
+    }
+
+    @Test
+    void testDispatch_KeyOrderingRunsOneKeyAtATime() throws Exception {
+        // Given
+        dispatcher = dispatcher(8, 64, "key");
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Acknowledgment last = mock(Acknowledgment.class);
+
+        // When: ten records of the same target account
+        for (int i = 0; i < 10; i++) {
+            dispatcher.dispatch(record(i, "account-1"), i == 9 ? last : mock(Acknowledgment.class), r -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            });
+        }
+
+        // Then
+        verify(last, timeout(5000)).acknowledge();
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    void testDispatch_PoisonRecordIsDeadLetteredAndCommittedPast() {
+        // Given: the record at offset 0 always throws, the one after it succeeds
+        dispatcher = dispatcher(4, 64, "unordered");
+        when(retryRouter.deadLetter(any(), any(), any(), any(), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        Acknowledgment poisonAck = mock(Acknowledgment.class);
+        Acknowledgment nextAck = mock(Acknowledgment.class);
+        AtomicInteger attempts = new AtomicInteger();
+
+        // When
+        dispatcher.dispatch(record(0, "account-1"), poisonAck, r -> {
+            attempts.incrementAndGet();
+            throw new NullPointerException("malformed message");
+        });
+        dispatcher.dispatch(record(1, "account-1"), nextAck, r -> { });
+
+        // Then: three attempts in place, then the dead-letter topic, and the partition moves on
+        verify(nextAck, timeout(5000)).acknowledge();
+        assertEquals(3, attempts.get());
+        verify(retryRouter).deadLetter(any(TransferMessage.class), isNull(), eq(ErrorClass.UNKNOWN),
+                eq("malformed message"), eq(3));
+    }
+
+    @Test
+    void testDispatch_InterruptedBackoffRedeliversTheRecord() throws Exception {
+        // Given: a long backoff after the first failure
+        dispatcher = new ParallelRecordDispatcher(new SimpleMeterRegistry(), retryRouter, listenerRegistry, 2, 64,
+                "unordered", 3, 60_000);
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicReference<Thread> worker = new AtomicReference<>();
+        CountDownLatch failed = new CountDownLatch(1);
+        Acknowledgment ack = mock(Acknowledgment.class);
+        dispatcher.dispatch(record(0, "account-1"), ack, r -> {
+            if (attempts.incrementAndGet() == 1) {
+                worker.set(Thread.currentThread());
+                failed.countDown();
+                throw new IllegalStateException("database down");
+            }
+        });
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+
+        // When: the worker is interrupted while it waits
+        Thread.sleep(50);
+        worker.get().interrupt();
+
+        // Then: the record runs again and its offset is committed
+        verify(ack, timeout(5000)).acknowledge();
+        assertEquals(2, attempts.get());
+        verifyNoInteractions(retryRouter);
+    }
+
+    @Test
+    void testDispatch_PausesContainerInsteadOfBlocking() throws Exception {
+        // Given: room for two records
+        MessageListenerContainer container = mock(MessageListenerContainer.class);
+        when(listenerRegistry.getListenerContainer(ParallelRecordDispatcher.LISTENER_ID)).thenReturn(container);
+        dispatcher = dispatcher(4, 2, "unordered");
+        CountDownLatch release = new CountDownLatch(1);
+        Acknowledgment last = mock(Acknowledgment.class);
+
+        // When: a third record arrives while two are stuck
+        for (int i = 0; i < 3; i++) {
+            dispatcher.dispatch(record(i, "account-" + i), i == 2 ? last : mock(Acknowledgment.class), r -> {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        // Then: the listener thread was never blocked, the container was paused and resumes once they finish
+        verify(container).pause();
+        release.countDown();
+        verify(last, timeout(5000)).acknowledge();
+        verify(container, timeout(5000)).resume();
+    }
+
+    private ParallelRecordDispatcher dispatcher(int workers, int maxInFlight, String ordering) {
+        return new ParallelRecordDispatcher(new SimpleMeterRegistry(), retryRouter, listenerRegistry, workers,
+                maxInFlight, ordering, 3, 1);
+    }
+
+    private static ConsumerRecord<String, TransferMessage> record(long offset, String key) {
+        return new ConsumerRecord<>("photo-transfer-topic", 0, offset, key,
+                new TransferMessage("photo-" + offset, "a.jpg", null, 1L, 2L, "token", null, null, null));
+    }
+}
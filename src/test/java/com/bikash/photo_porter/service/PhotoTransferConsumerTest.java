@@ -0,0 +1,203 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.dto.TransferMessage;
+import com.bikash.photo_porter.model.ErrorClass;
+import com.bikash.photo_porter.model.MigratedMedia;
+import com.bikash.photo_porter.model.Transfer;
+import com.bikash.photo_porter.model.TransferStatus;
+import com.bikash.photo_porter.model.UserToken;
+import com.bikash.photo_porter.repository.TransferRepository;
+import com.bikash.photo_porter.repository.UserTokenRepository;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PhotoTransferConsumerTest {
+
+    @Mock
+    private TransferEngine transferEngine;
+
+    @Mock
+    private TransferRepository transferRepository;
+
+    @Mock
+    private MigrationIndex migrationIndex;
+
+    @Mock
+    private TransferOutcomeWriter outcomeWriter;
+
+    @Mock
+    private TransferRetryRouter retryRouter;
+
+    @Mock
+    private UserTokenRepository userTokenRepository;
+
+    @Mock
+    private TokenRefreshService tokenRefreshService;
+
+    @InjectMocks
+    private PhotoTransferConsumer consumer;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testConsumeBatch_GroupsDatabaseWrites() {
+        // Given: ten messages for one account pair, one of them already migrated
+        List<TransferMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            messages.add(new TransferMessage("photo-" + i, "photo-" + i + ".jpg", new byte[]{1}, 1L, 2L, "token",
+                    null, null, null));
+        }
+        when(migrationIndex.alreadyMigrated(eq(1L), eq(2L), anyCollection())).thenReturn(Set.of("photo-3"));
+        ReflectionTestUtils.setField(consumer, "outcomeChunkSize", 50);
+        givenInsertedRowsAndEngine(Set.of());
+
+        // When
+        consumer.consumeBatch(records(messages));
+
+        // Then: one insert batch and one outcome write cover the whole poll
+        ArgumentCaptor<List<Transfer>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(transferRepository).saveAll(inserted.capture());
+        assertEquals(TransferStatus.SKIPPED.name(), inserted.getValue().get(3).getStatus());
+        verify(transferRepository, never()).save(any());
+        verify(transferEngine, times(9)).submit(anyList(), any());
+
+        ArgumentCaptor<List<TransferOutcomeWriter.Outcome>> outcomes = ArgumentCaptor.forClass(List.class);
+        verify(outcomeWriter).applyTransfers(outcomes.capture());
+        assertEquals(9, outcomes.getValue().size());
+        assertTrue(outcomes.getValue().stream().noneMatch(o -> o.recordId() == 103L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testConsumeBatch_FailedOutcomeWriteRedeliversFromThatRecord() {
+        // Given: five messages, photo-3 failed its upload and the outcome of photo-2 cannot be written
+        List<TransferMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            messages.add(new TransferMessage("photo-" + i, "photo-" + i + ".jpg", new byte[]{1}, 1L, 2L, "token",
+                    null, null, null));
+        }
+        when(migrationIndex.alreadyMigrated(eq(1L), eq(2L), anyCollection())).thenReturn(Set.of());
+        ReflectionTestUtils.setField(consumer, "outcomeChunkSize", 2);
+        givenInsertedRowsAndEngine(Set.of(103L));
+        doAnswer(invocation -> {
+            List<TransferOutcomeWriter.Outcome> outcomes = invocation.getArgument(0);
+            if (outcomes.stream().anyMatch(o -> o.recordId() == 102L && o.status() == TransferStatus.SUCCESS)) {
+                throw new IllegalStateException("constraint violation");
+            }
+            return null;
+        }).when(outcomeWriter).applyTransfers(anyList());
+
+        // When
+        BatchListenerFailedException error = assertThrows(BatchListenerFailedException.class,
+                () -> consumer.consumeBatch(records(messages)));
+
+        // Then: records 0 and 1 are committed, 2 onwards are redelivered and none of them is routed
+        assertEquals(2, error.getIndex());
+        verify(retryRouter, never()).route(any(), any(), any(), any(), anyInt());
+        ArgumentCaptor<List<MigratedMedia>> indexed = ArgumentCaptor.forClass(List.class);
+        verify(migrationIndex).recordAll(indexed.capture());
+        assertEquals(List.of("photo-2", "photo-4"), indexed.getValue().stream().map(MigratedMedia::getPhotoId).toList());
+    }
+
+    @Test
+    void testConsumeRetry_RecordNotYetDueIsHandedBack() {
+        // Given: a record in a retry tier due in ten minutes
+        ConsumerRecord<String, TransferMessage> record = new ConsumerRecord<>("photo-transfer-topic-retry-1", 0, 5L,
+                "2", new TransferMessage("photo-1", "a.jpg", new byte[]{1}, 1L, 2L, "token", null, null, null));
+        record.headers().add(TransferRetryRouter.DUE_AT,
+                String.valueOf(System.currentTimeMillis() + 600_000).getBytes(StandardCharsets.UTF_8));
+        ReflectionTestUtils.setField(consumer, "maxRetryPauseMs", 60_000L);
+        Acknowledgment ack = mock(Acknowledgment.class);
+
+        // When
+        consumer.consumeRetry(record, ack);
+
+        // Then: the partition pauses for at most the configured maximum and nothing is processed
+        verify(ack).nack(Duration.ofMillis(60_000));
+        verify(ack, never()).acknowledge();
+        verifyNoInteractions(transferEngine, transferRepository);
+    }
+
+    @Test
+    void testConsume_ReplayedRecordUploadsWithTheTargetsCurrentToken() {
+        // Given: a dead-lettered record replayed hours later, still carrying the token it was produced with
+        ConsumerRecord<String, TransferMessage> record = new ConsumerRecord<>("photo-transfer-topic", 0, 7L, "2",
+                new TransferMessage("photo-1", "a.jpg", new byte[]{1}, 1L, 2L, "stale-token", null, null, null));
+        record.headers().add(TransferRetryRouter.TRANSFER_ID, "42".getBytes(StandardCharsets.UTF_8));
+        Transfer earlier = new Transfer();
+        earlier.setId(42L);
+        UserToken stored = new UserToken();
+        when(transferRepository.findById(42L)).thenReturn(Optional.of(earlier));
+        when(transferRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(userTokenRepository.findByUserId(2L)).thenReturn(Optional.of(stored));
+        when(tokenRefreshService.refreshTokenIfNeeded(stored)).thenReturn("fresh-token");
+        List<TransferTask> submitted = new ArrayList<>();
+        when(transferEngine.submit(anyList(), any())).thenAnswer(invocation -> {
+            List<TransferTask> tasks = invocation.getArgument(0);
+            submitted.addAll(tasks);
+            tasks.forEach(((TransferLedger) invocation.getArgument(1))::onSuccess);
+            return CompletableFuture.completedFuture(null);
+        });
+
+        // When
+        consumer.consume(record);
+
+        // Then: the upload uses the refreshed token and the earlier row is reused
+        assertEquals(1, submitted.size());
+        assertEquals("fresh-token", submitted.get(0).getTargetAccessToken());
+        assertEquals(42L, submitted.get(0).getRecordId());
+        assertEquals(TransferStatus.SUCCESS.name(), earlier.getStatus());
+    }
+
+    private static List<ConsumerRecord<String, TransferMessage>> records(List<TransferMessage> messages) {
+        List<ConsumerRecord<String, TransferMessage>> records = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            records.add(new ConsumerRecord<>("photo-transfer-topic", 0, i, "2", messages.get(i)));
+        }
+        return records;
+    }
+
+    private void givenInsertedRowsAndEngine(Set<Long> failingIds) {
+        when(transferRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Transfer> rows = invocation.getArgument(0);
+            for (int i = 0; i < rows.size(); i++) {
+                rows.get(i).setId(100L + i);
+            }
+            return rows;
+        });
+        when(transferEngine.submit(anyList(), any())).thenAnswer(invocation -> {
+            List<TransferTask> tasks = invocation.getArgument(0);
+            TransferLedger ledger = invocation.getArgument(1);
+            for (TransferTask task : tasks) {
+                if (failingIds.contains(task.getRecordId())) {
+                    task.setErrorClass(ErrorClass.SERVER_ERROR);
+                    ledger.onFailure(task, "503");
+                } else {
+                    ledger.onSuccess(task);
+                }
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+}
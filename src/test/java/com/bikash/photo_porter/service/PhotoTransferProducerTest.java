@@ -0,0 +1,138 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.dto.TransferMessage;
+import com.bikash.photo_porter.model.ErrorClass;
+import com.bikash.photo_porter.model.Transfer;
+import com.bikash.photo_porter.repository.TransferRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PhotoTransferProducerTest {
+
+    @Mock
+    private KafkaTemplate<String, TransferMessage> kafkaTemplate;
+
+    @Mock
+    private RetryPolicy retryPolicy;
+
+    @Mock
+    private TransferRepository transferRepository;
+
+    private SimpleMeterRegistry registry;
+    private PhotoTransferProducer producer;
+
+    private final TransferMessage message = new TransferMessage("photo-1", "a.jpg", null, 1L, 2L, "token",
+            "ab".repeat(32), 10L, "ab".repeat(32));
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        producer = new PhotoTransferProducer(kafkaTemplate, retryPolicy, transferRepository, registry);
+        ReflectionTestUtils.setField(producer, "topic", "photo-transfer-topic");
+        ReflectionTestUtils.setField(producer, "keyStrategy", "target");
+    }
+
+    @AfterEach
+    void tearDown() {
+        producer.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSend_RetriableFailureIsResentUntilAcked() throws Exception {
+        // Given: the first send times out, the second is acked
+        SendResult<String, TransferMessage> acked = new SendResult<>(
+                new ProducerRecord<>("photo-transfer-topic", "2", message),
+                new RecordMetadata(new TopicPartition("photo-transfer-topic", 3), 42L, 0, 0L, 1, 10));
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+                .thenReturn(CompletableFuture.failedFuture(new TimeoutException("expired")))
+                .thenReturn(CompletableFuture.completedFuture(acked));
+        when(retryPolicy.nextAttemptAt(ErrorClass.NETWORK, 1)).thenReturn(LocalDateTime.now());
+
+        // When
+        SendResult<String, TransferMessage> result = producer.send(message).get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(42L, result.getRecordMetadata().offset());
+        ArgumentCaptor<ProducerRecord<String, TransferMessage>> sent = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate, times(2)).send(sent.capture());
+        assertEquals("2", sent.getValue().key());
+        assertEquals("photo-transfer-topic", sent.getValue().topic());
+        assertEquals(1.0, registry.get("photo.kafka.send.failures").counter().count());
+        assertEquals(1.0, registry.get("photo.kafka.send.delivered").counter().count());
+        assertEquals(0.0, registry.get("photo.kafka.send.in.flight").gauge().value());
+        verifyNoInteractions(transferRepository);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSend_NonRetriableFailureIsRecorded() {
+        // Given
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+                .thenReturn(CompletableFuture.failedFuture(new RecordTooLargeException("too large")));
+
+        // When
+        CompletableFuture<SendResult<String, TransferMessage>> delivery = producer.send(message);
+
+        // Then: the handle fails and the photo is recorded as failed instead of dropped
+        assertThrows(ExecutionException.class, () -> delivery.get(5, TimeUnit.SECONDS));
+        ArgumentCaptor<Transfer> failed = ArgumentCaptor.forClass(Transfer.class);
+        verify(transferRepository).save(failed.capture());
+        assertEquals("FAILED", failed.getValue().getStatus());
+        assertEquals("photo-1", failed.getValue().getPhotoId());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSend_UnpublishedRetryMarksItsExistingRowFailed() {
+        // Given: a retry-tier record for the row of an earlier attempt
+        Transfer earlier = new Transfer();
+        earlier.setId(42L);
+        earlier.setStatus("RETRY_PENDING");
+        when(transferRepository.findById(42L)).thenReturn(Optional.of(earlier));
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+                .thenReturn(CompletableFuture.failedFuture(new RecordTooLargeException("too large")));
+        List<Header> headers = List.of(new RecordHeader(TransferRetryRouter.TRANSFER_ID,
+                "42".getBytes(StandardCharsets.UTF_8)));
+
+        // When
+        CompletableFuture<SendResult<String, TransferMessage>> delivery = producer.send(
+                "photo-transfer-topic-retry-0", message, headers);
+
+        // Then: that row is failed and no second row is added
+        assertThrows(ExecutionException.class, () -> delivery.get(5, TimeUnit.SECONDS));
+        verify(transferRepository).save(earlier);
+        verifyNoMoreInteractions(transferRepository);
+        assertEquals("FAILED", earlier.getStatus());
+        assertNotNull(earlier.getCompletedAt());
+    }
+}
@@ -0,0 +1,52 @@
+package com.bikash.photo_porter.service;
+
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.services.photoslibrary.v1.PhotosLibrary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PhotosLibraryClientCacheTest {
+
+    private PhotosLibraryClientCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new PhotosLibraryClientCache(new MockHttpTransport(), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 3300L);
+        ReflectionTestUtils.setField(cache, "expiryMarginSeconds", 60L);
+        ReflectionTestUtils.setField(cache, "maxSize", 256);
+    }
+
+    @Test
+    void testGet_ClientOfATokenAboutToExpireIsNotKeptForTheFullTtl() {
+        // Given: a token first seen 40 minutes into its hour, and one that has just been issued
+        cache.tokenExpiresAt("old-token", Instant.now().plusSeconds(30));
+        cache.tokenExpiresAt("new-token", Instant.now().plusSeconds(3600));
+
+        // When
+        PhotosLibrary old = cache.get("old-token");
+        PhotosLibrary fresh = cache.get("new-token");
+
+        // Then: the old token's client is already past its usable life, the new one is reused
+        assertNotSame(old, cache.get("old-token"));
+        assertSame(fresh, cache.get("new-token"));
+    }
+
+    @Test
+    void testTokenExpiresAt_ShortensAClientAlreadyCached() {
+        // Given: a client built before the token's expiry was known
+        PhotosLibrary client = cache.get("token");
+
+        // When
+        cache.tokenExpiresAt("token", Instant.now().plusSeconds(30));
+
+        // Then
+        assertNotSame(client, cache.get("token"));
+    }
+}
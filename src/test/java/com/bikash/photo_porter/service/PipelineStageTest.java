@@ -0,0 +1,67 @@
+package com.bikash.photo_porter.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineStageTest {
+
+    private PipelineStage stage;
+
+    @BeforeEach
+    void setUp() {
+        stage = new PipelineStage("test", 1, 1, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        stage.shutdown();
+    }
+
+    @Test
+    void testExecute_FullQueueBlocksTheCaller() throws Exception {
+        // Given: the only worker is busy and the queue holds one more item
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        stage.execute(() -> {
+            started.countDown();
+            awaitQuietly(busy);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        stage.execute(() -> { });
+
+        // When
+        CompletableFuture<Void> third = CompletableFuture.runAsync(() -> stage.execute(() -> { }));
+
+        // Then: the caller waits until the worker frees a place in the queue
+        assertThrows(TimeoutException.class, () -> third.get(200, TimeUnit.MILLISECONDS));
+        busy.countDown();
+        third.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testExecute_RejectsWorkAfterShutdown() {
+        // Given
+        stage.shutdown();
+
+        // When / Then
+        assertThrows(RejectedExecutionException.class, () -> stage.execute(() -> { }));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.model.UploadSession;
+import com.bikash.photo_porter.repository.UploadSessionRepository;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ResumableUploaderTest {
+
+    private static final String SESSION_URL = "https://upload.example.com/session-1";
+    private static final byte[] SOURCE = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    @Mock
+    private UploadSessionRepository uploadSessionRepository;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final FakeUploadServer server = new FakeUploadServer();
+    private ResumableUploader uploader;
+
+    @BeforeEach
+    void setUp() {
+        uploader = new ResumableUploader(server, uploadSessionRepository, registry);
+        ReflectionTestUtils.setField(uploader, "thresholdBytes", 8L);
+        ReflectionTestUtils.setField(uploader, "initialChunkBytes", 4);
+        ReflectionTestUtils.setField(uploader, "maxChunkBytes", 4);
+        ReflectionTestUtils.setField(uploader, "targetChunkSeconds", 5.0);
+        ReflectionTestUtils.setField(uploader, "maxChunkRetries", 2);
+        lenient().when(uploadSessionRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void testUpload_SendsGranularChunksAndFinalizesTheLast() throws Exception {
+        // When
+        String token = uploader.upload("1:2:photo", "token", "a.mp4", "video/mp4", SOURCE.length,
+                new ByteArrayInputStream(SOURCE));
+
+        // Then
+        assertEquals("upload-token", token);
+        assertArrayEquals(SOURCE, server.received.toByteArray());
+        assertEquals(List.of("upload@0", "upload@4", "upload, finalize@8"), server.chunks);
+        verify(uploadSessionRepository).delete(argThat(s -> s.getSessionKey().equals("1:2:photo")));
+    }
+
+    @Test
+    void testResume_ContinuesFromTheServersOffset() throws Exception {
+        // Given: the checkpoint says 4, but the server already has 8 bytes
+        server.received.write(SOURCE, 0, 8);
+        when(uploadSessionRepository.findBySessionKey("1:2:photo")).thenReturn(Optional.of(session(4)));
+        List<Long> opened = new ArrayList<>();
+
+        // When
+        ResumableUploader.Resumed resumed = uploader.resume("1:2:photo", "token", offset -> {
+            opened.add(offset);
+            return download(Arrays.copyOfRange(SOURCE, (int) offset, SOURCE.length));
+        });
+
+        // Then: the source is opened once, at the server's offset
+        assertEquals("upload-token", resumed.uploadToken());
+        assertEquals(SOURCE.length, resumed.totalBytes());
+        assertEquals(List.of(8L), opened);
+        assertEquals(List.of("upload, finalize@8"), server.chunks);
+        assertArrayEquals(SOURCE, server.received.toByteArray());
+        assertEquals(8.0, registry.get("photo.upload.resumable.bytes.saved").counter().count());
+        assertEquals(1.0, registry.get("photo.upload.resumable.sessions.resumed").counter().count());
+    }
+
+    @Test
+    void testResume_ExpiredSessionStartsOver() throws Exception {
+        // Given
+        server.active = false;
+        UploadSession stale = session(4);
+        when(uploadSessionRepository.findBySessionKey("1:2:photo")).thenReturn(Optional.of(stale));
+
+        // When
+        ResumableUploader.Resumed resumed = uploader.resume("1:2:photo", "token", offset -> {
+            throw new AssertionError("source opened for an expired session");
+        });
+
+        // Then
+        assertNull(resumed);
+        verify(uploadSessionRepository).delete(stale);
+    }
+
+    @Test
+    void testUpload_FailedChunkResendsOnlyWhatTheServerLacks() throws Exception {
+        // Given: the second chunk breaks after the server stored 2 of its 4 bytes
+        server.failAtOffset = 4;
+        server.acceptBeforeFailing = 2;
+
+        // When
+        String token = uploader.upload("1:2:photo", "token", "a.mp4", "video/mp4", SOURCE.length,
+                new ByteArrayInputStream(SOURCE));
+
+        // Then
+        assertEquals("upload-token", token);
+        assertArrayEquals(SOURCE, server.received.toByteArray());
+        assertEquals(List.of("upload@0", "upload@4", "upload@6", "upload, finalize@8"), server.chunks);
+        assertEquals(2.0, registry.get("photo.upload.resumable.bytes.resent").counter().count());
+        assertEquals(2.0, registry.get("photo.upload.resumable.bytes.saved").counter().count());
+    }
+
+    private static UploadSession session(long committedOffset) {
+        UploadSession session = new UploadSession();
+        session.setSessionKey("1:2:photo");
+        session.setUploadUrl(SESSION_URL);
+        session.setFileName("a.mp4");
+        session.setTotalBytes((long) SOURCE.length);
+        session.setCommittedOffset(committedOffset);
+        session.setChunkGranularity(4);
+        return session;
+    }
+
+    private static MediaDownload download(byte[] content) throws IOException {
+        MockHttpTransport transport = new MockHttpTransport.Builder()
+                .setLowLevelHttpResponse(new MockLowLevelHttpResponse().setContent(content))
+                .build();
+        return new MediaDownload(transport.createRequestFactory()
+                .buildGetRequest(new GenericUrl("https://source/1=d")).execute());
+    }
+
+    /**
+     * Just enough of the resumable upload protocol: start, upload at the
+     * expected offset, query, and finalize.
+     */
+    private static class FakeUploadServer extends MockHttpTransport {
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        private final List<String> chunks = new ArrayList<>();
+        private boolean active = true;
+        private long failAtOffset = -1;
+        private int acceptBeforeFailing;
+
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) {
+            return new MockLowLevelHttpRequest(url) {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    return handle(this);
+                }
+            };
+        }
+
+        private LowLevelHttpResponse handle(MockLowLevelHttpRequest request) throws IOException {
+            String command = request.getFirstHeaderValue("X-Goog-Upload-Command");
+            MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+            switch (command) {
+                case "start" -> response.addHeader("X-Goog-Upload-URL", SESSION_URL)
+                        .addHeader("X-Goog-Upload-Chunk-Granularity", "4");
+                case "query" -> response.addHeader("X-Goog-Upload-Status", active ? "active" : "final")
+                        .addHeader("X-Goog-Upload-Size-Received", String.valueOf(received.size()));
+                default -> {
+                    long offset = Long.parseLong(request.getFirstHeaderValue("X-Goog-Upload-Offset"));
+                    assertEquals(received.size(), offset, "chunk sent at the wrong offset");
+                    chunks.add(command + "@" + offset);
+                    ByteArrayOutputStream body = new ByteArrayOutputStream();
+                    request.getStreamingContent().writeTo(body);
+                    byte[] bytes = body.toByteArray();
+                    if (offset == failAtOffset) {
+                        failAtOffset = -1;
+                        received.write(bytes, 0, acceptBeforeFailing);
+                        throw new IOException("connection reset");
+                    }
+                    received.write(bytes);
+                    if (command.contains("finalize")) {
+                        response.setContent("upload-token");
+                    }
+                }
+            }
+            return response;
+        }
+    }
+}
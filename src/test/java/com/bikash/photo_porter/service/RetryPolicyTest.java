@@ -0,0 +1,84 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.model.ErrorClass;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.services.photoslibrary.v1.model.Status;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+
+    private RetryPolicy retryPolicy;
+
+    @BeforeEach
+    void setUp() {
+        retryPolicy = new RetryPolicy();
+        ReflectionTestUtils.setField(retryPolicy, "maxAttempts", 5);
+        ReflectionTestUtils.setField(retryPolicy, "maxDelayMs", 60_000L);
+        ReflectionTestUtils.setField(retryPolicy, "rateLimitedBaseDelayMs", 10_000L);
+        ReflectionTestUtils.setField(retryPolicy, "serverErrorBaseDelayMs", 1_000L);
+        ReflectionTestUtils.setField(retryPolicy, "networkBaseDelayMs", 500L);
+    }
+
+    @Test
+    void testClassify_MapsHttpAndBatchStatuses() {
+        // Given
+        HttpResponseException tooMany = new HttpResponseException.Builder(429, "Too Many Requests", new HttpHeaders()).build();
+        HttpResponseException unavailable = new HttpResponseException.Builder(503, "Unavailable", new HttpHeaders()).build();
+        HttpResponseException forbidden = new HttpResponseException.Builder(403, "Forbidden", new HttpHeaders()).build();
+
+        // When & Then
+        assertEquals(ErrorClass.RATE_LIMITED, RetryPolicy.classify(new CompletionException(tooMany)));
+        assertEquals(ErrorClass.SERVER_ERROR, RetryPolicy.classify(unavailable));
+        assertEquals(ErrorClass.AUTH, RetryPolicy.classify(forbidden));
+        assertEquals(ErrorClass.NETWORK, RetryPolicy.classify(new SocketTimeoutException("read timed out")));
+        assertEquals(ErrorClass.RATE_LIMITED, RetryPolicy.classify(new Status().setCode(8)));
+        assertEquals(ErrorClass.CLIENT, RetryPolicy.classify(new Status().setCode(3)));
+    }
+
+    @Test
+    void testClassify_LooksThroughPlainRuntimeExceptionWrappers() {
+        // Given: the way GooglePhotosClient reports a failed stream
+        HttpResponseException tooMany = new HttpResponseException.Builder(429, "Too Many Requests", new HttpHeaders()).build();
+        RuntimeException wrapped = new RuntimeException("Failed to stream photo", tooMany);
+
+        // When & Then
+        assertEquals(ErrorClass.RATE_LIMITED, RetryPolicy.classify(wrapped));
+        assertEquals(ErrorClass.NETWORK, RetryPolicy.classify(
+                new RuntimeException("Failed to upload photo", new SocketTimeoutException("read timed out"))));
+        assertEquals(ErrorClass.UNKNOWN, RetryPolicy.classify(new RuntimeException("boom")));
+        assertNotNull(retryPolicy.nextAttemptAt(RetryPolicy.classify(wrapped), 1));
+    }
+
+    @Test
+    void testNextAttemptAt_BacksOffWithJitterAndStopsAtMaxAttempts() {
+        // When
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime first = retryPolicy.nextAttemptAt(ErrorClass.RATE_LIMITED, 1);
+        LocalDateTime third = retryPolicy.nextAttemptAt(ErrorClass.RATE_LIMITED, 3);
+        LocalDateTime capped = retryPolicy.nextAttemptAt(ErrorClass.RATE_LIMITED, 4);
+
+        // Then
+        assertBetween(now, first, Duration.ofSeconds(5), Duration.ofSeconds(10));
+        assertBetween(now, third, Duration.ofSeconds(20), Duration.ofSeconds(40));
+        assertBetween(now, capped, Duration.ofSeconds(30), Duration.ofSeconds(60));
+        assertNull(retryPolicy.nextAttemptAt(ErrorClass.RATE_LIMITED, 5));
+        assertNull(retryPolicy.nextAttemptAt(ErrorClass.CLIENT, 1));
+        assertNull(retryPolicy.nextAttemptAt(ErrorClass.AUTH, 1));
+    }
+
+    private void assertBetween(LocalDateTime now, LocalDateTime actual, Duration min, Duration max) {
+        Duration delay = Duration.between(now, actual);
+        assertTrue(delay.compareTo(min) >= 0 && delay.compareTo(max.plusSeconds(1)) <= 0,
+                "delay " + delay + " not within " + min + ".." + max);
+    }
+}
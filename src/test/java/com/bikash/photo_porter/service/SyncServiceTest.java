@@ -0,0 +1,158 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.dto.GooglePhoto;
+import com.bikash.photo_porter.model.JobPriority;
+import com.bikash.photo_porter.model.SyncState;
+import com.bikash.photo_porter.model.TransferJob;
+import com.bikash.photo_porter.model.TransferStatus;
+import com.bikash.photo_porter.model.User;
+import com.bikash.photo_porter.model.UserToken;
+import com.bikash.photo_porter.repository.SyncStateRepository;
+import com.bikash.photo_porter.repository.TransferJobRepository;
+import com.bikash.photo_porter.repository.UserRepository;
+import com.bikash.photo_porter.repository.UserTokenRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SyncServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private UserTokenRepository userTokenRepository;
+
+    @Mock
+    private SyncStateRepository syncStateRepository;
+
+    @Mock
+    private TransferJobRepository transferJobRepository;
+
+    @Mock
+    private TokenRefreshService tokenRefreshService;
+
+    @Mock
+    private GooglePhotosClient googlePhotosClient;
+
+    @Mock
+    private TransferService transferService;
+
+    @InjectMocks
+    private SyncService syncService;
+
+    private SyncState state;
+    private UserToken sourceToken;
+
+    @BeforeEach
+    void setUp() {
+        User sourceUser = new User();
+        sourceUser.setId(1L);
+        sourceUser.setEmail("source@example.com");
+        User targetUser = new User();
+        targetUser.setId(2L);
+        targetUser.setEmail("target@example.com");
+
+        state = new SyncState();
+        state.setId(3L);
+        state.setSourceUser(sourceUser);
+        state.setTargetUser(targetUser);
+
+        sourceToken = new UserToken();
+        sourceToken.setAccessToken("source-token");
+    }
+
+    @Test
+    void testRunSync_PromotesWatermarkAndSubmitsOnlyNewerMedia() {
+        // Given
+        Instant previous = Instant.parse("2024-05-01T10:00:00Z");
+        Instant reached = Instant.parse("2024-05-02T08:00:00Z");
+        state.setWatermark(previous);
+        state.setPendingWatermark(reached);
+        state.setLastJobId(9L);
+        TransferJob lastJob = new TransferJob();
+        lastJob.setStatus(TransferStatus.SUCCESS);
+
+        when(syncStateRepository.findWithUsersById(3L)).thenReturn(Optional.of(state));
+        when(transferJobRepository.findById(9L)).thenReturn(Optional.of(lastJob));
+        when(userTokenRepository.findByUserId(1L)).thenReturn(Optional.of(sourceToken));
+        when(tokenRefreshService.refreshTokenIfNeeded(sourceToken)).thenReturn("valid-token");
+        when(googlePhotosClient.streamPhotosCreatedSince("valid-token", reached)).thenReturn(Stream.of(
+                photo("old", "2024-05-02T07:00:00Z"),
+                photo("same", "2024-05-02T08:00:00Z"),
+                photo("new1", "2024-05-02T09:30:00Z"),
+                photo("new2", "2024-05-03T11:00:00Z")));
+        TransferJob submitted = new TransferJob();
+        submitted.setId(10L);
+        when(transferService.submitTransfer("source@example.com", "target@example.com", List.of("new1", "new2"),
+                JobPriority.LOW))
+                .thenReturn(submitted);
+
+        // When
+        TransferJob job = syncService.runSync(3L);
+
+        // Then
+        assertSame(submitted, job);
+        assertEquals(reached, state.getWatermark());
+        assertEquals(Instant.parse("2024-05-03T11:00:00Z"), state.getPendingWatermark());
+        assertEquals(10L, state.getLastJobId());
+        verify(syncStateRepository).save(state);
+    }
+
+    @Test
+    void testRunSync_NothingNew_SubmitsNoJob() {
+        // Given
+        Instant watermark = Instant.parse("2024-05-02T08:00:00Z");
+        state.setWatermark(watermark);
+
+        when(syncStateRepository.findWithUsersById(3L)).thenReturn(Optional.of(state));
+        when(userTokenRepository.findByUserId(1L)).thenReturn(Optional.of(sourceToken));
+        when(tokenRefreshService.refreshTokenIfNeeded(sourceToken)).thenReturn("valid-token");
+        when(googlePhotosClient.streamPhotosCreatedSince("valid-token", watermark))
+                .thenReturn(Stream.of(photo("old", "2024-05-02T07:00:00Z")));
+
+        // When
+        TransferJob job = syncService.runSync(3L);
+
+        // Then
+        assertNull(job);
+        assertEquals(watermark, state.getWatermark());
+        assertNotNull(state.getLastRunAt());
+        verify(transferService, never()).submitTransfer(any(), any(), any(), any());
+    }
+
+    @Test
+    void testRunSync_PreviousJobStillRunning_Skips() {
+        // Given
+        state.setLastJobId(9L);
+        TransferJob lastJob = new TransferJob();
+        lastJob.setStatus(TransferStatus.IN_PROGRESS);
+
+        when(syncStateRepository.findWithUsersById(3L)).thenReturn(Optional.of(state));
+        when(transferJobRepository.findById(9L)).thenReturn(Optional.of(lastJob));
+
+        // When
+        TransferJob job = syncService.runSync(3L);
+
+        // Then
+        assertNull(job);
+        verifyNoInteractions(googlePhotosClient, transferService);
+    }
+
+    private GooglePhoto photo(String id, String creationTime) {
+        return new GooglePhoto(id, id + ".jpg", "https://base/" + id, "image/jpeg", creationTime, null, null);
+    }
+}
@@ -0,0 +1,302 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.dto.GooglePhoto;
+import com.bikash.photo_porter.model.ErrorClass;
+import com.bikash.photo_porter.model.TransferStatus;
+import com.bikash.photo_porter.service.GooglePhotosClient.StreamedUpload;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.services.photoslibrary.v1.model.MediaItem;
+import com.google.api.services.photoslibrary.v1.model.NewMediaItemResult;
+import com.google.api.services.photoslibrary.v1.model.Status;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransferEngineTest {
+
+    @Mock
+    private GooglePhotosClient googlePhotosClient;
+
+    @Mock
+    private MediaMetadataResolver metadataResolver;
+
+    @Mock
+    private UploadTokenBatcher uploadTokenBatcher;
+
+    @Mock
+    private SpoolStore spoolStore;
+
+    private FairScheduler scheduler;
+    private TransferEngine engine;
+    private final RecordingLedger ledger = new RecordingLedger();
+
+    @BeforeEach
+    void setUp() {
+        // A single scheduler slot: a task that kept its slot would stall every task after it
+        scheduler = new FairScheduler(new SimpleMeterRegistry(), 1, 100);
+        engine = new TransferEngine(googlePhotosClient, metadataResolver, uploadTokenBatcher, scheduler, spoolStore,
+                new SimpleMeterRegistry(), 1, 2, 1, 10, 1800);
+        lenient().when(uploadTokenBatcher.submit(anyString(), anyString(), anyString(), anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(new NewMediaItemResult()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.shutdown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    void testSubmit_ResolvesTransfersCommitsAndRecords() throws Exception {
+        // Given
+        TransferTask task = task("photo1");
+        task.setTargetAlbumId("album-1");
+        when(metadataResolver.resolve("source-token", "photo1", Duration.ofSeconds(1800)))
+                .thenReturn(photo("photo1", "https://base/1"));
+        when(googlePhotosClient.streamUpload("https://base/1", "target-token", "photo1.jpg", null))
+                .thenReturn(new StreamedUpload("upload-1", 10, "hash"));
+        when(uploadTokenBatcher.submit("2", "target-token", "upload-1", "photo1.jpg", "album-1"))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new NewMediaItemResult().setMediaItem(new MediaItem().setId("media-1"))));
+
+        // When
+        engine.submit(List.of(task), ledger).get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(List.of(task), ledger.succeeded);
+        assertTrue(ledger.failed.isEmpty());
+        assertEquals("photo1.jpg", task.getFileName());
+        assertEquals(10, task.getBytes());
+        assertEquals("hash", task.getContentHash());
+        assertEquals("media-1", task.getTargetMediaItemId());
+        assertSlotsReleased();
+    }
+
+    @Test
+    void testSubmit_ClassifiesFailuresAndReleasesTheSlotOnEveryPath() throws Exception {
+        // Given: one task failing at each step, then one that succeeds
+        TransferTask missing = task("missing");
+        TransferTask resolveError = task("resolve-error");
+        TransferTask empty = mediaTask("empty");
+        TransferTask throttled = mediaTask("throttled");
+        TransferTask unavailable = mediaTask("unavailable");
+        TransferTask ok = mediaTask("ok");
+        when(metadataResolver.resolve(eq("source-token"), eq("missing"), any())).thenReturn(null);
+        when(metadataResolver.resolve(eq("source-token"), eq("resolve-error"), any()))
+                .thenThrow(new IllegalStateException("boom"));
+        when(googlePhotosClient.streamUpload(eq("https://base/empty"), any(), any(), any()))
+                .thenReturn(new StreamedUpload("upload-empty", 0, null));
+        when(googlePhotosClient.streamUpload(eq("https://base/throttled"), any(), any(), any()))
+                .thenReturn(new StreamedUpload("upload-throttled", 10, "hash"));
+        when(googlePhotosClient.streamUpload(eq("https://base/unavailable"), any(), any(), any()))
+                .thenReturn(new StreamedUpload("upload-unavailable", 10, "hash"));
+        when(googlePhotosClient.streamUpload(eq("https://base/ok"), any(), any(), any()))
+                .thenReturn(new StreamedUpload("upload-ok", 10, "hash"));
+        when(uploadTokenBatcher.submit(anyString(), anyString(), eq("upload-throttled"), anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(
+                        new NewMediaItemResult().setStatus(new Status().setCode(8).setMessage("quota"))));
+        when(uploadTokenBatcher.submit(anyString(), anyString(), eq("upload-unavailable"), anyString(), any()))
+                .thenReturn(CompletableFuture.failedFuture(
+                        new HttpResponseException.Builder(503, "Unavailable", new HttpHeaders()).build()));
+
+        // When
+        engine.submit(List.of(missing, resolveError, empty, throttled, unavailable, ok), ledger)
+                .get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(List.of(ok), ledger.succeeded);
+        assertEquals(ErrorClass.CLIENT, missing.getErrorClass());
+        assertEquals(ErrorClass.UNKNOWN, resolveError.getErrorClass());
+        assertEquals(ErrorClass.NETWORK, empty.getErrorClass());
+        assertEquals(ErrorClass.RATE_LIMITED, throttled.getErrorClass());
+        assertEquals(ErrorClass.SERVER_ERROR, unavailable.getErrorClass());
+        assertEquals(5, ledger.failed.size());
+        assertSlotsReleased();
+    }
+
+    @Test
+    void testSubmit_StaleBaseUrlIsResolvedAgainAfterAdmission() throws Exception {
+        // Given: a photo listed two hours ago
+        TransferTask task = task("photo1");
+        task.setMedia(photo("photo1", "https://base/old"));
+        task.setMediaResolvedAt(Instant.now().minus(Duration.ofHours(2)));
+        when(metadataResolver.resolve("source-token", "photo1", Duration.ofSeconds(1800)))
+                .thenReturn(photo("photo1", "https://base/new"));
+        when(googlePhotosClient.streamUpload(eq("https://base/new"), any(), any(), any()))
+                .thenReturn(new StreamedUpload("upload-1", 10, "hash"));
+
+        // When
+        engine.submit(List.of(task), ledger).get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(List.of(task), ledger.succeeded);
+        verify(googlePhotosClient, never()).streamUpload(eq("https://base/old"), any(), any(), any());
+    }
+
+    @Test
+    void testSubmit_RefusedBaseUrlIsRetriedWithAFreshOne() throws Exception {
+        // Given: a recently listed URL that the source refuses anyway
+        TransferTask task = task("photo1");
+        task.setMedia(photo("photo1", "https://base/old"));
+        task.setMediaResolvedAt(Instant.now());
+        HttpResponseException forbidden = new HttpResponseException.Builder(403, "Forbidden", new HttpHeaders())
+                .build();
+        when(googlePhotosClient.streamUpload(eq("https://base/old"), any(), any(), any()))
+                .thenThrow(new RuntimeException("Failed to stream photo", forbidden));
+        when(metadataResolver.resolve("source-token", "photo1", Duration.ZERO))
+                .thenReturn(photo("photo1", "https://base/new"));
+        when(googlePhotosClient.streamUpload(eq("https://base/new"), any(), any(), any()))
+                .thenReturn(new StreamedUpload("upload-1", 10, "hash"));
+
+        // When
+        engine.submit(List.of(task), ledger).get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(List.of(task), ledger.succeeded);
+        assertEquals("https://base/new", task.getMedia().baseUrl());
+    }
+
+    @Test
+    void testSubmit_FailedLookupIsRetriableButAMissingPhotoIsNot() throws Exception {
+        // Given: one lookup throttled, one photo batchGet does not return
+        TransferTask throttled = task("throttled");
+        TransferTask missing = task("missing");
+        HttpResponseException tooMany = new HttpResponseException.Builder(429, "Too Many Requests", new HttpHeaders())
+                .build();
+        when(metadataResolver.resolve(eq("source-token"), eq("throttled"), any()))
+                .thenThrow(new UncheckedIOException("Failed to get photo details for throttled", tooMany));
+        when(metadataResolver.resolve(eq("source-token"), eq("missing"), any())).thenReturn(null);
+
+        // When
+        engine.submit(List.of(throttled, missing), ledger).get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(ErrorClass.RATE_LIMITED, throttled.getErrorClass());
+        assertEquals(ErrorClass.CLIENT, missing.getErrorClass());
+        assertSlotsReleased();
+    }
+
+    @Test
+    void testSubmit_FailedLookupAfterARefusedUrlReportsTheLookupError() throws Exception {
+        // Given: the URL is refused and the fresh lookup is throttled
+        TransferTask task = mediaTask("photo1");
+        HttpResponseException forbidden = new HttpResponseException.Builder(403, "Forbidden", new HttpHeaders())
+                .build();
+        HttpResponseException tooMany = new HttpResponseException.Builder(429, "Too Many Requests", new HttpHeaders())
+                .build();
+        when(googlePhotosClient.streamUpload(eq("https://base/photo1"), any(), any(), any()))
+                .thenThrow(new RuntimeException("Failed to stream photo", forbidden));
+        when(metadataResolver.resolve("source-token", "photo1", Duration.ZERO))
+                .thenThrow(new UncheckedIOException("Failed to get photo details for photo1", tooMany));
+
+        // When
+        engine.submit(List.of(task), ledger).get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(ErrorClass.RATE_LIMITED, task.getErrorClass());
+    }
+
+    @Test
+    void testSubmit_WrappedServerErrorEndsInRetryPending() throws Exception {
+        // Given: the client wraps the 503 the way streamUpload does
+        TransferTask task = mediaTask("photo1");
+        HttpResponseException unavailable = new HttpResponseException.Builder(503, "Unavailable", new HttpHeaders())
+                .build();
+        when(googlePhotosClient.streamUpload(eq("https://base/photo1"), any(), any(), any()))
+                .thenThrow(new RuntimeException("Failed to stream photo", unavailable));
+        RetryPolicy retryPolicy = new RetryPolicy();
+        ReflectionTestUtils.setField(retryPolicy, "maxAttempts", 5);
+        ReflectionTestUtils.setField(retryPolicy, "maxDelayMs", 60_000L);
+        ReflectionTestUtils.setField(retryPolicy, "serverErrorBaseDelayMs", 1_000L);
+        List<TransferStatus> outcomes = new CopyOnWriteArrayList<>();
+        TransferLedger runnerLedger = new TransferLedger() {
+            @Override
+            public void onSuccess(TransferTask t) {
+                outcomes.add(TransferStatus.SUCCESS);
+            }
+
+            @Override
+            public void onFailure(TransferTask t, String errorMessage) {
+                // The same decision TransferJobRunner makes
+                outcomes.add(retryPolicy.nextAttemptAt(t.getErrorClass(), t.getAttempts() + 1) != null
+                        ? TransferStatus.RETRY_PENDING : TransferStatus.FAILED);
+            }
+        };
+
+        // When
+        engine.submit(List.of(task), runnerLedger).get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(ErrorClass.SERVER_ERROR, task.getErrorClass());
+        assertEquals(List.of(TransferStatus.RETRY_PENDING), outcomes);
+    }
+
+    /**
+     * With a single slot, a further task only gets through once every earlier
+     * task has returned its slot.
+     */
+    private void assertSlotsReleased() throws Exception {
+        TransferTask probe = task("probe");
+        probe.setPayload(new byte[]{1});
+        when(googlePhotosClient.uploadRaw(eq("target-token"), any(), any())).thenReturn("upload-probe");
+
+        engine.submit(List.of(probe), ledger).get(5, TimeUnit.SECONDS);
+        assertTrue(ledger.succeeded.contains(probe));
+    }
+
+    private static TransferTask mediaTask(String photoId) {
+        TransferTask task = task(photoId);
+        task.setMedia(photo(photoId, "https://base/" + photoId));
+        task.setMediaResolvedAt(Instant.now());
+        return task;
+    }
+
+    private static TransferTask task(String photoId) {
+        TransferTask task = new TransferTask();
+        task.setPhotoId(photoId);
+        task.setSourceAccessToken("source-token");
+        task.setTargetAccessToken("target-token");
+        task.setAccountKey("2");
+        return task;
+    }
+
+    private static GooglePhoto photo(String id, String baseUrl) {
+        return new GooglePhoto(id, id + ".jpg", baseUrl, "image/jpeg", null, null, null);
+    }
+
+    private static class RecordingLedger implements TransferLedger {
+        private final List<TransferTask> succeeded = new CopyOnWriteArrayList<>();
+        private final List<TransferTask> failed = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onSuccess(TransferTask task) {
+            succeeded.add(task);
+        }
+
+        @Override
+        public void onFailure(TransferTask task, String errorMessage) {
+            failed.add(task);
+        }
+    }
+}
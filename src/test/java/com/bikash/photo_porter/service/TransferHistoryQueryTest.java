@@ -0,0 +1,96 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.model.PhotoTransfer;
+import com.bikash.photo_porter.model.TransferStatus;
+import com.bikash.photo_porter.model.User;
+import com.bikash.photo_porter.repository.PhotoTransferRepository;
+import com.bikash.photo_porter.repository.PhotoTransferRepository.HistoryRow;
+import com.bikash.photo_porter.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the native history query against H2 in MySQL mode.
+ */
+@DataJpaTest(properties = {
+        "spring.profiles.active=",
+        "spring.datasource.url=jdbc:h2:mem:history;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class TransferHistoryQueryTest {
+
+    private static final LocalDateTime FIRST_PAGE = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PhotoTransferRepository photoTransferRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void testHistoryMergesBothDirectionsNewestFirstWithCursorAndStatus() {
+        // Given
+        User alice = user("alice@example.com");
+        User bob = user("bob@example.com");
+        LocalDateTime base = LocalDateTime.of(2024, 5, 1, 10, 0);
+        PhotoTransfer out1 = transfer(alice, bob, "out1", TransferStatus.SUCCESS);
+        PhotoTransfer in1 = transfer(bob, alice, "in1", TransferStatus.FAILED);
+        PhotoTransfer out2 = transfer(alice, bob, "out2", TransferStatus.SUCCESS);
+        PhotoTransfer unrelated = transfer(bob, bob, "other", TransferStatus.SUCCESS);
+        entityManager.flush();
+        // started_at is not updatable through the entity, so set it directly
+        setStartedAt(out1, base);
+        setStartedAt(in1, base.plusMinutes(1));
+        setStartedAt(out2, base.plusMinutes(2));
+        setStartedAt(unrelated, base.plusMinutes(3));
+
+        // When
+        List<HistoryRow> first = photoTransferRepository.findHistoryPage(alice.getId(), FIRST_PAGE, Long.MAX_VALUE, -1, 2);
+        HistoryRow last = first.get(first.size() - 1);
+        List<HistoryRow> second = photoTransferRepository.findHistoryPage(alice.getId(), last.getStartedAt(), last.getId(), -1, 2);
+        List<HistoryRow> failed = photoTransferRepository.findHistoryPage(alice.getId(), FIRST_PAGE, Long.MAX_VALUE,
+                TransferStatus.FAILED.ordinal(), 10);
+
+        // Then
+        assertEquals(List.of("out2", "in1"), first.stream().map(HistoryRow::getPhotoId).toList());
+        assertEquals(List.of("out1"), second.stream().map(HistoryRow::getPhotoId).toList());
+        assertEquals(List.of("in1"), failed.stream().map(HistoryRow::getPhotoId).toList());
+        assertEquals(base.plusMinutes(2), first.get(0).getStartedAt());
+    }
+
+    private User user(String email) {
+        User user = new User();
+        user.setEmail(email);
+        return userRepository.save(user);
+    }
+
+    private PhotoTransfer transfer(User source, User target, String photoId, TransferStatus status) {
+        PhotoTransfer pt = new PhotoTransfer();
+        pt.setSourceUser(source);
+        pt.setTargetUser(target);
+        pt.setPhotoId(photoId);
+        pt.setStatus(status);
+        return photoTransferRepository.save(pt);
+    }
+
+    private void setStartedAt(PhotoTransfer pt, LocalDateTime startedAt) {
+        entityManager.createNativeQuery("update photo_transfers set started_at = ?1 where id = ?2")
+                .setParameter(1, startedAt)
+                .setParameter(2, pt.getId())
+                .executeUpdate();
+    }
+}
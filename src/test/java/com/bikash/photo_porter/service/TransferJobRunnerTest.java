@@ -0,0 +1,418 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.dto.GoogleAlbum;
+import com.bikash.photo_porter.dto.GooglePhoto;
+import com.bikash.photo_porter.model.ErrorClass;
+import com.bikash.photo_porter.model.PhotoTransfer;
+import com.bikash.photo_porter.model.TransferJob;
+import com.bikash.photo_porter.model.TransferStatus;
+import com.bikash.photo_porter.model.User;
+import com.bikash.photo_porter.model.UserToken;
+import com.bikash.photo_porter.repository.PhotoTransferRepository;
+import com.bikash.photo_porter.repository.TransferJobRepository;
+import com.bikash.photo_porter.repository.UserTokenRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransferJobRunnerTest {
+
+    @Mock
+    private TransferJobRepository transferJobRepository;
+
+    @Mock
+    private PhotoTransferRepository photoTransferRepository;
+
+    @Mock
+    private UserTokenRepository userTokenRepository;
+
+    @Mock
+    private TokenRefreshService tokenRefreshService;
+
+    @Mock
+    private TransferEngine transferEngine;
+
+    @Mock
+    private JobProgressTracker progressTracker;
+
+    @Mock
+    private TransferOutcomeWriter outcomeWriter;
+
+    @Mock
+    private MigrationIndex migrationIndex;
+
+    @Mock
+    private GooglePhotosClient googlePhotosClient;
+
+    @Mock
+    private MediaMetadataResolver metadataResolver;
+
+    @Mock
+    private RetryPolicy retryPolicy;
+
+    private TransferJobRunner runner;
+    private TransferJob job;
+
+    @BeforeEach
+    void setUp() {
+        runner = new TransferJobRunner(transferJobRepository, photoTransferRepository, userTokenRepository,
+                tokenRefreshService, transferEngine, progressTracker, outcomeWriter, migrationIndex, googlePhotosClient, metadataResolver, retryPolicy, 50, 2, 1000, 30000, "runner-1");
+        lenient().when(transferJobRepository.acquireLease(eq(7L), eq("runner-1"), any(), any())).thenReturn(1);
+
+        User sourceUser = new User();
+        sourceUser.setId(1L);
+        sourceUser.setEmail("source@example.com");
+        User targetUser = new User();
+        targetUser.setId(2L);
+        targetUser.setEmail("target@example.com");
+
+        job = new TransferJob();
+        job.setId(7L);
+        job.setSourceUser(sourceUser);
+        job.setTargetUser(targetUser);
+        job.setTotalPhotos(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        runner.shutdown();
+    }
+
+    @Test
+    void testRun_SubmitsPendingRowsAndRecordsOutcomes() {
+        // Given
+        UserToken sourceToken = new UserToken();
+        sourceToken.setAccessToken("source-token");
+        UserToken targetToken = new UserToken();
+        targetToken.setAccessToken("target-token");
+        PhotoTransfer first = pendingRow(11L, "photo1");
+        PhotoTransfer second = pendingRow(12L, "photo2");
+
+        when(transferJobRepository.findWithUsersById(7L)).thenReturn(Optional.of(job));
+        when(userTokenRepository.findByUserId(1L)).thenReturn(Optional.of(sourceToken));
+        when(userTokenRepository.findByUserId(2L)).thenReturn(Optional.of(targetToken));
+        when(tokenRefreshService.refreshTokenIfNeeded(sourceToken)).thenReturn("valid-source-token");
+        when(tokenRefreshService.refreshTokenIfNeeded(targetToken)).thenReturn("valid-target-token");
+        when(photoTransferRepository.findByJobIdAndStatusAfter(eq(7L), eq(TransferStatus.PENDING), eq(0L), any())).thenReturn(List.of(first, second));
+        when(transferEngine.submit(anyList(), any(TransferLedger.class))).thenAnswer(invocation -> {
+            List<TransferTask> tasks = invocation.getArgument(0);
+            TransferLedger ledger = invocation.getArgument(1);
+            tasks.get(0).setBytes(1024L);
+            ledger.onSuccess(tasks.get(0));
+            ledger.onFailure(tasks.get(1), "boom");
+            return CompletableFuture.completedFuture(null);
+        });
+
+        // When
+        runner.run(7L);
+
+        // Then
+        ArgumentCaptor<List<TransferTask>> tasks = ArgumentCaptor.forClass(List.class);
+        verify(transferEngine).submit(tasks.capture(), any(TransferLedger.class));
+        assertEquals(2, tasks.getValue().size());
+        assertEquals("valid-source-token", tasks.getValue().get(0).getSourceAccessToken());
+        assertEquals("valid-target-token", tasks.getValue().get(0).getTargetAccessToken());
+        assertEquals("1:2:photo1", tasks.getValue().get(0).getSessionKey());
+
+        verify(photoTransferRepository).updateStatus(List.of(11L, 12L), TransferStatus.IN_PROGRESS);
+        ArgumentCaptor<List<TransferOutcomeWriter.Outcome>> outcomes = ArgumentCaptor.forClass(List.class);
+        verify(outcomeWriter).apply(outcomes.capture());
+        assertEquals(2, outcomes.getValue().size());
+        TransferOutcomeWriter.Outcome success = outcomes.getValue().get(0);
+        assertEquals(11L, success.recordId());
+        assertEquals(TransferStatus.SUCCESS, success.status());
+        assertEquals(1024L, success.bytes());
+        TransferOutcomeWriter.Outcome failure = outcomes.getValue().get(1);
+        assertEquals(12L, failure.recordId());
+        assertEquals(TransferStatus.FAILED, failure.status());
+        assertEquals("boom", failure.errorMessage());
+        assertEquals(TransferStatus.FAILED, job.getStatus());
+        assertNotNull(job.getCompletedAt());
+
+        verify(progressTracker).transition(7L, TransferStatus.PENDING, TransferStatus.IN_PROGRESS, 2, 0);
+        verify(progressTracker).transition(7L, TransferStatus.IN_PROGRESS, TransferStatus.SUCCESS, 1, 1024L);
+        verify(progressTracker).transition(7L, TransferStatus.IN_PROGRESS, TransferStatus.FAILED);
+        verify(progressTracker).flush(7L);
+    }
+
+    @Test
+    void testRun_RetryableFailureIsRescheduledAndJobStaysOpen() {
+        // Given
+        UserToken sourceToken = new UserToken();
+        sourceToken.setAccessToken("source-token");
+        UserToken targetToken = new UserToken();
+        targetToken.setAccessToken("target-token");
+        PhotoTransfer row = pendingRow(11L, "photo1");
+        row.setAttempts(1);
+        LocalDateTime retryAt = LocalDateTime.now().plusSeconds(30);
+
+        when(transferJobRepository.findWithUsersById(7L)).thenReturn(Optional.of(job));
+        when(userTokenRepository.findByUserId(1L)).thenReturn(Optional.of(sourceToken));
+        when(userTokenRepository.findByUserId(2L)).thenReturn(Optional.of(targetToken));
+        when(photoTransferRepository.findByJobIdAndStatusAfter(eq(7L), eq(TransferStatus.PENDING), eq(0L), any())).thenReturn(List.of(row));
+        when(retryPolicy.nextAttemptAt(ErrorClass.RATE_LIMITED, 2)).thenReturn(retryAt);
+        when(photoTransferRepository.countByJobIdAndStatus(7L, TransferStatus.RETRY_PENDING)).thenReturn(1L);
+        when(transferEngine.submit(anyList(), any(TransferLedger.class))).thenAnswer(invocation -> {
+            List<TransferTask> tasks = invocation.getArgument(0);
+            TransferLedger ledger = invocation.getArgument(1);
+            tasks.get(0).setErrorClass(ErrorClass.RATE_LIMITED);
+            ledger.onFailure(tasks.get(0), "429 Too Many Requests");
+            return CompletableFuture.completedFuture(null);
+        });
+
+        // When
+        runner.run(7L);
+
+        // Then
+        ArgumentCaptor<List<TransferOutcomeWriter.Outcome>> outcomes = ArgumentCaptor.forClass(List.class);
+        verify(outcomeWriter).apply(outcomes.capture());
+        TransferOutcomeWriter.Outcome retry = outcomes.getValue().get(0);
+        assertEquals(TransferStatus.RETRY_PENDING, retry.status());
+        assertEquals(ErrorClass.RATE_LIMITED, retry.errorClass());
+        assertEquals(retryAt, retry.nextAttemptAt());
+        verify(progressTracker).transition(7L, TransferStatus.IN_PROGRESS, TransferStatus.RETRY_PENDING);
+        assertEquals(TransferStatus.IN_PROGRESS, job.getStatus());
+        assertNull(job.getCompletedAt());
+    }
+
+    @Test
+    void testRun_RequeuesRowsLeftInFlightByEarlierRun() {
+        // Given
+        UserToken sourceToken = new UserToken();
+        sourceToken.setAccessToken("source-token");
+        UserToken targetToken = new UserToken();
+        targetToken.setAccessToken("target-token");
+        PhotoTransfer orphan = pendingRow(11L, "photo1");
+
+        when(transferJobRepository.findWithUsersById(7L)).thenReturn(Optional.of(job));
+        when(userTokenRepository.findByUserId(1L)).thenReturn(Optional.of(sourceToken));
+        when(userTokenRepository.findByUserId(2L)).thenReturn(Optional.of(targetToken));
+        when(photoTransferRepository.requeueInProgress(7L)).thenReturn(1);
+        when(photoTransferRepository.findByJobIdAndStatusAfter(eq(7L), eq(TransferStatus.PENDING), eq(0L), any()))
+                .thenReturn(List.of(orphan));
+        when(transferEngine.submit(anyList(), any(TransferLedger.class))).thenAnswer(invocation -> {
+            List<TransferTask> tasks = invocation.getArgument(0);
+            TransferLedger ledger = invocation.getArgument(1);
+            tasks.forEach(ledger::onSuccess);
+            return CompletableFuture.completedFuture(null);
+        });
+
+        // When
+        runner.run(7L);
+
+        // Then
+        verify(progressTracker).transition(7L, TransferStatus.IN_PROGRESS, TransferStatus.PENDING, 1, 0);
+        verify(photoTransferRepository).updateStatus(List.of(11L), TransferStatus.IN_PROGRESS);
+        verify(transferJobRepository).releaseLease(7L, "runner-1");
+        assertEquals(TransferStatus.SUCCESS, job.getStatus());
+    }
+
+    @Test
+    void testDispatch_NewJobStartsWhileAnotherIsWaitingOnAdmission() throws Exception {
+        // Given: job 7 is parked in the engine's admission
+        CountDownLatch admitted = new CountDownLatch(1);
+        when(transferJobRepository.findWithUsersById(7L)).thenReturn(Optional.of(job));
+        when(userTokenRepository.findByUserId(1L)).thenReturn(Optional.of(new UserToken()));
+        when(userTokenRepository.findByUserId(2L)).thenReturn(Optional.of(new UserToken()));
+        when(photoTransferRepository.findByJobIdAndStatusAfter(eq(7L), eq(TransferStatus.PENDING), eq(0L), any()))
+                .thenReturn(List.of(pendingRow(11L, "photo1")));
+        when(transferEngine.submit(anyList(), any(TransferLedger.class))).thenAnswer(invocation -> {
+            admitted.await();
+            return CompletableFuture.completedFuture(null);
+        });
+        TransferJob other = new TransferJob();
+        other.setId(8L);
+        when(transferJobRepository.findWithUsersById(8L)).thenReturn(Optional.of(other));
+
+        try {
+            runner.dispatch(7L);
+            verify(transferEngine, timeout(2000)).submit(anyList(), any(TransferLedger.class));
+
+            // When
+            runner.dispatch(8L);
+
+            // Then: job 8 is picked up without waiting for job 7
+            verify(transferJobRepository, timeout(2000)).acquireLease(eq(8L), eq("runner-1"), any(), any());
+            assertTrue(runner.isRunning(7L));
+        } finally {
+            admitted.countDown();
+        }
+    }
+
+    @Test
+    void testRun_LeasedByAnotherInstance_DoesNothing() {
+        // Given
+        when(transferJobRepository.findWithUsersById(7L)).thenReturn(Optional.of(job));
+        when(transferJobRepository.acquireLease(eq(7L), eq("runner-1"), any(), any())).thenReturn(0);
+
+        // When
+        runner.run(7L);
+
+        // Then
+        verifyNoInteractions(photoTransferRepository, transferEngine, userTokenRepository);
+        verify(transferJobRepository, never()).save(any());
+    }
+
+    @Test
+    void testRun_SkipsPhotosAlreadyMigrated() {
+        // Given
+        UserToken sourceToken = new UserToken();
+        sourceToken.setAccessToken("source-token");
+        UserToken targetToken = new UserToken();
+        targetToken.setAccessToken("target-token");
+        PhotoTransfer first = pendingRow(11L, "photo1");
+        PhotoTransfer second = pendingRow(12L, "photo2");
+
+        when(transferJobRepository.findWithUsersById(7L)).thenReturn(Optional.of(job));
+        when(userTokenRepository.findByUserId(1L)).thenReturn(Optional.of(sourceToken));
+        when(userTokenRepository.findByUserId(2L)).thenReturn(Optional.of(targetToken));
+        when(photoTransferRepository.findByJobIdAndStatusAfter(eq(7L), eq(TransferStatus.PENDING), eq(0L), any())).thenReturn(List.of(first, second));
+        when(migrationIndex.alreadyMigrated(1L, 2L, List.of("photo1", "photo2"))).thenReturn(Set.of("photo1"));
+        when(transferEngine.submit(anyList(), any(TransferLedger.class))).thenAnswer(invocation -> {
+            List<TransferTask> tasks = invocation.getArgument(0);
+            TransferLedger ledger = invocation.getArgument(1);
+            tasks.forEach(ledger::onSuccess);
+            return CompletableFuture.completedFuture(null);
+        });
+
+        // When
+        runner.run(7L);
+
+        // Then
+        ArgumentCaptor<List<TransferTask>> tasks = ArgumentCaptor.forClass(List.class);
+        verify(transferEngine).submit(tasks.capture(), any(TransferLedger.class));
+        assertEquals(1, tasks.getValue().size());
+        assertEquals("photo2", tasks.getValue().get(0).getPhotoId());
+
+        ArgumentCaptor<List<TransferOutcomeWriter.Outcome>> outcomes = ArgumentCaptor.forClass(List.class);
+        verify(outcomeWriter).apply(outcomes.capture());
+        assertEquals(TransferStatus.SKIPPED, outcomes.getValue().get(0).status());
+        assertEquals(11L, outcomes.getValue().get(0).recordId());
+        verify(progressTracker).transition(7L, TransferStatus.PENDING, TransferStatus.SKIPPED, 1, 0);
+        assertEquals(TransferStatus.SUCCESS, job.getStatus());
+    }
+
+    @Test
+    void testRun_MirrorsAlbumInChunksIntoNewTargetAlbum() throws Exception {
+        // Given
+        job.setSourceAlbumId("album-src");
+        job.setAlbumListed(false);
+        UserToken sourceToken = new UserToken();
+        sourceToken.setAccessToken("source-token");
+        UserToken targetToken = new UserToken();
+        targetToken.setAccessToken("target-token");
+
+        when(transferJobRepository.findWithUsersById(7L)).thenReturn(Optional.of(job));
+        when(userTokenRepository.findByUserId(1L)).thenReturn(Optional.of(sourceToken));
+        when(userTokenRepository.findByUserId(2L)).thenReturn(Optional.of(targetToken));
+        when(tokenRefreshService.refreshTokenIfNeeded(sourceToken)).thenReturn("valid-source-token");
+        when(tokenRefreshService.refreshTokenIfNeeded(targetToken)).thenReturn("valid-target-token");
+        when(googlePhotosClient.getAlbumDetails("valid-source-token", "album-src"))
+                .thenReturn(new GoogleAlbum("album-src", "Holiday", 3L, null, null, true));
+        when(googlePhotosClient.createAlbum("valid-target-token", "Holiday")).thenReturn("album-dst");
+        when(googlePhotosClient.streamPhotosInAlbum("valid-source-token", "album-src")).thenReturn(Stream.of(
+                new GooglePhoto("p1", "a.jpg", "https://base/1", "image/jpeg", null, null, null),
+                new GooglePhoto("p2", "b.jpg", "https://base/2", "image/jpeg", null, null, null),
+                new GooglePhoto("p3", "c.jpg", "https://base/3", "image/jpeg", null, null, null)));
+        AtomicLong ids = new AtomicLong(100);
+        when(photoTransferRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<PhotoTransfer> rows = invocation.getArgument(0);
+            rows.forEach(pt -> pt.setId(ids.incrementAndGet()));
+            return rows;
+        });
+        List<List<TransferTask>> submitted = new ArrayList<>();
+        when(transferEngine.submit(anyList(), any(TransferLedger.class))).thenAnswer(invocation -> {
+            List<TransferTask> tasks = invocation.getArgument(0);
+            submitted.add(tasks);
+            TransferLedger ledger = invocation.getArgument(1);
+            tasks.forEach(ledger::onSuccess);
+            return CompletableFuture.completedFuture(null);
+        });
+
+        // When
+        runner.run(7L);
+
+        // Then
+        assertEquals(2, submitted.size());
+        assertEquals(List.of("p1", "p2"), submitted.get(0).stream().map(TransferTask::getPhotoId).toList());
+        assertEquals(List.of("p3"), submitted.get(1).stream().map(TransferTask::getPhotoId).toList());
+        TransferTask first = submitted.get(0).get(0);
+        assertEquals("album-dst", first.getTargetAlbumId());
+        assertEquals("https://base/1", first.getMedia().baseUrl());
+        assertNotNull(first.getMediaResolvedAt());
+        assertEquals("album-dst", job.getTargetAlbumId());
+        assertEquals(3, job.getTotalPhotos());
+        assertTrue(job.getAlbumListed());
+        assertEquals(TransferStatus.SUCCESS, job.getStatus());
+        verify(transferEngine, times(2)).submit(anyList(), any(TransferLedger.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRun_AlbumSkipsAreWrittenBeforePendingRowsAreDrained() throws Exception {
+        // Given: the album's only photo is already in the target library
+        job.setSourceAlbumId("album-src");
+        job.setTargetAlbumId("album-dst");
+        job.setAlbumListed(false);
+        UserToken sourceToken = new UserToken();
+        UserToken targetToken = new UserToken();
+
+        when(transferJobRepository.findWithUsersById(7L)).thenReturn(Optional.of(job));
+        when(userTokenRepository.findByUserId(1L)).thenReturn(Optional.of(sourceToken));
+        when(userTokenRepository.findByUserId(2L)).thenReturn(Optional.of(targetToken));
+        when(googlePhotosClient.streamPhotosInAlbum(any(), eq("album-src"))).thenReturn(Stream.of(
+                new GooglePhoto("p1", "a.jpg", "https://base/1", "image/jpeg", null, null, null)));
+        when(photoTransferRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<PhotoTransfer> rows = invocation.getArgument(0);
+            rows.forEach(pt -> pt.setId(101L));
+            return rows;
+        });
+        when(migrationIndex.alreadyMigrated(1L, 2L, List.of("p1"))).thenReturn(Set.of("p1"));
+        when(transferEngine.submit(anyList(), any(TransferLedger.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        // When
+        runner.run(7L);
+
+        // Then: the SKIPPED row is closed before the pending rows are read
+        InOrder inOrder = inOrder(outcomeWriter, photoTransferRepository);
+        ArgumentCaptor<List<TransferOutcomeWriter.Outcome>> outcomes = ArgumentCaptor.forClass(List.class);
+        inOrder.verify(outcomeWriter).apply(outcomes.capture());
+        inOrder.verify(photoTransferRepository).findByJobIdAndStatusAfter(eq(7L), eq(TransferStatus.PENDING),
+                eq(0L), any());
+        assertEquals(TransferStatus.SKIPPED, outcomes.getValue().get(0).status());
+        assertEquals(101L, outcomes.getValue().get(0).recordId());
+        verify(progressTracker, times(1)).transition(7L, TransferStatus.PENDING, TransferStatus.SKIPPED, 1, 0);
+    }
+
+    private PhotoTransfer pendingRow(Long id, String photoId) {
+        PhotoTransfer pt = new PhotoTransfer();
+        pt.setId(id);
+        pt.setJob(job);
+        pt.setPhotoId(photoId);
+        pt.setStatus(TransferStatus.PENDING);
+        return pt;
+    }
+}
@@ -0,0 +1,110 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.model.MigratedMedia;
+import com.bikash.photo_porter.model.PhotoTransfer;
+import com.bikash.photo_porter.model.TransferStatus;
+import com.bikash.photo_porter.model.User;
+import com.bikash.photo_porter.repository.MigratedMediaRepository;
+import com.bikash.photo_porter.repository.PhotoTransferRepository;
+import com.bikash.photo_porter.repository.TransferRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransferOutcomeWriterTest {
+
+    @Mock
+    private PhotoTransferRepository photoTransferRepository;
+
+    @Mock
+    private TransferRepository transferRepository;
+
+    @Mock
+    private MigratedMediaRepository migratedMediaRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private TransferOutcomeWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        MigrationIndex index = new MigrationIndex(migratedMediaRepository, transactionManager,
+                new SimpleMeterRegistry(), 10_000, 0.001, 100);
+        when(migratedMediaRepository.findKeysAfter(anyLong(), any())).thenReturn(List.of());
+        index.warmUp();
+        writer = new TransferOutcomeWriter(photoTransferRepository, transferRepository, index);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testApply_SamePhotoTwiceInBatchIsIndexedOnce() {
+        // Given
+        PhotoTransfer first = row(1L, "photo1");
+        PhotoTransfer second = row(2L, "photo1");
+        when(photoTransferRepository.findAllById(any())).thenReturn(List.of(first, second));
+
+        // When
+        writer.apply(List.of(success(1L), success(2L)));
+
+        // Then
+        assertEquals(TransferStatus.SUCCESS, first.getStatus());
+        assertEquals(TransferStatus.SUCCESS, second.getStatus());
+        ArgumentCaptor<List<MigratedMedia>> saved = ArgumentCaptor.forClass(List.class);
+        verify(migratedMediaRepository).saveAllAndFlush(saved.capture());
+        assertEquals(1, saved.getValue().size());
+        assertEquals("photo1", saved.getValue().get(0).getPhotoId());
+    }
+
+    @Test
+    void testApply_ConcurrentlyIndexedPhotoDoesNotFailTheBatch() {
+        // Given
+        PhotoTransfer first = row(1L, "photo1");
+        PhotoTransfer second = row(2L, "photo2");
+        when(photoTransferRepository.findAllById(any())).thenReturn(List.of(first, second));
+        when(migratedMediaRepository.saveAllAndFlush(any())).thenThrow(new DataIntegrityViolationException("dup"));
+        when(migratedMediaRepository.saveAndFlush(any()))
+                .thenThrow(new DataIntegrityViolationException("dup"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        assertDoesNotThrow(() -> writer.apply(List.of(success(1L), success(2L))));
+
+        // Then
+        assertEquals(TransferStatus.SUCCESS, first.getStatus());
+        assertEquals(TransferStatus.SUCCESS, second.getStatus());
+        verify(migratedMediaRepository, times(2)).saveAndFlush(any());
+    }
+
+    private static PhotoTransfer row(Long id, String photoId) {
+        User source = new User(1L, "source@example.com", null);
+        User target = new User(2L, "target@example.com", null);
+        PhotoTransfer pt = new PhotoTransfer();
+        pt.setId(id);
+        pt.setSourceUser(source);
+        pt.setTargetUser(target);
+        pt.setPhotoId(photoId);
+        pt.setStatus(TransferStatus.IN_PROGRESS);
+        return pt;
+    }
+
+    private static TransferOutcomeWriter.Outcome success(Long recordId) {
+        return new TransferOutcomeWriter.Outcome(recordId, TransferStatus.SUCCESS, 10L, "hash", "media-" + recordId,
+                null, null, null, LocalDateTime.now());
+    }
+}
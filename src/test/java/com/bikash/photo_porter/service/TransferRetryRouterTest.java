@@ -0,0 +1,64 @@
+package com.bikash.photo_porter.service;
+
+import com.bikash.photo_porter.dto.TransferMessage;
+import com.bikash.photo_porter.model.ErrorClass;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransferRetryRouterTest {
+
+    @Mock
+    private PhotoTransferProducer producer;
+
+    @Test
+    void testTierFor_RoutesByErrorClassAndAttempt() {
+        assertEquals(0, TransferRetryRouter.tierFor(ErrorClass.NETWORK, 1));
+        assertEquals(2, TransferRetryRouter.tierFor(ErrorClass.SERVER_ERROR, 3));
+        assertEquals(-1, TransferRetryRouter.tierFor(ErrorClass.SERVER_ERROR, 4));
+        // Rate limits skip the 30s tier
+        assertEquals(1, TransferRetryRouter.tierFor(ErrorClass.RATE_LIMITED, 1));
+        assertEquals(-1, TransferRetryRouter.tierFor(ErrorClass.RATE_LIMITED, 3));
+        assertEquals(-1, TransferRetryRouter.tierFor(ErrorClass.AUTH, 1));
+        assertEquals(-1, TransferRetryRouter.tierFor(ErrorClass.CLIENT, 1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRoute_DeadLetterCarriesFailureMetadata() {
+        // Given
+        TransferRetryRouter router = new TransferRetryRouter(producer, new SimpleMeterRegistry(),
+                "photo-transfer-topic", List.of(Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ofHours(1)));
+        TransferMessage message = new TransferMessage("photo-1", "a.jpg", null, 1L, 2L, "token", null, null, null);
+
+        // When
+        TransferRetryRouter.Route first = router.route(message, 9L, ErrorClass.NETWORK, "reset", 1);
+        TransferRetryRouter.Route last = router.route(message, 9L, ErrorClass.AUTH, "401 Unauthorized", 2);
+
+        // Then
+        assertEquals(TransferRetryRouter.Route.RETRY, first);
+        assertEquals(TransferRetryRouter.Route.DEAD_LETTER, last);
+        ArgumentCaptor<List<Header>> headers = ArgumentCaptor.forClass(List.class);
+        verify(producer).send(eq("photo-transfer-topic-retry-0"), eq(message), anyList());
+        verify(producer).send(eq("photo-transfer-topic-dlt"), eq(message), headers.capture());
+        RecordHeaders dlt = new RecordHeaders(headers.getValue());
+        assertEquals("AUTH", TransferRetryRouter.headerValue(dlt, TransferRetryRouter.ERROR_CLASS));
+        assertEquals("401 Unauthorized", TransferRetryRouter.headerValue(dlt, TransferRetryRouter.ERROR_MESSAGE));
+        assertEquals("2", TransferRetryRouter.headerValue(dlt, TransferRetryRouter.ATTEMPTS));
+        assertEquals("9", TransferRetryRouter.headerValue(dlt, TransferRetryRouter.TRANSFER_ID));
+        assertNull(TransferRetryRouter.headerValue(dlt, TransferRetryRouter.DUE_AT));
+    }
+}
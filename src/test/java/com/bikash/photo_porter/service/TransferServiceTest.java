@@ -1,19 +1,24 @@
 package com.bikash.photo_porter.service;
 
+import com.bikash.photo_porter.dto.TransferHistoryPage;
 import com.bikash.photo_porter.exception.TransferException;
 import com.bikash.photo_porter.model.PhotoTransfer;
+import com.bikash.photo_porter.model.TransferJob;
 import com.bikash.photo_porter.model.TransferStatus;
 import com.bikash.photo_porter.model.User;
 import com.bikash.photo_porter.model.UserToken;
 import com.bikash.photo_porter.repository.PhotoTransferRepository;
+import com.bikash.photo_porter.repository.TransferJobRepository;
 import com.bikash.photo_porter.repository.UserRepository;
 import com.bikash.photo_porter.repository.UserTokenRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -21,6 +26,7 @@ import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -42,7 +48,13 @@ class TransferServiceTest {
     private PhotoTransferProducer kafkaProducer;
 
     @Mock
-    private TokenRefreshService tokenRefreshService;
+    private TransferJobRepository transferJobRepository;
+
+    @Mock
+    private TransferJobRunner transferJobRunner;
+
+    @Mock
+    private JobProgressTracker progressTracker;
 
     @InjectMocks
     private TransferService transferService;
@@ -74,7 +86,7 @@ class TransferServiceTest {
     }
 
     @Test
-    void testTransferPhotos_Success() {
+    void testSubmitTransfer_PersistsJobAndDispatches() {
         // Given
         List<String> photoIds = List.of("photo1", "photo2");
         
@@ -82,19 +94,28 @@ class TransferServiceTest {
         when(userRepository.findByEmail("target@example.com")).thenReturn(Optional.of(targetUser));
         when(userTokenRepository.findByUserId(1L)).thenReturn(Optional.of(sourceToken));
         when(userTokenRepository.findByUserId(2L)).thenReturn(Optional.of(targetToken));
-        when(tokenRefreshService.refreshTokenIfNeeded(sourceToken)).thenReturn("valid-source-token");
-        when(tokenRefreshService.refreshTokenIfNeeded(targetToken)).thenReturn("valid-target-token");
-        when(photoTransferRepository.save(any(PhotoTransfer.class))).thenAnswer(invocation -> {
-            PhotoTransfer transfer = invocation.getArgument(0);
-            transfer.setId(1L);
-            return transfer;
+        when(transferJobRepository.save(any(TransferJob.class))).thenAnswer(invocation -> {
+            TransferJob job = invocation.getArgument(0);
+            job.setId(7L);
+            return job;
         });
 
         // When
-        assertDoesNotThrow(() -> transferService.transferPhotos("source@example.com", "target@example.com", photoIds));
+        TransferJob job = transferService.submitTransfer("source@example.com", "target@example.com", photoIds);
 
         // Then
-        verify(photoTransferRepository, times(2)).save(any(PhotoTransfer.class));
+        assertEquals(7L, job.getId());
+        assertEquals(2, job.getTotalPhotos());
+        assertEquals(2L, job.getPendingCount());
+        ArgumentCaptor<List<PhotoTransfer>> rows = ArgumentCaptor.forClass(List.class);
+        verify(photoTransferRepository).saveAll(rows.capture());
+        assertEquals(2, rows.getValue().size());
+        rows.getValue().forEach(pt -> {
+            assertEquals(TransferStatus.PENDING, pt.getStatus());
+            assertSame(job, pt.getJob());
+        });
+        verify(transferJobRunner).dispatch(7L);
+        verifyNoInteractions(googlePhotosClient);
     }
 
     @Test
@@ -104,31 +125,52 @@ class TransferServiceTest {
 
         // When & Then
         TransferException exception = assertThrows(TransferException.class, 
-            () -> transferService.transferPhotos("source@example.com", "target@example.com", List.of("photo1")));
+            () -> transferService.submitTransfer("source@example.com", "target@example.com", List.of("photo1")));
         
         assertEquals("Source user not found: source@example.com", exception.getMessage());
     }
 
     @Test
-    void testGetTransfersForUser_Success() {
+    void testGetTransferHistory_ReturnsPageAndCursor() {
         // Given
-        PhotoTransfer transfer = new PhotoTransfer();
-        transfer.setId(1L);
-        transfer.setSourceUser(sourceUser);
-        transfer.setStatus(TransferStatus.SUCCESS);
-        transfer.setStartedAt(LocalDateTime.now());
+        ReflectionTestUtils.setField(transferService, "defaultHistoryPageSize", 50);
+        ReflectionTestUtils.setField(transferService, "maxHistoryPageSize", 200);
+        LocalDateTime startedAt = LocalDateTime.of(2024, 5, 1, 10, 0);
+        PhotoTransferRepository.HistoryRow outgoing = historyRow(5L, 1L, 2L, startedAt);
+        PhotoTransferRepository.HistoryRow incoming = historyRow(4L, 3L, 1L, startedAt.minusMinutes(1));
 
         when(userRepository.findByEmail("source@example.com")).thenReturn(Optional.of(sourceUser));
-        when(photoTransferRepository.findBySourceUser(sourceUser)).thenReturn(List.of(transfer));
-        when(photoTransferRepository.findByTargetUser(sourceUser)).thenReturn(List.of());
+        when(photoTransferRepository.findHistoryPage(eq(1L), any(), eq(Long.MAX_VALUE), eq(TransferStatus.SUCCESS.ordinal()), eq(2)))
+                .thenReturn(List.of(outgoing, incoming));
 
         // When
-        List<PhotoTransfer> result = transferService.getTransfersForUser("source@example.com");
+        TransferHistoryPage page = transferService.getTransferHistory("source@example.com", null, TransferStatus.SUCCESS, 1);
 
         // Then
-        assertNotNull(result);
-        assertEquals(1, result.size());
-        assertEquals(transfer.getId(), result.get(0).getId());
+        assertEquals(1, page.items().size());
+        assertEquals(5L, page.items().get(0).id());
+        assertEquals(TransferHistoryPage.Direction.OUTGOING, page.items().get(0).direction());
+        assertEquals(TransferStatus.SUCCESS, page.items().get(0).status());
+        assertNotNull(page.nextCursor());
+
+        // When - following the cursor
+        when(photoTransferRepository.findHistoryPage(1L, startedAt, 5L, -1, 2)).thenReturn(List.of(incoming));
+        TransferHistoryPage next = transferService.getTransferHistory("source@example.com", page.nextCursor(), null, 1);
+
+        // Then
+        assertEquals(TransferHistoryPage.Direction.INCOMING, next.items().get(0).direction());
+        assertNull(next.nextCursor());
+    }
+
+    private PhotoTransferRepository.HistoryRow historyRow(Long id, Long sourceUserId, Long targetUserId,
+                                                          LocalDateTime startedAt) {
+        PhotoTransferRepository.HistoryRow row = mock(PhotoTransferRepository.HistoryRow.class);
+        lenient().when(row.getId()).thenReturn(id);
+        lenient().when(row.getSourceUserId()).thenReturn(sourceUserId);
+        lenient().when(row.getTargetUserId()).thenReturn(targetUserId);
+        lenient().when(row.getStatus()).thenReturn(TransferStatus.SUCCESS.ordinal());
+        lenient().when(row.getStartedAt()).thenReturn(startedAt);
+        return row;
     }
 
     @Test
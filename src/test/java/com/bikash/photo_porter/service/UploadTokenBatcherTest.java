@@ -0,0 +1,105 @@
+package com.bikash.photo_porter.service;
+
+import com.google.api.services.photoslibrary.v1.model.NewMediaItem;
+import com.google.api.services.photoslibrary.v1.model.NewMediaItemResult;
+import com.google.api.services.photoslibrary.v1.model.Status;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UploadTokenBatcherTest {
+
+    @Mock
+    private GooglePhotosClient googlePhotosClient;
+
+    private UploadTokenBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        batcher = new UploadTokenBatcher(googlePhotosClient, new SimpleMeterRegistry(), 1);
+        ReflectionTestUtils.setField(batcher, "maxBatchSize", 50);
+        ReflectionTestUtils.setField(batcher, "lingerMs", 60_000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        batcher.shutdown();
+    }
+
+    @Test
+    void testFullBatch_CommittedInOneCallAndMappedByToken() throws Exception {
+        // Given: the API answers in reverse order, failing the first token
+        when(googlePhotosClient.createMediaItems(eq("token"), isNull(), anyList())).thenAnswer(invocation -> {
+            List<NewMediaItem> items = invocation.getArgument(2);
+            List<NewMediaItemResult> results = new ArrayList<>();
+            for (int i = items.size() - 1; i >= 0; i--) {
+                String uploadToken = items.get(i).getSimpleMediaItem().getUploadToken();
+                int code = uploadToken.equals("upload-0") ? 3 : 0;
+                results.add(new NewMediaItemResult().setUploadToken(uploadToken).setStatus(new Status().setCode(code)));
+            }
+            return results;
+        });
+
+        // When
+        List<CompletableFuture<NewMediaItemResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(batcher.submit("2", "token", "upload-" + i, "photo_" + i + ".jpg"));
+        }
+
+        // Then
+        for (int i = 0; i < 50; i++) {
+            NewMediaItemResult result = futures.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals("upload-" + i, result.getUploadToken());
+            assertEquals(i != 0, UploadTokenBatcher.isSuccess(result));
+        }
+        verify(googlePhotosClient, times(1)).createMediaItems(eq("token"), isNull(), anyList());
+    }
+
+    @Test
+    void testPartialBatch_FlushedAfterLinger() throws Exception {
+        // Given
+        ReflectionTestUtils.setField(batcher, "lingerMs", 50L);
+        when(googlePhotosClient.createMediaItems(eq("token"), isNull(), anyList()))
+                .thenReturn(List.of(new NewMediaItemResult().setUploadToken("upload-1")));
+
+        // When
+        NewMediaItemResult result = batcher.submit("2", "token", "upload-1", "photo_1.jpg").get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertTrue(UploadTokenBatcher.isSuccess(result));
+    }
+
+    @Test
+    void testTokensForDifferentAlbums_CommittedSeparately() throws Exception {
+        // Given
+        ReflectionTestUtils.setField(batcher, "maxBatchSize", 1);
+        when(googlePhotosClient.createMediaItems(eq("token"), anyString(), anyList()))
+                .thenReturn(List.of(new NewMediaItemResult().setUploadToken("upload-1")));
+
+        // When
+        batcher.submit("2", "token", "upload-1", "photo_1.jpg", "album-a").get(5, TimeUnit.SECONDS);
+        batcher.submit("2", "token", "upload-1", "photo_1.jpg", "album-b").get(5, TimeUnit.SECONDS);
+
+        // Then
+        verify(googlePhotosClient).createMediaItems(eq("token"), eq("album-a"), anyList());
+        verify(googlePhotosClient).createMediaItems(eq("token"), eq("album-b"), anyList());
+    }
+}